@@ -0,0 +1,321 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tauterra.nettools;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Writes CSV rows as UTF-8 bytes into a buffer that is written to a channel
+ * when it fills up.
+ *
+ * <p>Fields are quoted as described in RFC 4180, and only when they contain a
+ * comma, a double quote or a line break. Rows end with a line feed. The
+ * encoded form of short values is kept in a small cache, a fixed-size hash
+ * table with one value per slot like {@link com.tauterra.nettools.StringPool},
+ * so the protocols, states and service names that repeat on every row are
+ * encoded once. Numbers, IPv4 addresses and times are written as digits
+ * without creating strings.</p>
+ *
+ * <p>Adding to a row never writes to the channel; the buffer grows if a row
+ * does not fit. Call {@link #flushIfFull() } between rows and
+ * {@link #flush() } at the end. A writer is not thread-safe.</p>
+ *
+ * @author Nicholas Folse
+ */
+final class CsvWriter implements Flushable {
+
+    static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    private static final int CACHE_SIZE = 1024;
+    /** Longer values are encoded every time instead of being cached. */
+    private static final int MAX_CACHED_LENGTH = 64;
+    private static final byte DELIMITER = ',';
+    private static final byte QUOTE = '"';
+    private static final byte NEWLINE = '\n';
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private final WritableByteChannel channel;
+    private final int flushSize;
+    private byte[] buffer;
+    private int position = 0;
+    /** Whether the next field is the first of its row. */
+    private boolean rowStart = true;
+
+    private final String[] cachedValues = new String[CACHE_SIZE];
+    private final byte[][] cachedBytes = new byte[CACHE_SIZE][];
+    /** The day of the last time written, and its date, or null if its year has more than four digits. */
+    private long dateDay = Long.MIN_VALUE;
+    private byte[] dateBytes;
+
+    /**
+     * Return a writer with the default buffer size.
+     *
+     * @param channel
+     */
+    CsvWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Return a new writer.
+     *
+     * @param channel
+     * @param bufferSize The number of bytes buffered before they are written
+     */
+    CsvWriter(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.flushSize = bufferSize;
+        // room for a row or two past the flush size
+        this.buffer = new byte[bufferSize + 4096];
+    }
+
+    /**
+     * Add a text field; null is written as an empty field.
+     *
+     * @param value
+     * @return
+     */
+    CsvWriter field(String value) {
+        startField();
+        if (value == null || value.isEmpty()) {
+            return this;
+        }
+        if (value.length() <= MAX_CACHED_LENGTH) {
+            final int hash = value.hashCode();
+            final int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+            byte[] bytes = cachedBytes[slot];
+            if (bytes == null || !value.equals(cachedValues[slot])) {
+                bytes = encode(value);
+                cachedValues[slot] = value;
+                cachedBytes[slot] = bytes;
+            }
+            put(bytes);
+        } else if (!putAscii(value)) {
+            put(encode(value));
+        }
+        return this;
+    }
+
+    /**
+     * Add a decimal integer field.
+     *
+     * @param value
+     * @return
+     */
+    CsvWriter field(int value) {
+        startField();
+        ensureCapacity(11);
+        long rest = value;
+        if (rest < 0) {
+            buffer[position++] = '-';
+            rest = -rest;
+        }
+        putDigits(rest);
+        return this;
+    }
+
+    /**
+     * Add a packed IPv4 address in dotted-quad form, see
+     * {@link com.tauterra.nettools.Ipv4}.
+     *
+     * @param address
+     * @return
+     */
+    CsvWriter ipv4(int address) {
+        startField();
+        ensureCapacity(15);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            putDigits((address >>> shift) & 0xFF);
+            if (shift > 0) {
+                buffer[position++] = '.';
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Add a time in seconds since the epoch in ISO-8601 form in UTC, as
+     * {@link Instant#toString() } writes it, or an empty field if it is 0.
+     *
+     * @param seconds
+     * @return
+     */
+    CsvWriter time(long seconds) {
+        startField();
+        if (seconds == 0) {
+            return this;
+        }
+        // the hosts of a scan share a day, so the date is rarely formatted
+        final long day = Math.floorDiv(seconds, SECONDS_PER_DAY);
+        if (day != dateDay) {
+            final LocalDate date = LocalDate.ofEpochDay(day);
+            dateDay = day;
+            dateBytes = (date.getYear() >= 0 && date.getYear() <= 9999)
+                    ? date.toString().getBytes(StandardCharsets.US_ASCII) : null;
+        }
+        if (dateBytes == null) {
+            put(encode(Instant.ofEpochSecond(seconds).toString()));
+            return this;
+        }
+        final int time = (int) Math.floorMod(seconds, SECONDS_PER_DAY);
+        ensureCapacity(dateBytes.length + 10);
+        put(dateBytes);
+        buffer[position++] = 'T';
+        putTwoDigits(time / 3600);
+        buffer[position++] = ':';
+        putTwoDigits(time / 60 % 60);
+        buffer[position++] = ':';
+        putTwoDigits(time % 60);
+        buffer[position++] = 'Z';
+        return this;
+    }
+
+    /**
+     * End the current row.
+     */
+    void endRow() {
+        ensureCapacity(1);
+        buffer[position++] = NEWLINE;
+        rowStart = true;
+    }
+
+    /**
+     * Write the buffered rows if the buffer is full.
+     *
+     * @throws IOException
+     */
+    void flushIfFull() throws IOException {
+        if (position >= flushSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the buffered bytes to the channel.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        final ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, position);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        position = 0;
+    }
+
+    private void startField() {
+        if (!rowStart) {
+            ensureCapacity(1);
+            buffer[position++] = DELIMITER;
+        }
+        rowStart = false;
+    }
+
+    private void put(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Add a value that needs neither quotes nor more than one byte per
+     * character.
+     *
+     * @return false if nothing was added because the value needs either
+     */
+    private boolean putAscii(String value) {
+        final int length = value.length();
+        for (int idx = 0; idx < length; idx++) {
+            final char c = value.charAt(idx);
+            if (c >= 0x80 || needsQuotes(c)) {
+                return false;
+            }
+        }
+        ensureCapacity(length);
+        for (int idx = 0; idx < length; idx++) {
+            buffer[position++] = (byte) value.charAt(idx);
+        }
+        return true;
+    }
+
+    private void putDigits(long value) {
+        final int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        // the digits were written least significant first
+        for (int lo = start, hi = position - 1; lo < hi; lo++, hi--) {
+            final byte swap = buffer[lo];
+            buffer[lo] = buffer[hi];
+            buffer[hi] = swap;
+        }
+    }
+
+    private void putTwoDigits(int value) {
+        buffer[position++] = (byte) ('0' + value / 10);
+        buffer[position++] = (byte) ('0' + value % 10);
+    }
+
+    private void ensureCapacity(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, position + length));
+        }
+    }
+
+    private static boolean needsQuotes(char c) {
+        return c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Return the UTF-8 bytes of a field, quoted if needed.
+     */
+    private static byte[] encode(String value) {
+        boolean quote = false;
+        for (int idx = 0; idx < value.length() && !quote; idx++) {
+            quote = needsQuotes(value.charAt(idx));
+        }
+        if (!quote) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+        final byte[] text = value.getBytes(StandardCharsets.UTF_8);
+        int quotes = 0;
+        for (byte b : text) {
+            if (b == QUOTE) {
+                quotes++;
+            }
+        }
+        final byte[] result = new byte[text.length + quotes + 2];
+        int length = 0;
+        result[length++] = QUOTE;
+        for (byte b : text) {
+            if (b == QUOTE) {
+                result[length++] = QUOTE;
+            }
+            result[length++] = b;
+        }
+        result[length] = QUOTE;
+        return result;
+    }
+
+}
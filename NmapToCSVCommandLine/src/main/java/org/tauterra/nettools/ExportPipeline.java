@@ -0,0 +1,561 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tauterra.nettools;
+
+import com.tauterra.nettools.NmapScanResultParser;
+import com.tauterra.nettools.UncheckedXMLStreamException;
+import com.tauterra.nettools.nmap.model.CompactHost;
+import com.tauterra.nettools.nmap.model.NmapHostElement;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Export stages connected by bounded queues.
+ *
+ * <p>Parser threads each open a file and turn its chunks into hosts, reader
+ * threads read the chunks of the open files, the calling thread merges the
+ * hosts, and a writer thread formats and writes the rows. A reader is not
+ * tied to a file: it reads the next chunk of whichever open file has the
+ * fewest chunks waiting, so every parser is kept supplied. Every queue is
+ * bounded, and the chunks of all files share one budget, so a stage that
+ * falls behind blocks the stages before it instead of letting data pile up in
+ * memory.</p>
+ *
+ * <p>Hosts are merged as they arrive, tagged with the index of their file;
+ * the merge decides which host wins, so the result does not depend on which
+ * file finishes first.</p>
+ *
+ * @author Nicholas Folse
+ */
+final class ExportPipeline {
+
+    /**
+     * Receives the hosts of the parser stage.
+     */
+    interface Merge {
+
+        /**
+         * Merge a host. The hosts of a file arrive in file order.
+         *
+         * @param file The index of the file of the host
+         * @param host
+         */
+        void merge(int file, CompactHost host);
+    }
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    /** Chunks read ahead per parser. */
+    private static final int PARSER_CHUNKS = 16;
+    private static final int BATCH_SIZE = 256;
+    private static final byte[] END_OF_FILE = new byte[0];
+
+    private final NmapScanResultParser parser;
+    private final int readers;
+    private final int parsers;
+    private final boolean verbose;
+
+    private final BlockingQueue<Batch> batches;
+    private final BlockingQueue<List<?>> rows;
+    /** The chunks that may be read ahead, shared by all open files. */
+    private final Semaphore budget;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /** The files being parsed; guards the fields below and the sources. */
+    private final List<Source> open = new ArrayList<>();
+    /** Where the next search for a file to read starts. */
+    private int cursor = 0;
+    /** The parsers that have not finished. */
+    private int parsing = 0;
+
+    /**
+     * Return a new pipeline.
+     *
+     * @param parser
+     * @param readers The number of reader threads
+     * @param parsers The number of parser threads
+     * @param depth The capacity of the queues between stages
+     * @param verbose Report progress and queue depths
+     */
+    ExportPipeline(NmapScanResultParser parser, int readers, int parsers, int depth, boolean verbose) {
+        this.parser = parser;
+        this.readers = readers;
+        this.parsers = parsers;
+        this.verbose = verbose;
+        this.budget = new Semaphore(parsers * PARSER_CHUNKS);
+        this.batches = new ArrayBlockingQueue<>(depth);
+        this.rows = new ArrayBlockingQueue<>(depth);
+    }
+
+    /**
+     * Read and parse files, merging their hosts on the calling thread.
+     *
+     * @param files
+     * @param merge
+     * @return Whether each file was parsed to the end
+     * @throws InterruptedException
+     */
+    boolean[] parse(List<File> files, Merge merge) throws InterruptedException {
+        // largest files first, so that they do not end up running alone at
+        // the end; the merge does not depend on the order
+        final Integer[] bySize = new Integer[files.size()];
+        for (int idx = 0; idx < bySize.length; idx++) {
+            bySize[idx] = idx;
+        }
+        final long[] sizes = files.stream().mapToLong(File::length).toArray();
+        Arrays.sort(bySize, (a, b) -> Long.compare(sizes[b], sizes[a]));
+        final AtomicInteger next = new AtomicInteger();
+        synchronized (open) {
+            parsing = parsers;
+        }
+
+        final boolean[] complete = new boolean[files.size()];
+        final ExecutorService executor = Executors.newFixedThreadPool(readers + parsers);
+        final ScheduledExecutorService monitor = startMonitor();
+        try {
+            for (int idx = 0; idx < readers; idx++) {
+                executor.execute(this::read);
+            }
+            for (int idx = 0; idx < parsers; idx++) {
+                executor.execute(() -> parse(files, bySize, next));
+            }
+            for (int done = 0; done < parsers;) {
+                final Batch batch = batches.take();
+                if (batch.file < 0) {
+                    done++;
+                    continue;
+                }
+                for (CompactHost host : batch.hosts) {
+                    merge.merge(batch.file, host);
+                }
+                if (batch.last) {
+                    complete[batch.file] = batch.complete;
+                }
+            }
+            rethrowFailure();
+            return complete;
+        } finally {
+            executor.shutdownNow();
+            if (monitor != null) {
+                monitor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Format and write rows on the writer thread, which blocks the calling
+     * thread whenever the writer falls behind. The output is flushed at the
+     * end.
+     *
+     * @param <T>
+     * @param source
+     * @param format Adds the rows of a value
+     * @param out
+     * @throws IOException If the output could not be written
+     * @throws InterruptedException
+     */
+    <T> void write(Iterator<T> source, BiConsumer<CsvWriter, ? super T> format, CsvWriter out)
+            throws IOException, InterruptedException {
+        final ExecutorService writer = Executors.newSingleThreadExecutor();
+        final ScheduledExecutorService monitor = startMonitor();
+        try {
+            writer.execute(() -> {
+                try {
+                    for (List<?> batch = rows.take(); !batch.isEmpty(); batch = rows.take()) {
+                        if (failure.get() != null) {
+                            // keep taking rows, so that the caller can finish
+                            continue;
+                        }
+                        try {
+                            for (Object row : batch) {
+                                @SuppressWarnings("unchecked")
+                                T value = (T) row;
+                                format.accept(out, value);
+                                out.flushIfFull();
+                            }
+                        } catch (IOException | RuntimeException | Error ex) {
+                            failure.compareAndSet(null, ex);
+                        }
+                    }
+                    if (failure.get() == null) {
+                        out.flush();
+                    }
+                } catch (IOException ex) {
+                    failure.compareAndSet(null, ex);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            List<T> batch = new ArrayList<>(BATCH_SIZE);
+            while (source.hasNext() && failure.get() == null) {
+                batch.add(source.next());
+                if (batch.size() == BATCH_SIZE) {
+                    rows.put(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                rows.put(batch);
+            }
+            rows.put(Collections.emptyList());
+            writer.shutdown();
+            while (!writer.awaitTermination(1, TimeUnit.SECONDS)) {
+            }
+            if (failure.get() instanceof IOException) {
+                throw (IOException) failure.get();
+            }
+            rethrowFailure();
+        } finally {
+            writer.shutdownNow();
+            if (monitor != null) {
+                monitor.shutdownNow();
+            }
+        }
+    }
+
+    private ScheduledExecutorService startMonitor() {
+        if (!verbose) {
+            return null;
+        }
+        final ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "pipeline-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final int chunks = budget.availablePermits();
+        monitor.scheduleAtFixedRate(() -> System.err.println("queues: files " + openFiles()
+                + ", chunks " + (chunks - budget.availablePermits())
+                + ", host batches " + batches.size()
+                + ", row batches " + rows.size()),
+                1, 1, TimeUnit.SECONDS);
+        return monitor;
+    }
+
+    private int openFiles() {
+        synchronized (open) {
+            return open.size();
+        }
+    }
+
+    private void rethrowFailure() {
+        final Throwable cause = failure.get();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Reader stage: read a chunk of an open file at a time, until every
+     * parser has finished. Each chunk takes a permit of the budget, which is
+     * returned once a parser has taken the chunk.
+     */
+    private void read() {
+        try {
+            while (true) {
+                budget.acquire();
+                final Source source = claim();
+                if (source == null) {
+                    budget.release();
+                    return;
+                }
+                source.fill();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error ex) {
+            failure.compareAndSet(null, ex);
+        }
+    }
+
+    /**
+     * Wait for an open file that is neither being read nor read to the end,
+     * and claim the one with the fewest chunks waiting, taking turns between
+     * files with as many.
+     *
+     * @return The file, or null once every parser has finished
+     */
+    private Source claim() throws InterruptedException {
+        synchronized (open) {
+            while (true) {
+                int best = -1;
+                for (int idx = 0; idx < open.size(); idx++) {
+                    final int at = (cursor + idx) % open.size();
+                    final Source source = open.get(at);
+                    if (!source.reading && !source.ended
+                            && (best < 0 || source.queue.size() < open.get(best).queue.size())) {
+                        best = at;
+                    }
+                }
+                if (best >= 0) {
+                    cursor = best + 1;
+                    open.get(best).reading = true;
+                    return open.get(best);
+                }
+                if (parsing == 0) {
+                    return null;
+                }
+                open.wait();
+            }
+        }
+    }
+
+    /**
+     * Parser stage: open the next file, largest first, and parse it, handing
+     * the hosts to the merge in batches, until there are no files left.
+     */
+    private void parse(List<File> files, Integer[] order, AtomicInteger next) {
+        try {
+            for (int idx = next.getAndIncrement(); idx < order.length; idx = next.getAndIncrement()) {
+                final int file = order[idx];
+                if (verbose) {
+                    System.err.println("processing file: " + files.get(file).getPath());
+                }
+                final List<CompactHost> batch = new ArrayList<>(BATCH_SIZE);
+                boolean complete;
+                // the hosts are recycled, CompactHost copies what is exported
+                try (Source source = new Source(new FileInputStream(files.get(file)));
+                        Stream<NmapHostElement> hosts = parser.transientHosts(source)) {
+                    final Iterator<NmapHostElement> iterator = hosts.iterator();
+                    while (iterator.hasNext()) {
+                        batch.add(CompactHost.of(iterator.next()));
+                        if (batch.size() == BATCH_SIZE) {
+                            batches.put(new Batch(file, new ArrayList<>(batch), false, false));
+                            batch.clear();
+                        }
+                    }
+                    complete = true;
+                } catch (IOException | UncheckedIOException | XMLStreamException | UncheckedXMLStreamException ex) {
+                    complete = false;
+                }
+                batches.put(new Batch(file, batch, true, complete));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error ex) {
+            failure.compareAndSet(null, ex);
+        } finally {
+            synchronized (open) {
+                // the last parser stops the readers
+                if (--parsing == 0) {
+                    open.notifyAll();
+                }
+            }
+            // the merge counts one end batch per parser
+            putUninterruptibly(batches, Batch.END);
+        }
+    }
+
+    /**
+     * Queue an end marker, unless the pipeline is being shut down.
+     */
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T value) {
+        if (!Thread.currentThread().isInterrupted()) {
+            try {
+                queue.put(value);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The hosts of a file parsed since the previous batch of the file.
+     */
+    private static final class Batch {
+
+        static final Batch END = new Batch(-1, Collections.emptyList(), true, false);
+
+        final int file;
+        final List<CompactHost> hosts;
+        final boolean last;
+        final boolean complete;
+
+        Batch(int file, List<CompactHost> hosts, boolean last, boolean complete) {
+            this.file = file;
+            this.hosts = hosts;
+            this.last = last;
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * A file being parsed, as a stream of the chunks the readers have
+     * queued. Closing the stream removes the file from the open files.
+     */
+    private final class Source extends InputStream {
+
+        /** Read by the reader that claimed the file. */
+        private final InputStream in;
+        final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+        /** Whether a reader has claimed the file. */
+        boolean reading = false;
+        /** Whether the file has been read to the end. */
+        boolean ended = false;
+        private volatile boolean failed = false;
+        private boolean closed = false;
+        private byte[] chunk = new byte[0];
+        private int position = 0;
+
+        Source(InputStream in) {
+            this.in = in;
+            synchronized (open) {
+                open.add(this);
+                open.notifyAll();
+            }
+        }
+
+        /**
+         * Read the next chunk on the reader that claimed the file, which holds
+         * a permit of the budget for it.
+         */
+        void fill() {
+            final byte[] buffer = new byte[CHUNK_SIZE];
+            int length = 0;
+            int count = 0;
+            boolean error = false;
+            try {
+                while (length < buffer.length && (count = in.read(buffer, length, buffer.length - length)) >= 0) {
+                    length += count;
+                }
+            } catch (IOException ex) {
+                error = true;
+            }
+            final boolean end = error || count < 0;
+            boolean queued = false;
+            synchronized (open) {
+                reading = false;
+                if (!closed) {
+                    if (length > 0) {
+                        queue.add((length == buffer.length) ? buffer : Arrays.copyOf(buffer, length));
+                        queued = true;
+                    }
+                    if (end) {
+                        failed = error;
+                        ended = true;
+                        queue.add(END_OF_FILE);
+                    }
+                }
+                open.notifyAll();
+            }
+            if (!queued) {
+                budget.release();
+            }
+            if (end || !queued) {
+                closeFile();
+            }
+        }
+
+        private void closeFile() {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                // nothing more is read from the file
+            }
+        }
+
+        private boolean next() throws IOException {
+            if (chunk == END_OF_FILE) {
+                return false;
+            }
+            try {
+                chunk = queue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", ex);
+            }
+            position = 0;
+            if (chunk == END_OF_FILE) {
+                if (failed) {
+                    throw new IOException("error reading file");
+                }
+                return false;
+            }
+            budget.release();
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (position == chunk.length) {
+                if (!next()) {
+                    return -1;
+                }
+            }
+            return chunk[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == chunk.length) {
+                if (!next()) {
+                    return -1;
+                }
+            }
+            final int count = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            final boolean idle;
+            synchronized (open) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                open.remove(this);
+                // a reader still reading the file closes it when done
+                idle = !reading;
+            }
+            for (byte[] data = queue.poll(); data != null; data = queue.poll()) {
+                if (data != END_OF_FILE) {
+                    budget.release();
+                }
+            }
+            if (idle) {
+                closeFile();
+            }
+        }
+    }
+}
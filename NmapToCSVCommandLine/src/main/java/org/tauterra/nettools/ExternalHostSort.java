@@ -0,0 +1,369 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tauterra.nettools;
+
+import com.tauterra.nettools.HostIndex;
+import com.tauterra.nettools.Ipv4;
+import com.tauterra.nettools.nmap.model.CompactHost;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * The hosts of an export, keyed by address and sorted by address when read,
+ * with a bound on the memory they take.
+ *
+ * <p>Hosts are merged into a {@link HostIndex} as they are added, by a
+ * {@link HostMerge}, until their estimated size exceeds the budget. The index
+ * is then sorted and written to a temporary file as a run of (address, merged
+ * host) records, and a new index is started. Reading the hosts merges the
+ * runs and the last index, so the heap holds one index and a buffer per run,
+ * however many hosts there are.</p>
+ *
+ * <p>The hosts of an address in several runs are merged in the order of the
+ * runs, which gives the same result as merging them in one index.</p>
+ *
+ * @author Nicholas Folse
+ */
+final class ExternalHostSort implements Closeable {
+
+    /**
+     * A merged host and one of its addresses, in sorted order.
+     */
+    static final class SortedHost {
+
+        final int address;
+        final MergedHost host;
+
+        SortedHost(int address, MergedHost host) {
+            this.address = address;
+            this.host = host;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** Estimated bytes of an index slot per address. */
+    private static final int ADDRESS_SIZE = 16;
+
+    private final HostMerge policy;
+    private final boolean asText;
+    private final long maxMemory;
+    private final List<File> runs = new ArrayList<>();
+    private final List<Run> sources = new ArrayList<>();
+    private HostIndex<MergedHost> hosts = new HostIndex<>();
+    private long memory = 0;
+    private IOException failure;
+
+    /**
+     * Return a new, empty sort.
+     *
+     * @param policy Merges the hosts of an address
+     * @param asText Sort in the order of the address text instead of numeric
+     * order
+     * @param maxMemory The estimated bytes of hosts to keep in memory before
+     * they are written to a temporary file
+     */
+    ExternalHostSort(HostMerge policy, boolean asText, long maxMemory) {
+        this.policy = policy;
+        this.asText = asText;
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Merge a host under each of its addresses.
+     *
+     * A failure to write a run is reported by {@link #sorted() }; later hosts
+     * are ignored.
+     *
+     * @param file The index of the file of the host
+     * @param host
+     */
+    void put(int file, CompactHost host) {
+        if (failure != null) {
+            return;
+        }
+        final MergedHost scan = MergedHost.of(file, host);
+        memory += scan.estimateSize();
+        for (int idx = 0; idx < host.getIpv4AddressCount(); idx++) {
+            final int addr = host.getIpv4Address(idx);
+            final MergedHost previous = hosts.get(addr);
+            if (previous == null) {
+                hosts.put(addr, scan);
+                memory += ADDRESS_SIZE;
+            } else {
+                final MergedHost merged = policy.merge(previous, scan);
+                hosts.put(addr, merged);
+                if (merged.host != previous.host && merged.host != host) {
+                    memory += merged.estimateSize();
+                }
+            }
+        }
+        // replaced hosts are still counted, so this may spill early
+        if (memory > maxMemory) {
+            try {
+                spill();
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+    }
+
+    /**
+     * Return the number of runs written to temporary files.
+     *
+     * @return
+     */
+    int getRunCount() {
+        return runs.size();
+    }
+
+    private void spill() throws IOException {
+        final File run = File.createTempFile("nmap2csv", ".run");
+        run.deleteOnExit();
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE))) {
+            for (int addr : hosts.sortedAddresses(asText)) {
+                out.writeInt(addr);
+                hosts.get(addr).write(out);
+            }
+        }
+        hosts = new HostIndex<>();
+        memory = 0;
+    }
+
+    /**
+     * Return the merged hosts sorted by address, one per address. A host with
+     * several addresses is returned once for each.
+     *
+     * The iterator throws {@link UncheckedIOException} if a run cannot be
+     * read. No hosts may be added afterwards, and the runs are open until
+     * the sort is closed.
+     *
+     * @return
+     * @throws IOException If a run could not be written or opened
+     */
+    Iterator<SortedHost> sorted() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        for (File run : runs) {
+            sources.add(new FileRun(sources.size(), run));
+        }
+        sources.add(new IndexRun(sources.size(), hosts, hosts.sortedAddresses(asText)));
+        if (sources.size() == 1) {
+            return sources.get(0);
+        }
+        return new MergeIterator(sources);
+    }
+
+    /**
+     * Close the runs being read and delete the temporary files.
+     */
+    @Override
+    public void close() {
+        for (Run source : sources) {
+            source.close();
+        }
+        sources.clear();
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    private int compare(int a, int b) {
+        return asText ? Ipv4.compareAsText(a, b) : Integer.compareUnsigned(a, b);
+    }
+
+    /**
+     * A sorted source of hosts, positioned on its current host.
+     */
+    private abstract static class Run implements Iterator<SortedHost> {
+
+        /** The position of the run; runs are merged in order. */
+        final int order;
+        int address;
+        MergedHost host;
+        private boolean started;
+        private boolean available;
+
+        Run(int order) {
+            this.order = order;
+        }
+
+        /**
+         * Move to the next host.
+         *
+         * @return false if the run is exhausted
+         */
+        abstract boolean advance() throws IOException;
+
+        void close() {
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!started) {
+                started = true;
+                available = advanceUnchecked();
+            }
+            return available;
+        }
+
+        @Override
+        public SortedHost next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final SortedHost result = new SortedHost(address, host);
+            available = advanceUnchecked();
+            return result;
+        }
+
+        boolean advanceUnchecked() {
+            try {
+                return advance();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    private static final class IndexRun extends Run {
+
+        private final HostIndex<MergedHost> hosts;
+        private final int[] addresses;
+        private int next = 0;
+
+        IndexRun(int order, HostIndex<MergedHost> hosts, int[] addresses) {
+            super(order);
+            this.hosts = hosts;
+            this.addresses = addresses;
+        }
+
+        @Override
+        boolean advance() {
+            if (next == addresses.length) {
+                return false;
+            }
+            address = addresses[next++];
+            host = hosts.get(address);
+            return true;
+        }
+    }
+
+    private static final class FileRun extends Run {
+
+        private final DataInputStream in;
+
+        FileRun(int order, File run) throws IOException {
+            super(order);
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            try {
+                address = in.readInt();
+            } catch (EOFException ex) {
+                close();
+                return false;
+            }
+            host = MergedHost.read(in);
+            return true;
+        }
+
+        @Override
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                // nothing left to read
+            }
+        }
+    }
+
+    /**
+     * A k-way merge of runs. The hosts of an address in several runs are
+     * merged in the order of the runs.
+     */
+    private final class MergeIterator implements Iterator<SortedHost> {
+
+        private final PriorityQueue<Run> heads;
+        private SortedHost next;
+
+        MergeIterator(List<Run> sources) {
+            heads = new PriorityQueue<>(sources.size(), (a, b) -> {
+                final int result = compare(a.address, b.address);
+                return (result != 0) ? result : Integer.compare(a.order, b.order);
+            });
+            for (Run source : sources) {
+                if (source.advanceUnchecked()) {
+                    heads.add(source);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !heads.isEmpty()) {
+                // runs of the same address come out in order
+                final Run first = heads.poll();
+                final int addr = first.address;
+                MergedHost merged = first.host;
+                final List<Run> done = new ArrayList<>();
+                done.add(first);
+                while (!heads.isEmpty() && heads.peek().address == addr) {
+                    final Run run = heads.poll();
+                    merged = policy.merge(merged, run.host);
+                    done.add(run);
+                }
+                next = new SortedHost(addr, merged);
+                for (Run run : done) {
+                    if (run.advanceUnchecked()) {
+                        heads.add(run);
+                    }
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public SortedHost next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final SortedHost result = next;
+            next = null;
+            return result;
+        }
+    }
+
+}
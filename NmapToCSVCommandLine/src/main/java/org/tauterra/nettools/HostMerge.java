@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tauterra.nettools;
+
+import com.tauterra.nettools.nmap.model.CompactHost;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * How the scans of one address are merged.
+ *
+ * <p>Both policies keep the first and last time the address was seen. Scans
+ * are ordered by their start time, then by the order of their files; hosts
+ * without a start time are older than any with one. Between scans with the
+ * same key, the one merged last wins, as when a later host of the same file
+ * replaces an earlier one. The ports of a union taken from several scans are
+ * listed most recent first, then by port, so that the rows do not depend on
+ * the order the scans were merged in.</p>
+ *
+ * @author Nicholas Folse
+ */
+enum HostMerge {
+
+    /** Keep the most recent scan. */
+    LATEST("latest"),
+    /**
+     * Keep the addresses and hostnames of the most recent scan, and every
+     * port of every scan, each with its state in the most recent scan that
+     * lists it.
+     */
+    UNION("union");
+
+    private final String name;
+
+    private HostMerge(String name) {
+        this.name = name;
+    }
+
+    static HostMerge fromName(String name) {
+        for (HostMerge merge : values()) {
+            if (merge.name.equalsIgnoreCase(name)) {
+                return merge;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Merge two scans of an address.
+     *
+     * @param earlier
+     * @param later The scan merged last, which wins ties
+     * @return
+     */
+    MergedHost merge(MergedHost earlier, MergedHost later) {
+        final MergedHost newer = (earlier.key > later.key) ? earlier : later;
+        final MergedHost older = (newer == earlier) ? later : earlier;
+        final long firstSeen = (earlier.firstSeen == 0) ? later.firstSeen
+                : (later.firstSeen == 0) ? earlier.firstSeen : Math.min(earlier.firstSeen, later.firstSeen);
+        final long lastSeen = Math.max(earlier.lastSeen, later.lastSeen);
+        if (this == LATEST) {
+            return new MergedHost(newer.host, newer.key, firstSeen, lastSeen, null);
+        }
+
+        // the ports of the newer scan first, at their own indexes, then the
+        // ports only the older one lists
+        final CompactHost host = newer.host;
+        final CompactHost other = older.host;
+        final int[] ports = new int[host.getPortCount() + other.getPortCount()];
+        final long[] keys = new long[ports.length];
+        final Map<Long, Integer> index = new HashMap<>();
+        int count = 0;
+        for (int idx = 0; idx < host.getPortCount(); idx++) {
+            index.put(portId(host, idx), idx);
+            ports[count] = idx;
+            keys[count++] = newer.portKey(idx);
+        }
+        boolean mixed = false;
+        for (int idx = 0; idx < other.getPortCount(); idx++) {
+            final Integer match = index.get(portId(other, idx));
+            final long key = older.portKey(idx);
+            if (match != null && Objects.equals(host.getProtocol(match), other.getProtocol(idx))) {
+                if (key > keys[match]) {
+                    ports[match] = ~idx;
+                    keys[match] = key;
+                    mixed = true;
+                }
+            } else {
+                ports[count] = ~idx;
+                keys[count++] = key;
+                mixed = true;
+            }
+        }
+        if (!mixed) {
+            return new MergedHost(host, newer.key, firstSeen, lastSeen, newer.portKeys);
+        }
+        final Integer[] order = new Integer[count];
+        for (int idx = 0; idx < count; idx++) {
+            order[idx] = idx;
+        }
+        Arrays.sort(order, (a, b) -> (keys[a] != keys[b]) ? Long.compare(keys[b], keys[a])
+                : comparePorts(ports[a] >= 0 ? host : other, ports[a] >= 0 ? ports[a] : ~ports[a],
+                        ports[b] >= 0 ? host : other, ports[b] >= 0 ? ports[b] : ~ports[b]));
+        final int[] sortedPorts = new int[count];
+        final long[] sortedKeys = new long[count];
+        boolean sameKey = true;
+        for (int idx = 0; idx < count; idx++) {
+            sortedPorts[idx] = ports[order[idx]];
+            sortedKeys[idx] = keys[order[idx]];
+            sameKey &= (sortedKeys[idx] == newer.key);
+        }
+        return new MergedHost(CompactHost.withPorts(host, other, sortedPorts),
+                newer.key, firstSeen, lastSeen, sameKey ? null : sortedKeys);
+    }
+
+    private static int comparePorts(CompactHost a, int aIdx, CompactHost b, int bIdx) {
+        final int byPort = Integer.compare(a.getPortid(aIdx), b.getPortid(bIdx));
+        if (byPort != 0) {
+            return byPort;
+        }
+        final String aProtocol = a.getProtocol(aIdx);
+        final String bProtocol = b.getProtocol(bIdx);
+        return (aProtocol == null) ? ((bProtocol == null) ? 0 : -1)
+                : (bProtocol == null) ? 1 : aProtocol.compareTo(bProtocol);
+    }
+
+    /**
+     * Return the port number and a hash of the protocol of a port.
+     */
+    private static Long portId(CompactHost host, int idx) {
+        return ((long) host.getPortid(idx) << 32) | (Objects.hashCode(host.getProtocol(idx)) & 0xFFFFFFFFL);
+    }
+
+}
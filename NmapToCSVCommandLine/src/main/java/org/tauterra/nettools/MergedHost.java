@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tauterra.nettools;
+
+import com.tauterra.nettools.nmap.model.CompactHost;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The hosts seen under one address, merged by a {@link HostMerge}.
+ *
+ * <p>Each scan of a host has a recency key: its start time, then the index of
+ * its file. A merge keeps the key of the most recent scan, the first and last
+ * start times seen and, when ports are merged one by one, the key of the scan
+ * each port was taken from. So merges give the same result whatever order
+ * the scans arrive in. Merged hosts are immutable.</p>
+ *
+ * @author Nicholas Folse
+ */
+final class MergedHost {
+
+    /** Files that can be told apart in a recency key. */
+    private static final int FILE_BITS = 24;
+
+    final CompactHost host;
+    /** The recency key of the most recent scan. */
+    final long key;
+    /** The first and last start times, or 0 if none is known. */
+    final long firstSeen;
+    final long lastSeen;
+    /** The recency key of each port, or null if all have {@link #key}. */
+    final long[] portKeys;
+
+    MergedHost(CompactHost host, long key, long firstSeen, long lastSeen, long[] portKeys) {
+        this.host = host;
+        this.key = key;
+        this.firstSeen = firstSeen;
+        this.lastSeen = lastSeen;
+        this.portKeys = portKeys;
+    }
+
+    /**
+     * Return a single scan of a host.
+     *
+     * @param file The index of the file of the host
+     * @param host
+     * @return
+     */
+    static MergedHost of(int file, CompactHost host) {
+        final long seen = Math.max(0, host.getStarttime());
+        return new MergedHost(host, (seen << FILE_BITS) | Math.min(file, (1 << FILE_BITS) - 1), seen, seen, null);
+    }
+
+    /**
+     * Return the recency key of a port.
+     *
+     * @param idx
+     * @return
+     */
+    long portKey(int idx) {
+        return (portKeys != null) ? portKeys[idx] : key;
+    }
+
+    /**
+     * Return an estimate of the heap size in bytes.
+     *
+     * @return
+     */
+    long estimateSize() {
+        return 40 + host.estimateSize() + ((portKeys != null) ? 16 + 8L * portKeys.length : 0);
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeLong(key);
+        out.writeLong(firstSeen);
+        out.writeLong(lastSeen);
+        host.write(out);
+        out.writeBoolean(portKeys != null);
+        if (portKeys != null) {
+            for (long portKey : portKeys) {
+                out.writeLong(portKey);
+            }
+        }
+    }
+
+    static MergedHost read(DataInput in) throws IOException {
+        final long key = in.readLong();
+        final long firstSeen = in.readLong();
+        final long lastSeen = in.readLong();
+        final CompactHost host = CompactHost.read(in);
+        long[] portKeys = null;
+        if (in.readBoolean()) {
+            portKeys = new long[host.getPortCount()];
+            for (int idx = 0; idx < portKeys.length; idx++) {
+                portKeys[idx] = in.readLong();
+            }
+        }
+        return new MergedHost(host, key, firstSeen, lastSeen, portKeys);
+    }
+
+}
@@ -15,23 +15,43 @@
  */
 package org.tauterra.nettools;
 
+import com.tauterra.nettools.NmapField;
 import com.tauterra.nettools.NmapScanResultParser;
-import com.tauterra.nettools.nmap.model.NmapAddressElement;
+import com.tauterra.nettools.ReadAheadInputStream;
+import com.tauterra.nettools.StringPool;
+import com.tauterra.nettools.UncheckedXMLStreamException;
+import com.tauterra.nettools.nmap.model.CompactHost;
 import com.tauterra.nettools.nmap.model.NmapHostElement;
-import com.tauterra.nettools.nmap.model.NmapScanResult;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import static java.lang.System.err;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
-import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLInputFactory;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import javax.xml.stream.XMLStreamException;
+import org.tauterra.nettools.ExternalHostSort.SortedHost;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -45,6 +65,42 @@ import org.apache.commons.cli.ParseException;
  */
 public class NmapExportHostsServices implements SubCommand {
 
+    /**
+     * The columns that can be exported, the default ones first, in their
+     * default order.
+     */
+    private enum Column {
+        IPV4("IPv4", NmapField.ADDRESS),
+        HOSTNAME("hostname", NmapField.HOSTNAME),
+        SERVICE("service", NmapField.SERVICE_NAME),
+        PORT("port", NmapField.PORT),
+        PROTO("proto", NmapField.PORT),
+        STATE("state", NmapField.STATE),
+        PRODUCT("product", NmapField.SERVICE_PRODUCT),
+        FIRST_SEEN("first_seen", NmapField.TIMES),
+        LAST_SEEN("last_seen", NmapField.TIMES);
+
+        /** The columns exported without --columns. */
+        private static final Column[] DEFAULT = Arrays.copyOf(values(), PRODUCT.ordinal() + 1);
+
+        private final String header;
+        private final NmapField field;
+
+        private Column(String header, NmapField field) {
+            this.header = header;
+            this.field = field;
+        }
+
+        private static Column fromHeader(String header) {
+            for (Column column : values()) {
+                if (column.header.equalsIgnoreCase(header)) {
+                    return column;
+                }
+            }
+            return null;
+        }
+    }
+
     private final Options options;
 
     public NmapExportHostsServices() {
@@ -62,6 +118,79 @@ public class NmapExportHostsServices implements SubCommand {
                 .hasArg(true)
                 .build()
         );
+        options.addOption(Option.builder("c")
+                .longOpt("columns")
+                .required(false)
+                .hasArg(true)
+                .desc("comma-separated list of columns to export, in order")
+                .build()
+        );
+        options.addOption(Option.builder("t")
+                .longOpt("threads")
+                .required(false)
+                .hasArg(true)
+                .desc("number of files to parse at once (default 1)")
+                .build()
+        );
+        options.addOption(Option.builder()
+                .longOpt("virtual-threads")
+                .required(false)
+                .desc("parse each file on a virtual thread, at most one per core or --threads at once (Java 21)")
+                .build()
+        );
+        options.addOption(Option.builder()
+                .longOpt("text-order")
+                .required(false)
+                .desc("sort by address text (10.0.0.10 before 10.0.0.9) instead of numeric address")
+                .build()
+        );
+        options.addOption(Option.builder()
+                .longOpt("merge")
+                .required(false)
+                .hasArg()
+                .desc("how scans of the same address are merged: latest keeps the most recent scan, union keeps every port with its most recent state (default latest)")
+                .build()
+        );
+        options.addOption(Option.builder()
+                .longOpt("max-memory")
+                .required(false)
+                .hasArg()
+                .desc("memory for hosts before sorted runs are written to temporary files, in bytes or with a k, m or g suffix (default unlimited)")
+                .build()
+        );
+        options.addOption(Option.builder()
+                .longOpt("unordered")
+                .required(false)
+                .desc("write the rows of each host as soon as it is parsed, without sorting or merging hosts; cannot be combined with --merge, --max-memory, --text-order or --pipeline")
+                .build()
+        );
+        options.addOption(Option.builder()
+                .longOpt("pipeline")
+                .required(false)
+                .desc("read, parse, merge and write in separate stages connected by bounded queues")
+                .build()
+        );
+        options.addOption(Option.builder()
+                .longOpt("readers")
+                .required(false)
+                .hasArg(true)
+                .desc("number of reader threads of the pipeline (default 1)")
+                .build()
+        );
+        options.addOption(Option.builder()
+                .longOpt("queue-depth")
+                .required(false)
+                .hasArg(true)
+                .desc("capacity of the queues between pipeline stages (default 16)")
+                .build()
+        );
+        options.addOption(Option.builder("o")
+                .longOpt("output")
+                .required(false)
+                .hasArg()
+                .desc("CSV file to write instead of standard output")
+                .build()
+        );
         options.addOption("v", "verbose", false, "verbose logging");
     }
 
@@ -72,7 +201,7 @@ public class NmapExportHostsServices implements SubCommand {
 
         boolean verbose = cmdline.hasOption("v");
         final List<File> inputFiles = new ArrayList<>();
-        File outFile = null;
+        final File outFile = cmdline.hasOption("o") ? new File(cmdline.getOptionValue("o")) : null;
 
         String[] iFiles = cmdline.getOptionValues("i");
 
@@ -103,66 +232,570 @@ public class NmapExportHostsServices implements SubCommand {
             }
         }
 
-        NmapScanResultParser nmapResultParser = new NmapScanResultParser();
-        final Map<NmapAddressElement, NmapHostElement> hosts = new TreeMap<>();
-        for (File f : inputFiles) {
-            if (verbose) {
-                System.err.println("processing file: " + f.getPath());
+        final Column[] columns;
+        if (cmdline.hasOption("c")) {
+            List<Column> selected = new ArrayList<>();
+            for (String name : cmdline.getOptionValue("c").split(",")) {
+                Column column = Column.fromHeader(name.trim());
+                if (column == null) {
+                    err.println("Unknown column <" + name.trim() + ">, expected one of "
+                            + Arrays.toString(Column.values()).toLowerCase(Locale.ROOT));
+                    return;
+                }
+                selected.add(column);
+            }
+            columns = selected.toArray(new Column[selected.size()]);
+        } else {
+            columns = Column.DEFAULT;
+        }
+
+        // only build what the columns need; hosts are keyed by address,
+        // merged by time and exported one row per port, so those are always
+        // needed
+        final Set<NmapField> fields = EnumSet.of(NmapField.ADDRESS, NmapField.PORT, NmapField.TIMES);
+        for (Column column : columns) {
+            fields.add(column.field);
+        }
+        final boolean unordered = cmdline.hasOption("unordered");
+        if (unordered) {
+            for (String option : new String[]{"merge", "max-memory", "text-order", "pipeline", "readers", "queue-depth"}) {
+                if (cmdline.hasOption(option)) {
+                    err.println("Option --" + option + " cannot be used with --unordered");
+                    return;
+                }
+            }
+        }
+        final boolean virtualThreads = cmdline.hasOption("virtual-threads");
+        final boolean pipeline = cmdline.hasOption("pipeline");
+        final int threads = positiveOption(cmdline, "t", "threads",
+                (virtualThreads || pipeline) ? Runtime.getRuntime().availableProcessors() : 1);
+        final int readers = positiveOption(cmdline, "readers", "readers", 1);
+        final int queueDepth = positiveOption(cmdline, "queue-depth", "queue depth", 16);
+        final long maxMemory = sizeOption(cmdline, "max-memory", Long.MAX_VALUE);
+        final HostMerge policy = cmdline.hasOption("merge")
+                ? HostMerge.fromName(cmdline.getOptionValue("merge").trim()) : HostMerge.LATEST;
+        if (policy == null) {
+            err.println("Unknown merge policy <" + cmdline.getOptionValue("merge").trim() + ">, expected one of "
+                    + Arrays.toString(HostMerge.values()));
+            return;
+        }
+        if (threads < 1 || readers < 1 || queueDepth < 1 || maxMemory < 1) {
+            return;
+        }
+
+        final WritableByteChannel channel;
+        try {
+            // standard output is left open
+            channel = (outFile == null) ? new FileOutputStream(FileDescriptor.out).getChannel()
+                    : FileChannel.open(outFile.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        } catch (IOException ex) {
+            err.println("Unable to open output file <" + outFile + ">: " + ex.getMessage());
+            return;
+        }
+
+        NmapScanResultParser nmapResultParser = new NmapScanResultParser(new StringPool(), fields);
+        final boolean asText = cmdline.hasOption("text-order");
+        if (unordered) {
+            try {
+                exportUnordered(nmapResultParser, inputFiles, columns, threads, virtualThreads, verbose,
+                        new CsvWriter(channel, UNORDERED_BUFFER_SIZE));
+            } finally {
+                closeOutput(outFile, channel);
+            }
+            return;
+        }
+        final CsvWriter out = new CsvWriter(channel);
+        // keyed by packed address, sorted when printed
+        try (ExternalHostSort hosts = new ExternalHostSort(policy, asText, maxMemory)) {
+            if (pipeline) {
+                exportPipeline(new ExportPipeline(nmapResultParser, readers, threads, queueDepth, verbose),
+                        inputFiles, columns, hosts, out);
+            } else {
+                export(nmapResultParser, inputFiles, columns, hosts, threads, virtualThreads, verbose, out);
+            }
+            if (verbose && hosts.getRunCount() > 0) {
+                System.err.println("merged " + hosts.getRunCount() + " sorted runs from temporary files");
+            }
+        } catch (IOException | UncheckedIOException ex) {
+            err.println("Error sorting hosts in temporary files: " + ex.getMessage());
+        } finally {
+            closeOutput(outFile, channel);
+        }
+    }
+
+    /**
+     * Close the output if it is a file; standard output is left open.
+     */
+    private static void closeOutput(File outFile, WritableByteChannel channel) {
+        if (outFile != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                err.println("Error writing output: " + ex.getMessage());
             }
+        }
+    }
+
+    /** Buffer size of the output when rows are written as hosts are parsed. */
+    private static final int UNORDERED_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Write the rows of each host as it is parsed, with one row per port and
+     * address as in a sorted export, but without merging the scans of an
+     * address. No hosts are kept, so memory does not grow with the scans.
+     * The output is flushed after the header and after each file. Several
+     * files are parsed at once when there are several threads, and their
+     * hosts are interleaved.
+     */
+    private void exportUnordered(NmapScanResultParser nmapResultParser, List<File> inputFiles, Column[] columns,
+            int threads, boolean virtualThreads, boolean verbose, CsvWriter out) {
+        final HostWriter writer = new HostWriter(out, columns);
+        printHostHeader(out, columns);
+        writer.flush();
+        if (threads == 1 || inputFiles.size() < 2) {
+            for (File f : inputFiles) {
+                if (verbose) {
+                    System.err.println("processing file: " + f.getPath());
+                }
+                if (!parseFile(nmapResultParser, f, writer)) {
+                    System.err.println("Error parsing XML document: " + f.getName());
+                }
+                writer.flush();
+            }
+        } else {
+            ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+            final ExecutorService executor = (virtualExecutor != null) ? virtualExecutor
+                    : Executors.newFixedThreadPool(Math.min(threads, inputFiles.size()));
+            final Semaphore parsing = new Semaphore(threads);
+            final List<Future<Boolean>> results = new ArrayList<>();
             try {
-                XMLInputFactory inputFactory = XMLInputFactory.newFactory();
-                InputStream in = new FileInputStream(f);
-                XMLEventReader eventReader = inputFactory.createXMLEventReader(in);
-                NmapScanResult result = nmapResultParser.parse(eventReader);
-                result.getHosts().forEach(host -> {
-                    host.getAddresses().forEach(addr -> {
-                        if ("ipv4".equals(addr.getAddrtype())) {
-                            hosts.put(addr, host);
+                for (File file : inputFiles) {
+                    results.add(executor.submit(() -> {
+                        parsing.acquire();
+                        try {
+                            if (verbose) {
+                                System.err.println("processing file: " + file.getPath());
+                            }
+                            return parseFile(nmapResultParser, file, writer);
+                        } finally {
+                            writer.flush();
+                            parsing.release();
                         }
-                    });
-                });
-            } catch (FileNotFoundException | XMLStreamException | InstantiationException | IllegalAccessException ex) {
-                System.err.println("Error parsing XML document: " + f.getName());
+                    }));
+                }
+                for (int idx = 0; idx < inputFiles.size(); idx++) {
+                    try {
+                        if (!results.get(idx).get()) {
+                            System.err.println("Error parsing XML document: " + inputFiles.get(idx).getName());
+                        }
+                    } catch (ExecutionException ex) {
+                        System.err.println("Error parsing XML document: " + inputFiles.get(idx).getName());
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdownNow();
             }
         }
+        if (writer.failure != null) {
+            err.println("Error writing output: " + writer.failure.getMessage());
+        }
+    }
+
+    /**
+     * Writes the rows of each host it is given, from any thread. A failure
+     * to write is kept, and later hosts are ignored.
+     */
+    private final class HostWriter implements Consumer<CompactHost> {
 
-        StringBuilder sb = new StringBuilder();
-        printHostHeader(sb);
-        System.out.print(sb);
-        hosts.entrySet().forEach((t) -> {
-            sb.setLength(0);
-            printHostServices(sb, t.getKey(), t.getValue());
-            System.out.print(sb);
-        });
+        private final CsvWriter out;
+        private final Column[] columns;
+        private volatile IOException failure;
+
+        HostWriter(CsvWriter out, Column[] columns) {
+            this.out = out;
+            this.columns = columns;
+        }
+
+        @Override
+        public synchronized void accept(CompactHost host) {
+            if (failure != null) {
+                return;
+            }
+            final MergedHost scan = MergedHost.of(0, host);
+            for (int idx = 0; idx < host.getIpv4AddressCount(); idx++) {
+                printHostServices(out, columns, host.getIpv4Address(idx), scan);
+            }
+            try {
+                out.flushIfFull();
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+
+        synchronized void flush() {
+            if (failure != null) {
+                return;
+            }
+            try {
+                out.flush();
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+    }
+
+    private void export(NmapScanResultParser nmapResultParser, List<File> inputFiles, Column[] columns,
+            ExternalHostSort hosts, int threads, boolean virtualThreads, boolean verbose, CsvWriter out)
+            throws IOException {
+        // hosts are merged by time, then by file, as in a sequential run,
+        // whatever order the files finish in
+        ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+        if (virtualThreads && virtualExecutor == null && verbose) {
+            System.err.println("virtual threads are not available, using " + threads + " threads");
+        }
+        if (virtualExecutor != null) {
+            // parse as many files as there are permits, but let several
+            // times as many threads open and read ahead while they wait
+            final Semaphore parsing = new Semaphore(threads);
+            final Semaphore reading = new Semaphore(READ_AHEAD_FILES * threads);
+            if (!parseFiles(inputFiles, virtualExecutor, verbose, hosts::put,
+                    file -> parseFile(nmapResultParser, file, reading, parsing))) {
+                return;
+            }
+        } else if (threads == 1 || inputFiles.size() < 2) {
+            for (int idx = 0; idx < inputFiles.size(); idx++) {
+                final File f = inputFiles.get(idx);
+                final int file = idx;
+                if (verbose) {
+                    System.err.println("processing file: " + f.getPath());
+                }
+                if (!parseFile(nmapResultParser, f, host -> hosts.put(file, host))) {
+                    System.err.println("Error parsing XML document: " + f.getName());
+                }
+            }
+        } else if (!parseFiles(inputFiles, Executors.newFixedThreadPool(Math.min(threads, inputFiles.size())), verbose, hosts::put,
+                file -> {
+                    FileHosts result = new FileHosts();
+                    result.complete = parseFile(nmapResultParser, file, result.hosts::add);
+                    return result;
+                })) {
+            return;
+        }
+
+        final Iterator<SortedHost> sorted = hosts.sorted();
+        try {
+            printHostHeader(out, columns);
+            while (sorted.hasNext()) {
+                final SortedHost t = sorted.next();
+                printHostServices(out, columns, t.address, t.host);
+                out.flushIfFull();
+            }
+            out.flush();
+        } catch (IOException ex) {
+            err.println("Error writing output: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Return the value of a numeric option.
+     *
+     * @return The value, or 0 if it is not a positive number
+     */
+    private static int positiveOption(CommandLine cmdline, String option, String name, int defaultValue) {
+        if (!cmdline.hasOption(option)) {
+            return defaultValue;
+        }
+        int value;
+        try {
+            value = Integer.parseInt(cmdline.getOptionValue(option));
+        } catch (NumberFormatException ex) {
+            value = 0;
+        }
+        if (value < 1) {
+            err.println("Invalid number of " + name + " <" + cmdline.getOptionValue(option) + ">");
+            return 0;
+        }
+        return value;
+    }
+
+    /**
+     * Return the value of a size option, such as 512m.
+     *
+     * @return The value in bytes, or 0 if it is not a positive size
+     */
+    private static long sizeOption(CommandLine cmdline, String option, long defaultValue) {
+        if (!cmdline.hasOption(option)) {
+            return defaultValue;
+        }
+        final String text = cmdline.getOptionValue(option).trim().toLowerCase(Locale.ROOT);
+        final int suffix = text.isEmpty() ? -1 : "kmg".indexOf(text.charAt(text.length() - 1));
+        long value;
+        try {
+            value = Long.parseLong((suffix < 0) ? text : text.substring(0, text.length() - 1));
+            if (suffix >= 0 && value > 0) {
+                value = (value > (Long.MAX_VALUE >> (10 * (suffix + 1)))) ? Long.MAX_VALUE : value << (10 * (suffix + 1));
+            }
+        } catch (NumberFormatException ex) {
+            value = 0;
+        }
+        if (value < 1) {
+            err.println("Invalid size for " + option + " <" + cmdline.getOptionValue(option) + ">");
+            return 0;
+        }
+        return value;
+    }
+
+    private void exportPipeline(ExportPipeline pipeline, List<File> inputFiles, Column[] columns,
+            ExternalHostSort hosts, CsvWriter out) throws IOException {
+        // hosts are merged by time, then by file, as in a sequential run,
+        // whatever order the files finish in
+        try {
+            boolean[] complete = pipeline.parse(inputFiles, hosts::put);
+            for (int idx = 0; idx < complete.length; idx++) {
+                if (!complete[idx]) {
+                    System.err.println("Error parsing XML document: " + inputFiles.get(idx).getName());
+                }
+            }
+            final Iterator<SortedHost> sorted = hosts.sorted();
+            printHostHeader(out, columns);
+            try {
+                pipeline.write(sorted, (row, t) -> printHostServices(row, columns, t.address, t.host), out);
+            } catch (IOException ex) {
+                err.println("Error writing output: " + ex.getMessage());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private static final String DELIM = ",";
+    /**
+     * Parse a file, handing its hosts to a consumer.
+     *
+     * @return false if the file could not be parsed to the end; the hosts
+     * before the error have been handed to the consumer
+     */
+    private static boolean parseFile(NmapScanResultParser parser, File file, Consumer<CompactHost> hosts) {
+        try {
+            return parseHosts(parser.transientHosts(file.toPath()), hosts);
+        } catch (IOException | XMLStreamException ex) {
+            return false;
+        }
+    }
+
+    private static boolean parseHosts(Stream<NmapHostElement> fileHosts, Consumer<CompactHost> hosts) {
+        // the hosts are recycled, CompactHost copies what is exported
+        try (Stream<NmapHostElement> stream = fileHosts) {
+            stream.map(CompactHost::of).forEach(hosts);
+            return true;
+        } catch (UncheckedIOException | UncheckedXMLStreamException ex) {
+            return false;
+        }
+    }
+
+    /** Files that may be read ahead per parse permit in virtual thread mode. */
+    private static final int READ_AHEAD_FILES = 8;
+    /** Bytes read from a file before it waits for a parse permit. */
+    private static final int READ_AHEAD_SIZE = 1 << 20;
+    /** Buffer size of the files being read ahead in virtual thread mode. */
+    private static final int READ_AHEAD_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Parse a file on a virtual thread. The file is opened and its start
+     * read before taking a parse permit, so that blocking on slow storage
+     * overlaps with the parsing of other files; small files are read
+     * entirely.
+     */
+    private static FileHosts parseFile(NmapScanResultParser parser, File file, Semaphore reading, Semaphore parsing)
+            throws InterruptedException {
+        FileHosts result = new FileHosts();
+        reading.acquire();
+        try {
+            InputStream in;
+            try {
+                in = readAhead(file);
+            } catch (IOException ex) {
+                return result;
+            }
+            parsing.acquire();
+            try {
+                result.complete = parseHosts(parser.transientHosts(in), result.hosts::add);
+            } catch (IOException | XMLStreamException ex) {
+                result.complete = false;
+            } finally {
+                parsing.release();
+            }
+        } finally {
+            reading.release();
+        }
+        return result;
+    }
+
+    private static InputStream readAhead(File file) throws IOException {
+        // the rest of the file is read ahead while it is parsed
+        InputStream in = ReadAheadInputStream.open(file.toPath(), READ_AHEAD_BUFFER_SIZE);
+        try {
+            byte[] buffer = new byte[(int) Math.min(READ_AHEAD_SIZE, Math.max(file.length(), 8192))];
+            int length = 0;
+            int count;
+            while (length < buffer.length && (count = in.read(buffer, length, buffer.length - length)) > 0) {
+                length += count;
+            }
+            if (length < buffer.length) {
+                in.close();
+                return new ByteArrayInputStream(buffer, 0, length);
+            }
+            return new SequenceInputStream(new ByteArrayInputStream(buffer), in);
+        } catch (IOException | RuntimeException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Return an executor that starts a virtual thread per task, or null if
+     * the JVM has no virtual threads. Looked up reflectively so that the
+     * command line still runs on Java 8.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
 
-    private static void printRow(final StringBuilder sb, final String delimeter, final String... cols) {
-        for (int idx = 0; idx < cols.length; idx++) {
-            sb.append(cols[idx]);
-            if (idx < cols.length - 1) {
-                sb.append(delimeter);
+    /**
+     * The hosts parsed from one file, and whether the file was parsed to the
+     * end.
+     */
+    private static final class FileHosts {
+
+        final List<CompactHost> hosts = new ArrayList<>();
+        boolean complete;
+        /** The index of the file. */
+        int file;
+    }
+
+    /**
+     * A task that parses one file.
+     */
+    private interface FileTask {
+
+        FileHosts parse(File file) throws InterruptedException;
+    }
+
+    /**
+     * Parse files on an executor and merge their hosts, tagged with the index
+     * of their file, which gives the same result as parsing them one after
+     * another. The largest files are started first so that they do not end up
+     * running alone at the end. Each file is merged as soon as it is done, so
+     * only the files being parsed are held outside the merge. The executor is
+     * shut down when done.
+     *
+     * @return false if interrupted
+     */
+    private static boolean parseFiles(List<File> files, ExecutorService executor, boolean verbose,
+            ExportPipeline.Merge merge, FileTask task) {
+        final CompletionService<FileHosts> results = new ExecutorCompletionService<>(executor);
+        final Integer[] bySize = new Integer[files.size()];
+        for (int idx = 0; idx < bySize.length; idx++) {
+            bySize[idx] = idx;
+        }
+        final long[] sizes = files.stream().mapToLong(File::length).toArray();
+        Arrays.sort(bySize, (a, b) -> Long.compare(sizes[b], sizes[a]));
+
+        try {
+            for (int idx : bySize) {
+                final File file = files.get(idx);
+                results.submit(() -> {
+                    if (verbose) {
+                        System.err.println("processing file: " + file.getPath());
+                    }
+                    final FileHosts result = task.parse(file);
+                    result.file = idx;
+                    return result;
+                });
             }
+            for (int done = 0; done < files.size(); done++) {
+                final FileHosts result = getResult(results.take());
+                for (CompactHost host : result.hosts) {
+                    merge.merge(result.file, host);
+                }
+                if (!result.complete) {
+                    System.err.println("Error parsing XML document: " + files.get(result.file).getName());
+                }
+            }
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static FileHosts getResult(Future<FileHosts> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
         }
-        sb.append("\n");
     }
 
-    private final void printHostHeader(StringBuilder sb) {
-        printRow(sb, DELIM, "IPv4", "hostname", "service", "port", "proto", "state", "product");
+    private final void printHostHeader(CsvWriter out, Column[] columns) {
+        for (Column column : columns) {
+            out.field(column.header);
+        }
+        out.endRow();
     }
 
-    private final void printHostServices(StringBuilder sb, NmapAddressElement addr, NmapHostElement host) {
-        String ip4addr = addr.getAddr();
-        String hostname = (host.getHostnames().isEmpty()) ? "" : host.getHostnames().get(0).getName();
-        host.getPorts().forEach((port) -> {
-            final String proto = port.getProtocol();
-            final String portID = Integer.toString(port.getPortid());
-            final String state = port.getState().getState();
-            final String serviceProduct = port.getService().getProduct();
-            final String serviceName = port.getService().getName();
-            printRow(sb, DELIM, ip4addr, hostname, serviceName, portID, proto, state, serviceProduct);
-        });
+    private final void printHostServices(CsvWriter out, Column[] columns, int addr, MergedHost merged) {
+        final CompactHost host = merged.host;
+        String hostname = (host.getHostnameCount() == 0) ? "" : host.getHostname(0);
+        for (int idx = 0; idx < host.getPortCount(); idx++) {
+            for (Column column : columns) {
+                switch (column) {
+                    case IPV4:
+                        out.ipv4(addr);
+                        break;
+                    case HOSTNAME:
+                        out.field(hostname);
+                        break;
+                    case SERVICE:
+                        out.field(host.getServiceName(idx));
+                        break;
+                    case PORT:
+                        out.field(host.getPortid(idx));
+                        break;
+                    case PROTO:
+                        out.field(host.getProtocol(idx));
+                        break;
+                    case STATE:
+                        out.field(host.getState(idx));
+                        break;
+                    case PRODUCT:
+                        out.field(host.getServiceProduct(idx));
+                        break;
+                    case FIRST_SEEN:
+                        out.time(merged.firstSeen);
+                        break;
+                    case LAST_SEEN:
+                        out.time(merged.lastSeen);
+                        break;
+                }
+            }
+            out.endRow();
+        }
     }
 
     @Override
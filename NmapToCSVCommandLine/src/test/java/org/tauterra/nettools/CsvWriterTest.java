@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tauterra.nettools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Nicholas Folse
+ */
+public class CsvWriterTest {
+
+    public CsvWriterTest() {
+    }
+
+    /**
+     * Test that fields are quoted only when they contain a delimiter, a
+     * quote or a line break.
+     */
+    @Test
+    public void testQuoting() throws IOException {
+        System.out.println("Testing CSV quoting");
+
+        assertEquals("tcp,open,,\n", row("tcp", "open", "", null));
+        assertEquals("\"Microsoft Windows RPC, v2\",msrpc\n", row("Microsoft Windows RPC, v2", "msrpc"));
+        assertEquals("\"say \"\"hi\"\"\",\"\"\"\"\n", row("say \"hi\"", "\""));
+        assertEquals("\"line\nbreak\",\"carriage\rreturn\",\"both\r\n\"\n", row("line\nbreak", "carriage\rreturn", "both\r\n"));
+        assertEquals("semi;colon,tab\tseparated,'single'\n", row("semi;colon", "tab\tseparated", "'single'"));
+    }
+
+    /**
+     * Test values that are longer than the cached ones, and values with
+     * characters outside ASCII.
+     */
+    @Test
+    public void testLongAndNonAscii() throws IOException {
+        System.out.println("Testing long and non-ASCII CSV fields");
+
+        final String shortText = "Caf\u00e9 \u65e5\u672c \ud83d\ude00";
+        final String longText = repeat("abcdefgh", 10);
+        final String longQuoted = repeat("ab,\"cd\" ", 10);
+        final String longText8 = repeat("\u00fcber ", 15);
+        final String longQuoted8 = repeat("\u00fcber, ", 15);
+        assertTrue(longText.length() > 64 && longQuoted.length() > 64 && longText8.length() > 64);
+
+        assertEquals(shortText + "," + longText + ",\"" + longQuoted.replace("\"", "\"\"") + "\"\n",
+                row(shortText, longText, longQuoted));
+        assertEquals(longText8 + ",\"" + longQuoted8 + "\",\"" + shortText + ",\"\n",
+                row(longText8, longQuoted8, shortText + ","));
+
+        // cached values are written the same way each time
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CsvWriter out = new CsvWriter(Channels.newChannel(bytes));
+        for (int idx = 0; idx < 3; idx++) {
+            out.field(shortText).field("a,b").field(longQuoted8).endRow();
+        }
+        out.flush();
+        String line = shortText + ",\"a,b\",\"" + longQuoted8 + "\"\n";
+        assertEquals(line + line + line, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test of the numeric fields.
+     */
+    @Test
+    public void testNumbers() throws IOException {
+        System.out.println("Testing CSV numbers, addresses and times");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CsvWriter out = new CsvWriter(Channels.newChannel(bytes));
+        out.field(0).field(7).field(-42).field(65535).field(Integer.MAX_VALUE).field(Integer.MIN_VALUE).endRow();
+        out.ipv4(0).ipv4(0x7F000001).ipv4(0xFFFFFFFF).ipv4(0x0A00FF09).endRow();
+        out.time(0).time(100).time(1500000000L).time(-1L).time(951782400L).endRow();
+        out.flush();
+        assertEquals("0,7,-42,65535,2147483647,-2147483648\n"
+                + "0.0.0.0,127.0.0.1,255.255.255.255,10.0.255.9\n"
+                + ",1970-01-01T00:01:40Z,2017-07-14T02:40:00Z,1969-12-31T23:59:59Z,2000-02-29T00:00:00Z\n",
+                new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+
+        // times are written as Instant writes them, including years that do
+        // not have four digits
+        long[] times = {1L, 86399L, 86400L, 1700000000L, -62135596800L, -62167219200L, 253402300799L,
+            253402300800L, 4102444800000L, -62167219201L};
+        for (long time : times) {
+            bytes.reset();
+            out.time(time).endRow();
+            out.flush();
+            assertEquals(Instant.ofEpochSecond(time).toString() + "\n", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Test that rows longer than the buffer grow it, and that full buffers
+     * are written between rows.
+     */
+    @Test
+    public void testBufferGrowth() throws IOException {
+        System.out.println("Testing CSV buffer growth");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CsvWriter out = new CsvWriter(Channels.newChannel(bytes), 16);
+        StringBuilder expected = new StringBuilder();
+
+        // longer than the buffer and its margin
+        final String wide = repeat("0123456789", 1000);
+        out.field(wide).field("x,y").endRow();
+        expected.append(wide).append(",\"x,y\"\n");
+        assertEquals(0, bytes.size());
+        out.flushIfFull();
+        assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+
+        for (int idx = 0; idx < 1000; idx++) {
+            out.field(idx).field("row " + idx).ipv4(idx).endRow();
+            expected.append(idx).append(",row ").append(idx).append(",0.0.").append(idx >>> 8).append('.').append(idx & 0xFF).append('\n');
+            out.flushIfFull();
+            // no more than a row is held back
+            assertTrue(expected.length() - bytes.size() < 32);
+        }
+        out.flush();
+        assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        out.flush();
+        assertEquals(expected.length(), bytes.size());
+    }
+
+    private static String row(String... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CsvWriter out = new CsvWriter(Channels.newChannel(bytes));
+        for (String value : values) {
+            out.field(value);
+        }
+        out.endRow();
+        out.flush();
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int idx = 0; idx < count; idx++) {
+            sb.append(text);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,470 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import com.tauterra.nettools.StAXObjectBuilder.Reducer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.StartElement;
+
+/**
+ * An immutable snapshot of a {@link StAXObjectBuilder} tree, created by
+ * {@link StAXObjectBuilder#compile() }.
+ *
+ * <p>Every tag and attribute name of the tree is resolved once, when the
+ * builder is compiled, into a dispatch table per builder. Parsing then finds
+ * the handler for an element or attribute with a single lookup. StAX readers
+ * normally return interned names, so the lookup is usually an identity
+ * comparison against the interned names of the table, with a hash lookup as
+ * fallback.</p>
+ *
+ * <p>Objects of builders marked with
+ * {@link StAXObjectBuilder#setReusable(java.util.function.Consumer) } are
+ * recycled between the elements of a stream, or between emitted elements.
+ * Only the objects below the streamed or emitted element are recycled; a
+ * reusable builder that also occurs elsewhere in the tree creates new objects,
+ * since those may be kept by their parents. The pool of recycled objects
+ * belongs to a single parse.</p>
+ *
+ * <p>Later changes to the source builders do not affect a compiled builder. A
+ * compiled builder holds no parse state and can be shared between threads,
+ * as long as the handlers and suppliers it was built from are thread-safe.</p>
+ *
+ * @author Nicholas Folse
+ * @param <U> The type of object that this builder will produce
+ */
+public final class CompiledObjectBuilder<U> {
+
+    private final Node root;
+    private final Consumer<StartElement> missingHandler;
+    /** The node of each source builder. */
+    private final Map<StAXObjectBuilder<?>, Node> nodes;
+
+    CompiledObjectBuilder(StAXObjectBuilder<U> builder) {
+        Map<StAXObjectBuilder<?>, Node> compiled = new IdentityHashMap<>();
+        this.root = compile(builder, compiled);
+        this.missingHandler = builder.getMissingElementHandler();
+        for (Node node : compiled.values()) {
+            node.recycled = reusableNodes(root, node);
+        }
+        this.nodes = compiled;
+    }
+
+    /**
+     * Return the XML tag name processed by this builder.
+     *
+     * @return
+     */
+    public String getTagName() {
+        return root.tagName;
+    }
+
+    /**
+     * Parse an XML document.
+     *
+     * See {@link StAXObjectBuilder#parseDocument(javax.xml.stream.XMLStreamReader) }.
+     *
+     * @param streamReader
+     * @return
+     * @throws XMLStreamException
+     */
+    public U parseDocument(XMLStreamReader streamReader) throws XMLStreamException {
+        return parseDocument(streamReader, null, null);
+    }
+
+    /**
+     * Parse an XML document, streaming the objects built by a nested builder.
+     *
+     * See {@link StAXObjectBuilder#parseDocument(javax.xml.stream.XMLStreamReader, StAXObjectBuilder, java.util.function.Consumer) }.
+     * The emitted builder is identified by the source builder it was compiled
+     * from.
+     *
+     * @param <T>
+     * @param streamReader
+     * @param emitBuilder A builder nested (directly or indirectly) in this one
+     * @param emitter Receives each object built by {@code emitBuilder}
+     * @return The top-level object, without the emitted children
+     * @throws XMLStreamException
+     */
+    @SuppressWarnings("unchecked")
+    public <T> U parseDocument(XMLStreamReader streamReader, StAXObjectBuilder<T> emitBuilder, Consumer<? super T> emitter) throws XMLStreamException {
+        int eventType = streamReader.getEventType();
+        while (true) {
+            if (eventType == XMLStreamConstants.START_ELEMENT
+                    && (root.tagName == null || root.tagName.equals(streamReader.getLocalName()))) {
+                Context context = new Context(missingHandler, emitBuilder, emitter,
+                        (emitBuilder != null) ? nodes.get(emitBuilder) : null, nodes.size());
+                Object result = parse(root, streamReader, context);
+                if (root.source == emitBuilder) {
+                    context.emitter.accept(result);
+                }
+                return (U) result;
+            }
+            if (eventType == XMLStreamConstants.END_DOCUMENT || !streamReader.hasNext()) {
+                break;
+            }
+            eventType = streamReader.next();
+        }
+        return null;
+    }
+
+    /**
+     * Parse an object from a StAX cursor.
+     *
+     * See {@link StAXObjectBuilder#parse(javax.xml.stream.XMLStreamReader) }.
+     *
+     * @param streamReader
+     * @return
+     * @throws XMLStreamException
+     */
+    @SuppressWarnings("unchecked")
+    public U parse(XMLStreamReader streamReader) throws XMLStreamException {
+        return (U) parse(root, streamReader, new Context(missingHandler, null, null, null, 0));
+    }
+
+    /**
+     * Return a lazy stream of the objects built from a document.
+     *
+     * See {@link StAXObjectBuilder#stream(javax.xml.stream.XMLStreamReader) }.
+     *
+     * @param streamReader
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public Stream<U> stream(XMLStreamReader streamReader) {
+        final Context context = new Context(missingHandler, null, null, root, nodes.size());
+        return StAXSpliterator.stream(streamReader, root.tagName, reader -> {
+            // the previous element has been consumed
+            context.release(root);
+            return (U) parse(root, reader, context);
+        });
+    }
+
+    /**
+     * Compile a builder and the builders nested in it. Builders that occur
+     * more than once in the tree, including recursive ones, share a node.
+     */
+    private static Node compile(StAXObjectBuilder<?> builder, Map<StAXObjectBuilder<?>, Node> compiled) {
+        Node node = compiled.get(builder);
+        if (node != null) {
+            return node;
+        }
+        node = new Node(builder, compiled.size());
+        compiled.put(builder, node);
+
+        Map<String, Entry> entries = new HashMap<>();
+        builder.getIgnoredTags().forEach(name -> entries.put(name, Entry.IGNORED));
+        builder.getHandlers().forEach((name, handler) -> entries.put(name, new Entry(null, handler, null)));
+        for (Map.Entry<String, ? extends StAXObjectBuilder<?>> nested : builder.getBuilders().entrySet()) {
+            String name = nested.getKey();
+            entries.put(name, new Entry(compile(nested.getValue(), compiled),
+                    builder.getObjectHandlers().get(name), builder.getReducers().get(name)));
+        }
+        node.elements = new NameTable<>(entries);
+        node.attributes = new NameTable<>(builder.getAttributeHandlers());
+        return node;
+    }
+
+    /**
+     * Return the ids of the reusable nodes that are recycled when the object
+     * of a node has been consumed: those in its subtree that cannot be
+     * reached from the root without passing through the node.
+     */
+    private static int[] reusableNodes(Node root, Node node) {
+        final Map<Node, Boolean> outside = reachable(root, node);
+        int[] ids = new int[0];
+        for (Node next : reachable(node, null).keySet()) {
+            if (next.resetter != null && !outside.containsKey(next)) {
+                ids = Arrays.copyOf(ids, ids.length + 1);
+                ids[ids.length - 1] = next.id;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Return the nodes reachable from a node, not passing through another.
+     */
+    private static Map<Node, Boolean> reachable(Node from, Node avoided) {
+        Map<Node, Boolean> visited = new IdentityHashMap<>();
+        if (from == avoided) {
+            return visited;
+        }
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(from);
+        visited.put(from, Boolean.TRUE);
+        while (!pending.isEmpty()) {
+            Node next = pending.pop();
+            for (Entry entry : next.elements.values()) {
+                if (entry.builder != null && entry.builder != avoided && visited.put(entry.builder, Boolean.TRUE) == null) {
+                    pending.push(entry.builder);
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Parse the object of a node. The handlers of a node take objects of its
+     * own builder, so they are called with the object it has just created.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object parse(Node node, XMLStreamReader streamReader, Context context) throws XMLStreamException {
+        final Object result = context.create(node);
+        Object[] reductions = null;
+        final NameTable<BiConsumer<?, String>> attributes = node.attributes;
+        if (!attributes.isEmpty()) {
+            for (int idx = 0, count = streamReader.getAttributeCount(); idx < count; idx++) {
+                BiConsumer<Object, String> handler = (BiConsumer<Object, String>) attributes.get(streamReader.getAttributeLocalName(idx));
+                if (handler != null) {
+                    handler.accept(result, streamReader.getAttributeValue(idx));
+                }
+            }
+        }
+        OUTER:
+        while (streamReader.hasNext()) {
+            int eventType = streamReader.next();
+            switch (eventType) {
+                case XMLStreamConstants.START_ELEMENT:
+                    Entry entry = node.elements.get(streamReader.getLocalName());
+                    if (entry == null) {
+                        StAXObjectBuilder.skipElement(streamReader, context.missingHandler);
+                    } else if (entry == Entry.IGNORED) {
+                        StAXObjectBuilder.skipElement(streamReader);
+                    } else if (entry.builder != null) {
+                        Object item = parse(entry.builder, streamReader, context);
+                        if (entry.builder.source == context.emitBuilder) {
+                            context.emitter.accept(item);
+                            context.release(entry.builder);
+                        } else if (entry.reducer == null) {
+                            ((BiConsumer<Object, Object>) entry.handler).accept(result, item);
+                        } else {
+                            reductions = reduce(node, reductions, entry.reducer, item);
+                        }
+                    } else {
+                        ((BiConsumer<Object, Object>) entry.handler).accept(result, StAXObjectBuilder.readElementText(streamReader));
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    if (node.characterDataHandler != null) {
+                        StringBuilder sb = new StringBuilder();
+                        while (eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.CDATA) {
+                            sb.append(streamReader.getTextCharacters(), streamReader.getTextStart(), streamReader.getTextLength());
+                            if (!streamReader.hasNext()) {
+                                break;
+                            }
+                            eventType = streamReader.next();
+                        }
+                        ((BiConsumer<Object, String>) node.characterDataHandler).accept(result, sb.toString());
+                        break OUTER;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    break OUTER;
+                default:
+                    break;
+            }
+        }
+        for (Reducer<?, ?, ?> reducer : node.reducers) {
+            reducer.finish(result, (reductions != null) ? reductions[reducer.index] : reducer.identity);
+        }
+        return result;
+    }
+
+    private static Object[] reduce(Node node, Object[] reductions, Reducer<?, ?, ?> reducer, Object item) {
+        if (reductions == null) {
+            reductions = new Object[node.reducerCount];
+            for (Reducer<?, ?, ?> each : node.reducers) {
+                reductions[each.index] = each.identity;
+            }
+        }
+        reductions[reducer.index] = reducer.accumulate(reductions[reducer.index], item);
+        return reductions;
+    }
+
+    /**
+     * The compiled form of one builder. The tables are assigned while the
+     * tree is compiled and never change afterwards; the final root field of
+     * the enclosing builder publishes them safely.
+     */
+    private static final class Node {
+
+        final StAXObjectBuilder<?> source;
+        final int id;
+        final String tagName;
+        final Supplier<?> supplier;
+        final Consumer<?> resetter;
+        final BiConsumer<?, String> characterDataHandler;
+        final Reducer<?, ?, ?>[] reducers;
+        final int reducerCount;
+        NameTable<Entry> elements;
+        NameTable<BiConsumer<?, String>> attributes;
+        int[] recycled;
+
+        Node(StAXObjectBuilder<?> source, int id) {
+            this.source = source;
+            this.id = id;
+            this.tagName = source.getTagName();
+            this.supplier = source.getSupplier();
+            this.resetter = source.getResetter();
+            this.characterDataHandler = source.getCharacterDataHandler();
+            this.reducers = source.getReducers().values().toArray(new Reducer<?, ?, ?>[0]);
+            this.reducerCount = source.getReducerCount();
+        }
+    }
+
+    /**
+     * The handler for a child element: a nested builder and either the
+     * handler that applies its object or the reducer that folds it, or a leaf
+     * handler when {@code builder} is null. {@link #IGNORED} marks an ignored
+     * element.
+     */
+    private static final class Entry {
+
+        static final Entry IGNORED = new Entry(null, null, null);
+
+        final Node builder;
+        final BiConsumer<?, ?> handler;
+        final Reducer<?, ?, ?> reducer;
+
+        Entry(Node builder, BiConsumer<?, ?> handler, Reducer<?, ?, ?> reducer) {
+            this.builder = builder;
+            this.handler = handler;
+            this.reducer = reducer;
+        }
+    }
+
+    /**
+     * An immutable map from tag or attribute names to values, searched by
+     * identity against interned names before falling back to a hash lookup.
+     */
+    private static final class NameTable<V> {
+
+        private final String[] names;
+        private final Object[] values;
+        private final Map<String, V> byName;
+
+        NameTable(Map<String, ? extends V> map) {
+            this.names = new String[map.size()];
+            this.values = new Object[map.size()];
+            this.byName = new HashMap<>(map);
+            int idx = 0;
+            for (Map.Entry<String, ? extends V> entry : map.entrySet()) {
+                names[idx] = entry.getKey().intern();
+                values[idx] = entry.getValue();
+                idx++;
+            }
+        }
+
+        boolean isEmpty() {
+            return names.length == 0;
+        }
+
+        Iterable<V> values() {
+            return byName.values();
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(String name) {
+            final String[] names = this.names;
+            for (int idx = 0; idx < names.length; idx++) {
+                if (names[idx] == name) {
+                    return (V) values[idx];
+                }
+            }
+            return byName.get(name);
+        }
+    }
+
+    /**
+     * State shared by the builders taking part in a single parse, including
+     * the objects of the nodes recycled when a node is released. The n-th
+     * object created by such a node since it was last released is the n-th
+     * object of its pool.
+     */
+    private static final class Context {
+
+        final Consumer<StartElement> missingHandler;
+        final StAXObjectBuilder<?> emitBuilder;
+        final Consumer<Object> emitter;
+        final Object[][] pools;
+        final int[] used;
+
+        /**
+         * @param released The node whose objects are released once consumed,
+         * or null if none is
+         * @param nodeCount The number of nodes of the tree
+         */
+        @SuppressWarnings("unchecked")
+        Context(Consumer<StartElement> missingHandler, StAXObjectBuilder<?> emitBuilder, Consumer<?> emitter,
+                Node released, int nodeCount) {
+            this.missingHandler = missingHandler;
+            this.emitBuilder = emitBuilder;
+            this.emitter = (Consumer<Object>) emitter;
+            final boolean pooling = (released != null && released.recycled.length > 0);
+            this.pools = pooling ? new Object[nodeCount][] : null;
+            this.used = pooling ? new int[nodeCount] : null;
+            if (pooling) {
+                // a node without a pool creates a new object every time
+                for (int id : released.recycled) {
+                    pools[id] = new Object[4];
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        Object create(Node node) {
+            if (pools == null || pools[node.id] == null) {
+                return node.supplier.get();
+            }
+            final int idx = used[node.id]++;
+            Object[] pool = pools[node.id];
+            if (idx < pool.length && pool[idx] != null) {
+                ((Consumer<Object>) node.resetter).accept(pool[idx]);
+                return pool[idx];
+            }
+            if (idx == pool.length) {
+                pool = pools[node.id] = Arrays.copyOf(pool, 2 * pool.length);
+            }
+            return pool[idx] = node.supplier.get();
+        }
+
+        /**
+         * Make the objects created below a node available again, once the
+         * node's object has been consumed.
+         */
+        void release(Node node) {
+            if (pools != null) {
+                for (int id : node.recycled) {
+                    used[id] = 0;
+                }
+            }
+        }
+    }
+
+}
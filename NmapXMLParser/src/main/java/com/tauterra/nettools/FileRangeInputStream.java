@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An input stream over a byte range of a file.
+ *
+ * Reads use absolute positions, so several streams may read different ranges
+ * of the same channel concurrently. Closing the stream does not close the
+ * channel.
+ *
+ * @author Nicholas Folse
+ */
+class FileRangeInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long end;
+    private final ByteBuffer buffer;
+    private long position;
+
+    /**
+     * @param channel
+     * @param start First byte of the range
+     * @param end End of the range (exclusive)
+     */
+    FileRangeInputStream(FileChannel channel, long start, long end) {
+        this.channel = channel;
+        this.position = start;
+        this.end = end;
+        this.buffer = ByteBuffer.allocate((int) Math.max(1, Math.min(BUFFER_SIZE, end - start)));
+        this.buffer.limit(0);
+    }
+
+    private boolean fill() throws IOException {
+        if (position >= end) {
+            return false;
+        }
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), end - position));
+        int count = channel.read(buffer, position);
+        if (count <= 0) {
+            buffer.limit(0);
+            return false;
+        }
+        position += count;
+        buffer.flip();
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import java.util.Objects;
+
+/**
+ * A map from packed IPv4 addresses (see {@link Ipv4}) to values, for indexing
+ * the hosts of large inventories.
+ *
+ * <p>Addresses are kept in an open-addressing table of primitive ints, so an
+ * insert hashes an int instead of comparing address strings, and no entry
+ * objects are allocated. The index is not sorted; {@link #sortedAddresses(boolean) }
+ * sorts the addresses once, when they are needed in order.</p>
+ *
+ * <p>Values may not be null. The index is not thread-safe.</p>
+ *
+ * @author Nicholas Folse
+ * @param <V> The type of the values
+ */
+public final class HostIndex<V> {
+
+    private int[] addresses = new int[32];
+    /** The value of each slot, or null for an empty slot. */
+    private Object[] values = new Object[32];
+    private int size = 0;
+
+    public HostIndex() {
+    }
+
+    /**
+     * Return the number of addresses in the index.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the value of an address.
+     *
+     * @param address
+     * @return The value, or null if the address is not in the index
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int address) {
+        final int mask = addresses.length - 1;
+        for (int slot = hash(address) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            if (addresses[slot] == address) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Set the value of an address.
+     *
+     * @param address
+     * @param value
+     * @return The previous value, or null if the address was not in the index
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int address, V value) {
+        Objects.requireNonNull(value, "value");
+        final int mask = addresses.length - 1;
+        int slot = hash(address) & mask;
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (addresses[slot] == address) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        addresses[slot] = address;
+        values[slot] = value;
+        if (2 * ++size > addresses.length) {
+            rehash();
+        }
+        return null;
+    }
+
+    private void rehash() {
+        final int[] oldAddresses = addresses;
+        final Object[] oldValues = values;
+        addresses = new int[2 * oldAddresses.length];
+        values = new Object[2 * oldValues.length];
+        final int mask = addresses.length - 1;
+        for (int idx = 0; idx < oldValues.length; idx++) {
+            if (oldValues[idx] != null) {
+                int slot = hash(oldAddresses[idx]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                addresses[slot] = oldAddresses[idx];
+                values[slot] = oldValues[idx];
+            }
+        }
+    }
+
+    /**
+     * Scatter the addresses of a subnet, which differ in their low bits only.
+     */
+    private static int hash(int address) {
+        final int hash = address * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Return the addresses in the index, in no particular order.
+     *
+     * @return
+     */
+    public int[] addresses() {
+        final int[] result = new int[size];
+        int count = 0;
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                result[count++] = addresses[slot];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the addresses in the index, sorted.
+     *
+     * @param asText Sort in the order of the dotted-quad text, as
+     * {@link Ipv4#compareAsText(int, int) }, instead of numeric order
+     * @return
+     */
+    public int[] sortedAddresses(boolean asText) {
+        final int[] result = addresses();
+        if (asText) {
+            Ipv4.sortAsText(result);
+        } else {
+            Ipv4.sort(result);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import java.util.Arrays;
+
+/**
+ * Conversions between dotted-quad IPv4 addresses and addresses packed into an
+ * {@code int}, with the first octet in the most significant byte.
+ *
+ * @author Nicholas Folse
+ */
+public final class Ipv4 {
+
+    /**
+     * Returned by {@link #parse(java.lang.String) } for invalid addresses.
+     */
+    public static final long INVALID = -1L;
+
+    private Ipv4() {
+    }
+
+    /**
+     * Parse a dotted-quad address.
+     *
+     * Only the canonical form is accepted: four decimal octets of at most
+     * three digits, without leading zeros, so that formatting the packed
+     * address reproduces the text exactly.
+     *
+     * @param text
+     * @return The packed address as an unsigned value, or {@link #INVALID}
+     */
+    public static long parse(String text) {
+        if (text == null) {
+            return INVALID;
+        }
+        final int length = text.length();
+        long address = 0;
+        int pos = 0;
+        for (int octet = 0; octet < 4; octet++) {
+            if (octet > 0) {
+                if (pos >= length || text.charAt(pos) != '.') {
+                    return INVALID;
+                }
+                pos++;
+            }
+            int start = pos;
+            int value = 0;
+            while (pos < length && pos - start < 3) {
+                int digit = text.charAt(pos) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+                pos++;
+            }
+            int digits = pos - start;
+            if (digits == 0 || value > 255 || (digits > 1 && text.charAt(start) == '0')) {
+                return INVALID;
+            }
+            address = (address << 8) | value;
+        }
+        return (pos == length) ? address : INVALID;
+    }
+
+    /**
+     * Format a packed address as a dotted quad.
+     *
+     * @param address
+     * @return
+     */
+    public static String format(int address) {
+        return appendTo(new StringBuilder(15), address).toString();
+    }
+
+    /**
+     * Append a packed address to a StringBuilder as a dotted quad.
+     *
+     * @param sb
+     * @param address
+     * @return sb
+     */
+    public static StringBuilder appendTo(StringBuilder sb, int address) {
+        sb.append(address >>> 24).append('.')
+                .append((address >>> 16) & 0xFF).append('.')
+                .append((address >>> 8) & 0xFF).append('.')
+                .append(address & 0xFF);
+        return sb;
+    }
+
+    /**
+     * Compare two packed addresses in the order of their dotted-quad text.
+     *
+     * This is the order of {@code format(a).compareTo(format(b))}, in which
+     * {@code 10.0.0.10} sorts before {@code 10.0.0.9}, computed without
+     * formatting the addresses.
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    public static int compareAsText(int a, int b) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            int result = compareOctetText((a >>> shift) & 0xFF, (b >>> shift) & 0xFF);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compare two octets by their decimal text. When one text is a prefix of
+     * the other, the shorter one is followed by a dot or the end of the
+     * address, both of which sort before any digit.
+     */
+    private static int compareOctetText(int x, int y) {
+        if (x == y) {
+            return 0;
+        }
+        final int xDigits = digits(x);
+        final int yDigits = digits(y);
+        final int common = Math.min(xDigits, yDigits);
+        // the leading common digits of each octet, as numbers
+        int xPrefix = x / POWERS[xDigits - common];
+        int yPrefix = y / POWERS[yDigits - common];
+        if (xPrefix != yPrefix) {
+            return Integer.compare(xPrefix, yPrefix);
+        }
+        return Integer.compare(xDigits, yDigits);
+    }
+
+    private static final int[] POWERS = {1, 10, 100};
+
+    private static int digits(int octet) {
+        return (octet < 10) ? 1 : (octet < 100) ? 2 : 3;
+    }
+
+    /** The rank of each octet in text order, and the octet of each rank. */
+    private static final int[] TEXT_RANK = new int[256];
+    private static final int[] TEXT_OCTET = new int[256];
+
+    static {
+        Integer[] octets = new Integer[256];
+        for (int octet = 0; octet < octets.length; octet++) {
+            octets[octet] = octet;
+        }
+        Arrays.sort(octets, Ipv4::compareOctetText);
+        for (int rank = 0; rank < octets.length; rank++) {
+            TEXT_RANK[octets[rank]] = rank;
+            TEXT_OCTET[rank] = octets[rank];
+        }
+    }
+
+    /**
+     * Sort packed addresses in numeric order, 0.0.0.0 first.
+     *
+     * This is a radix sort, linear in the number of addresses.
+     *
+     * @param addresses
+     */
+    public static void sort(int[] addresses) {
+        radixSort(addresses);
+    }
+
+    /**
+     * Sort packed addresses in the order of {@link #compareAsText(int, int) }.
+     *
+     * Each octet is replaced by its rank in text order, which turns text order
+     * into numeric order, so this is a radix sort as well.
+     *
+     * @param addresses
+     */
+    public static void sortAsText(int[] addresses) {
+        for (int idx = 0; idx < addresses.length; idx++) {
+            addresses[idx] = mapOctets(addresses[idx], TEXT_RANK);
+        }
+        radixSort(addresses);
+        for (int idx = 0; idx < addresses.length; idx++) {
+            addresses[idx] = mapOctets(addresses[idx], TEXT_OCTET);
+        }
+    }
+
+    private static int mapOctets(int address, int[] table) {
+        return (table[address >>> 24] << 24)
+                | (table[(address >>> 16) & 0xFF] << 16)
+                | (table[(address >>> 8) & 0xFF] << 8)
+                | table[address & 0xFF];
+    }
+
+    /**
+     * Sort ints as unsigned values, least significant byte first.
+     */
+    private static void radixSort(int[] values) {
+        int[] from = values;
+        int[] to = new int[values.length];
+        final int[] counts = new int[257];
+        for (int shift = 0; shift < 32; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int value : from) {
+                counts[((value >>> shift) & 0xFF) + 1]++;
+            }
+            if (from.length == 0 || counts[((from[0] >>> shift) & 0xFF) + 1] == from.length) {
+                // every value has the same byte here
+                continue;
+            }
+            for (int digit = 0; digit < 256; digit++) {
+                counts[digit + 1] += counts[digit];
+            }
+            for (int value : from) {
+                to[counts[(value >>> shift) & 0xFF]++] = value;
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != values) {
+            System.arraycopy(from, 0, values, 0, values.length);
+        }
+    }
+
+}
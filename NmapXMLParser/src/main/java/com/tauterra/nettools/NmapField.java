@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+/**
+ * The parts of a host that {@link NmapScanResultParser} can build.
+ *
+ * A parser created with a subset of the fields only sets the attributes and
+ * children that the model binds to that subset, by name, in the
+ * {@code fields} of their binding annotations. Elements of the other fields
+ * are skipped without being built, and the corresponding model properties
+ * keep their defaults.
+ *
+ * @author Nicholas Folse
+ */
+public enum NmapField {
+
+    /** The comment attribute of a host. */
+    COMMENT,
+    /** The starttime and endtime attributes of a host. */
+    TIMES,
+    /** The address elements of a host. */
+    ADDRESS,
+    /** The hostnames of a host. */
+    HOSTNAME,
+    /** The protocol and port number of each port. */
+    PORT,
+    /** The state element of each port. Implies PORT. */
+    STATE,
+    /** The name of the service of each port. Implies PORT. */
+    SERVICE_NAME,
+    /** The product of the service of each port. Implies PORT. */
+    SERVICE_PRODUCT,
+    /** The other attributes of the service of each port. Implies PORT. */
+    SERVICE_DETAILS,
+    /** The os element of a host, with its port, match and class details. */
+    OS
+
+}
@@ -0,0 +1,1133 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import com.tauterra.nettools.nmap.model.NmapAddressElement;
+import com.tauterra.nettools.nmap.model.NmapHostElement;
+import com.tauterra.nettools.nmap.model.NmapHostname;
+import com.tauterra.nettools.nmap.model.NmapOSClass;
+import com.tauterra.nettools.nmap.model.NmapOSElement;
+import com.tauterra.nettools.nmap.model.NmapOSMatch;
+import com.tauterra.nettools.nmap.model.NmapPortElement;
+import com.tauterra.nettools.nmap.model.NmapPortState;
+import com.tauterra.nettools.nmap.model.NmapPortUsed;
+import com.tauterra.nettools.nmap.model.NmapProtocol;
+import com.tauterra.nettools.nmap.model.NmapScanResult;
+import com.tauterra.nettools.nmap.model.NmapService;
+import com.tauterra.nettools.nmap.model.NmapState;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * A parser for Nmap XML output that reads a memory-mapped file directly.
+ *
+ * <p>This parser builds the same objects as {@link NmapScanResultParser}, but
+ * does not use StAX. It scans the mapped bytes for tags, matches element and
+ * attribute names as byte sequences and only decodes the attribute values
+ * that are kept. Text content, comments, processing instructions and
+ * unhandled elements are skipped without being decoded.</p>
+ *
+ * <p>The parser understands the subset of XML written by Nmap: UTF-8 or
+ * ISO-8859-1 (and ASCII) encoded documents without entity declarations. It
+ * does not validate the document beyond what is needed to find the elements
+ * it handles. Use {@link NmapScanResultParser} for other documents.</p>
+ *
+ * <p>Large files are mapped in windows of up to 1 GB. A single tag, text
+ * section or comment must fit in the last 64 MB of a window.</p>
+ *
+ * @author Nicholas Folse
+ */
+public class NmapMappedFileParser {
+
+    private static final long WINDOW_SIZE = 1L << 30;
+    private static final int WINDOW_SLACK = 64 << 20;
+
+    private final long windowSize;
+    private final int windowSlack;
+    private final StringPool stringPool;
+
+    /**
+     * Return a new parser that deduplicates the values of low-cardinality
+     * attributes with a pool of the default size.
+     */
+    public NmapMappedFileParser() {
+        this(new StringPool());
+    }
+
+    /**
+     * Return a new parser.
+     *
+     * @param stringPool Deduplicates the values of low-cardinality attributes,
+     * or null to keep every value as a separate instance
+     */
+    public NmapMappedFileParser(StringPool stringPool) {
+        this(WINDOW_SIZE, WINDOW_SLACK, stringPool);
+    }
+
+    NmapMappedFileParser(long windowSize, int windowSlack, StringPool stringPool) {
+        this.windowSize = windowSize;
+        this.windowSlack = windowSlack;
+        this.stringPool = stringPool;
+    }
+
+    /**
+     * Parse a scan result file.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     * @throws XMLStreamException If the document is malformed or uses an
+     * unsupported encoding
+     */
+    public NmapScanResult parse(Path file) throws IOException, XMLStreamException {
+        final NmapScanResult result = new NmapScanResult();
+        parse(file, result, host -> result.getHosts().add(host));
+        return result;
+    }
+
+    /**
+     * Parse a scan result file, handing each host to a consumer.
+     *
+     * Hosts are not retained by the parser.
+     *
+     * @param file
+     * @param hostConsumer
+     * @return The scan result without hosts
+     * @throws IOException
+     * @throws XMLStreamException If the document is malformed or uses an
+     * unsupported encoding
+     */
+    public NmapScanResult parse(Path file, Consumer<? super NmapHostElement> hostConsumer) throws IOException, XMLStreamException {
+        final NmapScanResult result = new NmapScanResult();
+        parse(file, result, hostConsumer);
+        return result;
+    }
+
+    /**
+     * Parse the ports of a scan result file into a new port table.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     * @throws XMLStreamException If the document is malformed or uses an
+     * unsupported encoding
+     */
+    public PortTable parsePorts(Path file) throws IOException, XMLStreamException {
+        PortTable table = new PortTable();
+        parsePorts(file, table);
+        return table;
+    }
+
+    /**
+     * Parse the ports of a scan result file into a port table.
+     *
+     * The rows are added straight from the mapped bytes, without building
+     * host objects. Service names and products are added to the dictionaries
+     * of the table without allocating a string for values it already holds.
+     *
+     * @param file
+     * @param table
+     * @throws IOException
+     * @throws XMLStreamException If the document is malformed or uses an
+     * unsupported encoding
+     */
+    public void parsePorts(Path file, PortTable table) throws IOException, XMLStreamException {
+        final PortRows rows = new PortRows();
+        scan(file, null, scanner -> parseHostRows(scanner, table, rows));
+    }
+
+    private void parse(Path file, NmapScanResult result, Consumer<? super NmapHostElement> hostConsumer) throws IOException, XMLStreamException {
+        // the root element, and the start of the scan, is read before the hosts
+        scan(file, result, scanner -> hostConsumer.accept(
+                NmapScanResultParser.inheritStart(parseHost(scanner), result.getStart())));
+    }
+
+    /**
+     * Handles a host element; the scanner is positioned on its start tag.
+     */
+    private interface HostHandler {
+
+        void host(Scanner scanner) throws XMLStreamException;
+    }
+
+    /**
+     * Scan the hosts of a file, setting the attributes of the root element on
+     * a result, if one is given.
+     */
+    private void scan(Path file, NmapScanResult result, HostHandler hostHandler) throws IOException, XMLStreamException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Scanner scanner = new Scanner(channel, windowSize, windowSlack, stringPool);
+            scanner.readDeclaration();
+            if (scanner.next() != Scanner.START) {
+                throw scanner.error("missing root element");
+            }
+            if (result != null) {
+                for (int idx = 0; idx < scanner.attrCount; idx++) {
+                    if (scanner.attrIs(idx, START)) {
+                        result.setStart(scanner.longValue(idx, 0L));
+                    }
+                }
+            }
+            if (scanner.empty) {
+                return;
+            }
+            while (true) {
+                int token = scanner.next();
+                if (token == Scanner.END) {
+                    return;
+                }
+                if (token == Scanner.EOF) {
+                    throw scanner.error("unexpected end of document");
+                }
+                if (scanner.nameIs(HOST)) {
+                    hostHandler.host(scanner);
+                } else {
+                    scanner.skipElement();
+                }
+            }
+        }
+    }
+
+    private static final byte[] START = ascii("start");
+    private static final byte[] HOST = ascii("host");
+    private static final byte[] COMMENT = ascii("comment");
+    private static final byte[] STARTTIME = ascii("starttime");
+    private static final byte[] ENDTIME = ascii("endtime");
+    private static final byte[] ADDRESS = ascii("address");
+    private static final byte[] ADDRTYPE = ascii("addrtype");
+    private static final byte[] VENDOR = ascii("vendor");
+    private static final byte[] ADDR = ascii("addr");
+    private static final byte[] HOSTNAMES = ascii("hostnames");
+    private static final byte[] HOSTNAME = ascii("hostname");
+    private static final byte[] TYPE = ascii("type");
+    private static final byte[] NAME = ascii("name");
+    private static final byte[] PORTS = ascii("ports");
+    private static final byte[] PORT = ascii("port");
+    private static final byte[] PROTOCOL = ascii("protocol");
+    private static final byte[] PORTID = ascii("portid");
+    private static final byte[] STATE = ascii("state");
+    private static final byte[] REASON = ascii("reason");
+    private static final byte[] REASON_TTL = ascii("reason_ttl");
+    private static final byte[] SERVICE = ascii("service");
+    private static final byte[] EXTRAINFO = ascii("extrainfo");
+    private static final byte[] PRODUCT = ascii("product");
+    private static final byte[] METHOD = ascii("method");
+    private static final byte[] VERSION = ascii("version");
+    private static final byte[] CONF = ascii("conf");
+    private static final byte[] OS = ascii("os");
+    private static final byte[] PORTUSED = ascii("portused");
+    private static final byte[] PROTO = ascii("proto");
+    private static final byte[] OSMATCH = ascii("osmatch");
+    private static final byte[] LINE = ascii("line");
+    private static final byte[] ACCURACY = ascii("accuracy");
+    private static final byte[] OSCLASS = ascii("osclass");
+    private static final byte[] OSFAMILY = ascii("osfamily");
+    private static final byte[] OSGEN = ascii("osgen");
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static NmapHostElement parseHost(Scanner s) throws XMLStreamException {
+        NmapHostElement host = new NmapHostElement();
+        for (int idx = 0; idx < s.attrCount; idx++) {
+            if (s.attrIs(idx, COMMENT)) {
+                host.setComment(s.value(idx));
+            } else if (s.attrIs(idx, STARTTIME)) {
+                host.setStarttime(s.longValue(idx, 0L));
+            } else if (s.attrIs(idx, ENDTIME)) {
+                host.setEndtime(s.longValue(idx, 0L));
+            }
+        }
+        if (s.empty) {
+            return host;
+        }
+        while (s.nextChild()) {
+            if (s.nameIs(ADDRESS)) {
+                host.getAddresses().add(parseAddress(s));
+            } else if (s.nameIs(PORTS)) {
+                parsePorts(s, host);
+            } else if (s.nameIs(OS)) {
+                host.setOs(parseOs(s));
+            } else if (s.nameIs(HOSTNAMES)) {
+                parseHostnames(s, host);
+            } else {
+                s.skipElement();
+            }
+        }
+        return host;
+    }
+
+    private static NmapAddressElement parseAddress(Scanner s) throws XMLStreamException {
+        NmapAddressElement address = new NmapAddressElement();
+        for (int idx = 0; idx < s.attrCount; idx++) {
+            if (s.attrIs(idx, ADDRTYPE)) {
+                address.setAddrtype(s.pooledValue(idx));
+            } else if (s.attrIs(idx, VENDOR)) {
+                address.setVendor(s.pooledValue(idx));
+            } else if (s.attrIs(idx, ADDR)) {
+                address.setAddr(s.value(idx));
+            }
+        }
+        s.skipElement();
+        return address;
+    }
+
+    private static void parseHostnames(Scanner s, NmapHostElement host) throws XMLStreamException {
+        if (s.empty) {
+            return;
+        }
+        while (s.nextChild()) {
+            if (s.nameIs(HOSTNAME)) {
+                NmapHostname hostname = new NmapHostname();
+                for (int idx = 0; idx < s.attrCount; idx++) {
+                    if (s.attrIs(idx, TYPE)) {
+                        hostname.setType(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, NAME)) {
+                        hostname.setName(s.value(idx));
+                    }
+                }
+                host.getHostnames().add(hostname);
+            }
+            s.skipElement();
+        }
+    }
+
+    private static void parsePorts(Scanner s, NmapHostElement host) throws XMLStreamException {
+        if (s.empty) {
+            return;
+        }
+        while (s.nextChild()) {
+            if (s.nameIs(PORT)) {
+                host.getPorts().add(parsePort(s));
+            } else {
+                s.skipElement();
+            }
+        }
+    }
+
+    private static NmapPortElement parsePort(Scanner s) throws XMLStreamException {
+        NmapPortElement port = new NmapPortElement();
+        for (int idx = 0; idx < s.attrCount; idx++) {
+            if (s.attrIs(idx, PROTOCOL)) {
+                port.setProtocol(s.pooledValue(idx));
+            } else if (s.attrIs(idx, PORTID)) {
+                port.setPortid(s.intValue(idx, 0));
+            }
+        }
+        if (s.empty) {
+            return port;
+        }
+        while (s.nextChild()) {
+            if (s.nameIs(STATE)) {
+                NmapPortState state = new NmapPortState();
+                for (int idx = 0; idx < s.attrCount; idx++) {
+                    if (s.attrIs(idx, REASON)) {
+                        state.setReason(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, STATE)) {
+                        state.setState(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, REASON_TTL)) {
+                        state.setReason_ttl(s.pooledValue(idx));
+                    }
+                }
+                port.setState(state);
+            } else if (s.nameIs(SERVICE)) {
+                NmapService service = new NmapService();
+                for (int idx = 0; idx < s.attrCount; idx++) {
+                    if (s.attrIs(idx, EXTRAINFO)) {
+                        service.setExtrainfo(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, PRODUCT)) {
+                        service.setProduct(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, METHOD)) {
+                        service.setMethod(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, VERSION)) {
+                        service.setVersion(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, NAME)) {
+                        service.setName(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, CONF)) {
+                        service.setConf(s.intValue(idx, 0));
+                    }
+                }
+                port.setService(service);
+            }
+            s.skipElement();
+        }
+        return port;
+    }
+
+    /**
+     * The ports and IPv4 addresses of the current host, collected until the
+     * end of the host element because addresses may follow the ports.
+     */
+    private static final class PortRows {
+
+        int[] addresses = new int[4];
+        int addressCount;
+        int[] ports = new int[64];
+        byte[] protocols = new byte[64];
+        byte[] states = new byte[64];
+        int[] services = new int[64];
+        int[] products = new int[64];
+        int portCount;
+
+        void clear() {
+            addressCount = 0;
+            portCount = 0;
+        }
+
+        void addAddress(int address) {
+            if (addressCount == addresses.length) {
+                addresses = Arrays.copyOf(addresses, 2 * addressCount);
+            }
+            addresses[addressCount++] = address;
+        }
+
+        int addPort() {
+            if (portCount == ports.length) {
+                final int capacity = 2 * portCount;
+                ports = Arrays.copyOf(ports, capacity);
+                protocols = Arrays.copyOf(protocols, capacity);
+                states = Arrays.copyOf(states, capacity);
+                services = Arrays.copyOf(services, capacity);
+                products = Arrays.copyOf(products, capacity);
+            }
+            return portCount++;
+        }
+    }
+
+    private static void parseHostRows(Scanner s, PortTable table, PortRows rows) throws XMLStreamException {
+        rows.clear();
+        if (s.empty) {
+            return;
+        }
+        while (s.nextChild()) {
+            if (s.nameIs(ADDRESS)) {
+                boolean ipv4 = false;
+                long address = Ipv4.INVALID;
+                for (int idx = 0; idx < s.attrCount; idx++) {
+                    if (s.attrIs(idx, ADDRTYPE)) {
+                        ipv4 = "ipv4".equals(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, ADDR)) {
+                        address = Ipv4.parse(s.value(idx));
+                    }
+                }
+                if (ipv4 && address != Ipv4.INVALID) {
+                    rows.addAddress((int) address);
+                }
+                s.skipElement();
+            } else if (s.nameIs(PORTS) && !s.empty) {
+                while (s.nextChild()) {
+                    if (s.nameIs(PORT)) {
+                        parsePortRow(s, table, rows);
+                    } else {
+                        s.skipElement();
+                    }
+                }
+            } else {
+                s.skipElement();
+            }
+        }
+        for (int addr = 0; addr < rows.addressCount; addr++) {
+            for (int row = 0; row < rows.portCount; row++) {
+                table.add(rows.addresses[addr], rows.ports[row], rows.protocols[row], rows.states[row],
+                        rows.services[row], rows.products[row]);
+            }
+        }
+    }
+
+    private static void parsePortRow(Scanner s, PortTable table, PortRows rows) throws XMLStreamException {
+        final int row = rows.addPort();
+        final StringDictionary services = table.getServices();
+        final StringDictionary products = table.getProducts();
+        int port = 0;
+        byte state = 0;
+        // the defaults of NmapService
+        int service = services.id("");
+        int product = products.id("");
+        rows.protocols[row] = 0;
+        for (int idx = 0; idx < s.attrCount; idx++) {
+            if (s.attrIs(idx, PROTOCOL)) {
+                rows.protocols[row] = PortTable.protocolCode(NmapProtocol.fromValue(s.pooledValue(idx)));
+            } else if (s.attrIs(idx, PORTID)) {
+                port = s.intValue(idx, 0);
+            }
+        }
+        if (!s.empty) {
+            while (s.nextChild()) {
+                if (s.nameIs(STATE)) {
+                    for (int idx = 0; idx < s.attrCount; idx++) {
+                        if (s.attrIs(idx, STATE)) {
+                            state = PortTable.stateCode(NmapState.fromValue(s.pooledValue(idx)));
+                        }
+                    }
+                } else if (s.nameIs(SERVICE)) {
+                    for (int idx = 0; idx < s.attrCount; idx++) {
+                        if (s.attrIs(idx, NAME)) {
+                            service = s.valueId(idx, services);
+                        } else if (s.attrIs(idx, PRODUCT)) {
+                            product = s.valueId(idx, products);
+                        }
+                    }
+                }
+                s.skipElement();
+            }
+        }
+        rows.ports[row] = (port >= 0 && port <= 0xFFFF) ? port : 0;
+        rows.states[row] = state;
+        rows.services[row] = service;
+        rows.products[row] = product;
+    }
+
+    private static NmapOSElement parseOs(Scanner s) throws XMLStreamException {
+        NmapOSElement os = new NmapOSElement();
+        if (s.empty) {
+            return os;
+        }
+        while (s.nextChild()) {
+            if (s.nameIs(PORTUSED)) {
+                NmapPortUsed portUsed = new NmapPortUsed();
+                for (int idx = 0; idx < s.attrCount; idx++) {
+                    if (s.attrIs(idx, STATE)) {
+                        portUsed.setState(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, PORTID)) {
+                        portUsed.setPortID(s.intValue(idx, 0));
+                    } else if (s.attrIs(idx, PROTO)) {
+                        portUsed.setProto(s.pooledValue(idx));
+                    }
+                }
+                os.getPortsUsed().add(portUsed);
+                s.skipElement();
+            } else if (s.nameIs(OSMATCH)) {
+                os.getOsMatches().add(parseOsMatch(s));
+            } else {
+                s.skipElement();
+            }
+        }
+        return os;
+    }
+
+    private static NmapOSMatch parseOsMatch(Scanner s) throws XMLStreamException {
+        NmapOSMatch osMatch = new NmapOSMatch();
+        for (int idx = 0; idx < s.attrCount; idx++) {
+            if (s.attrIs(idx, LINE)) {
+                osMatch.setLine(s.longValue(idx, 0L));
+            } else if (s.attrIs(idx, NAME)) {
+                osMatch.setName(s.pooledValue(idx));
+            } else if (s.attrIs(idx, ACCURACY)) {
+                osMatch.setAccuracy(s.intValue(idx, 0));
+            }
+        }
+        if (s.empty) {
+            return osMatch;
+        }
+        while (s.nextChild()) {
+            if (s.nameIs(OSCLASS)) {
+                NmapOSClass osClass = new NmapOSClass();
+                for (int idx = 0; idx < s.attrCount; idx++) {
+                    if (s.attrIs(idx, TYPE)) {
+                        osClass.setType(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, OSFAMILY)) {
+                        osClass.setOsfamily(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, VENDOR)) {
+                        osClass.setVendor(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, OSGEN)) {
+                        osClass.setOsgen(s.pooledValue(idx));
+                    } else if (s.attrIs(idx, ACCURACY)) {
+                        osClass.setAccuracy(s.intValue(idx, 0));
+                    }
+                }
+                osMatch.setOsclass(osClass);
+            }
+            s.skipElement();
+        }
+        return osMatch;
+    }
+
+    /**
+     * A tokenizer over a mapped window of the file.
+     *
+     * {@link #next()} returns one tag at a time. After a START token, the tag
+     * and attribute names and values are available as byte ranges of the
+     * window until the next call to {@link #next()}, which is also the only
+     * point where the window may be moved.
+     */
+    static final class Scanner {
+
+        static final int EOF = 0;
+        static final int START = 1;
+        static final int END = 2;
+
+        private final FileChannel channel;
+        private final long fileSize;
+        private final long windowSize;
+        private final int windowSlack;
+        private final StringPool stringPool;
+        private MappedByteBuffer buf;
+        private long base;
+        private int limit;
+        private int pos;
+        private boolean latin1;
+        private char[] chars = new char[256];
+
+        int nameStart;
+        int nameLength;
+        boolean empty;
+        int attrCount;
+        private int[] attrs = new int[4 * 16];
+
+        Scanner(FileChannel channel, long windowSize, int windowSlack, StringPool stringPool) throws IOException {
+            this.channel = channel;
+            this.stringPool = stringPool;
+            this.fileSize = channel.size();
+            this.windowSize = windowSize;
+            this.windowSlack = windowSlack;
+            map(0);
+        }
+
+        private void map(long position) throws IOException {
+            long size = Math.min(windowSize, fileSize - position);
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            base = position;
+            limit = (int) size;
+            pos = 0;
+        }
+
+        private void ensureWindow() throws XMLStreamException {
+            if (limit - pos < windowSlack && base + limit < fileSize) {
+                try {
+                    map(base + pos);
+                } catch (IOException ex) {
+                    throw new XMLStreamException("unable to map file at offset " + (base + pos), ex);
+                }
+            }
+        }
+
+        XMLStreamException error(String message) {
+            return new XMLStreamException(message + " (at byte offset " + (base + pos) + ")");
+        }
+
+        private XMLStreamException endOfWindow() {
+            return error(base + limit < fileSize ? "token too large" : "unexpected end of document");
+        }
+
+        private byte at(int p) throws XMLStreamException {
+            if (p >= limit) {
+                pos = p;
+                throw endOfWindow();
+            }
+            return buf.get(p);
+        }
+
+        private int indexOf(byte b, int from) {
+            for (int p = from; p < limit; p++) {
+                if (buf.get(p) == b) {
+                    return p;
+                }
+            }
+            return -1;
+        }
+
+        private boolean startsWith(int p, String s) {
+            if (p + s.length() > limit) {
+                return false;
+            }
+            for (int idx = 0; idx < s.length(); idx++) {
+                if ((buf.get(p + idx) & 0xFF) != s.charAt(idx)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void skipPast(String terminator) throws XMLStreamException {
+            final byte first = (byte) terminator.charAt(0);
+            while (true) {
+                int p = indexOf(first, pos);
+                if (p < 0) {
+                    pos = limit;
+                    throw endOfWindow();
+                }
+                if (startsWith(p, terminator)) {
+                    pos = p + terminator.length();
+                    return;
+                }
+                pos = p + 1;
+            }
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+        }
+
+        /**
+         * Read the XML declaration, if present, and select the charset.
+         */
+        void readDeclaration() throws XMLStreamException {
+            if (startsWith(0, "\u00EF\u00BB\u00BF")) {
+                pos = 3;
+            }
+            if (!startsWith(pos, "<?xml")) {
+                return;
+            }
+            int start = pos;
+            skipPast("?>");
+            String declaration = new String(chars(start, pos), 0, pos - start);
+            int idx = declaration.indexOf("encoding");
+            if (idx < 0) {
+                return;
+            }
+            int open = idx + "encoding".length();
+            while (open < declaration.length() && declaration.charAt(open) != '"' && declaration.charAt(open) != '\'') {
+                open++;
+            }
+            int close = (open < declaration.length()) ? declaration.indexOf(declaration.charAt(open), open + 1) : -1;
+            if (close < 0) {
+                throw error("malformed XML declaration");
+            }
+            String encoding = declaration.substring(open + 1, close).toLowerCase();
+            switch (encoding) {
+                case "utf-8":
+                case "utf8":
+                    latin1 = false;
+                    break;
+                case "iso-8859-1":
+                case "iso8859-1":
+                case "latin1":
+                case "us-ascii":
+                case "ascii":
+                    latin1 = true;
+                    break;
+                default:
+                    throw error("unsupported encoding: " + encoding);
+            }
+        }
+
+        private char[] chars(int start, int end) {
+            char[] result = new char[end - start];
+            for (int p = start; p < end; p++) {
+                result[p - start] = (char) (buf.get(p) & 0xFF);
+            }
+            return result;
+        }
+
+        /**
+         * Advance to the next start or end tag.
+         *
+         * Text, comments, CDATA sections, processing instructions and
+         * declarations are skipped.
+         */
+        int next() throws XMLStreamException {
+            ensureWindow();
+            while (true) {
+                int lt = indexOf((byte) '<', pos);
+                if (lt < 0) {
+                    pos = limit;
+                    if (base + limit < fileSize) {
+                        throw endOfWindow();
+                    }
+                    return EOF;
+                }
+                pos = lt + 1;
+                byte c = at(pos);
+                if (c == '/') {
+                    nameStart = ++pos;
+                    while (!isNameEnd(at(pos))) {
+                        pos++;
+                    }
+                    nameLength = pos - nameStart;
+                    int gt = indexOf((byte) '>', pos);
+                    if (gt < 0) {
+                        pos = limit;
+                        throw endOfWindow();
+                    }
+                    pos = gt + 1;
+                    return END;
+                } else if (c == '?') {
+                    skipPast("?>");
+                } else if (c == '!') {
+                    if (startsWith(pos, "!--")) {
+                        skipPast("-->");
+                    } else if (startsWith(pos, "![CDATA[")) {
+                        skipPast("]]>");
+                    } else {
+                        skipDeclaration();
+                    }
+                } else {
+                    readStartTag();
+                    return START;
+                }
+            }
+        }
+
+        /**
+         * Advance to the next child of the current element.
+         *
+         * @return false when the end tag of the current element is reached
+         */
+        boolean nextChild() throws XMLStreamException {
+            int token = next();
+            if (token == EOF) {
+                throw error("unexpected end of document");
+            }
+            return token == START;
+        }
+
+        private static boolean isNameEnd(byte b) {
+            return b == '>' || b == '/' || b == '=' || isWhitespace(b);
+        }
+
+        private void skipDeclaration() throws XMLStreamException {
+            int depth = 0;
+            while (true) {
+                byte c = at(pos++);
+                if (c == '"' || c == '\'') {
+                    int close = indexOf(c, pos);
+                    if (close < 0) {
+                        pos = limit;
+                        throw endOfWindow();
+                    }
+                    pos = close + 1;
+                } else if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                } else if (c == '>' && depth <= 0) {
+                    return;
+                }
+            }
+        }
+
+        private void readStartTag() throws XMLStreamException {
+            nameStart = pos;
+            while (!isNameEnd(at(pos))) {
+                pos++;
+            }
+            nameLength = pos - nameStart;
+            attrCount = 0;
+            empty = false;
+            while (true) {
+                byte c = at(pos);
+                while (isWhitespace(c)) {
+                    c = at(++pos);
+                }
+                if (c == '>') {
+                    pos++;
+                    return;
+                }
+                if (c == '/') {
+                    if (at(pos + 1) != '>') {
+                        throw error("malformed start tag");
+                    }
+                    pos += 2;
+                    empty = true;
+                    return;
+                }
+                final int attrNameStart = pos;
+                while (!isNameEnd(c)) {
+                    c = at(++pos);
+                }
+                final int attrNameEnd = pos;
+                while (isWhitespace(c)) {
+                    c = at(++pos);
+                }
+                if (c != '=' || attrNameEnd == attrNameStart) {
+                    throw error("malformed attribute");
+                }
+                c = at(++pos);
+                while (isWhitespace(c)) {
+                    c = at(++pos);
+                }
+                if (c != '"' && c != '\'') {
+                    throw error("malformed attribute value");
+                }
+                final int valueStart = pos + 1;
+                final int valueEnd = indexOf(c, valueStart);
+                if (valueEnd < 0) {
+                    pos = limit;
+                    throw endOfWindow();
+                }
+                pos = valueEnd + 1;
+                if (4 * attrCount == attrs.length) {
+                    attrs = Arrays.copyOf(attrs, attrs.length * 2);
+                }
+                int a = 4 * attrCount++;
+                attrs[a] = attrNameStart;
+                attrs[a + 1] = attrNameEnd - attrNameStart;
+                attrs[a + 2] = valueStart;
+                attrs[a + 3] = valueEnd - valueStart;
+            }
+        }
+
+        /**
+         * Skip the content of the current element, up to and including its
+         * end tag.
+         */
+        void skipElement() throws XMLStreamException {
+            if (empty) {
+                return;
+            }
+            int level = 0;
+            while (true) {
+                int token = next();
+                if (token == START) {
+                    if (!empty) {
+                        level++;
+                    }
+                } else if (token == END) {
+                    if (level == 0) {
+                        return;
+                    }
+                    level--;
+                } else {
+                    throw error("unexpected end of document");
+                }
+            }
+        }
+
+        private boolean matches(int start, int length, byte[] name) {
+            if (length != name.length) {
+                return false;
+            }
+            for (int idx = 0; idx < length; idx++) {
+                if (buf.get(start + idx) != name[idx]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean nameIs(byte[] name) {
+            return matches(nameStart, nameLength, name);
+        }
+
+        boolean attrIs(int idx, byte[] name) {
+            return matches(attrs[4 * idx], attrs[4 * idx + 1], name);
+        }
+
+        /**
+         * Decode an attribute value, expanding character and entity references
+         * and normalizing whitespace as an XML processor would.
+         */
+        String value(int idx) throws XMLStreamException {
+            decode(idx);
+            return new String(chars, 0, length);
+        }
+
+        /**
+         * Decode an attribute value like {@link #value(int) }, returning the
+         * pooled instance if the value is already in the string pool.
+         */
+        String pooledValue(int idx) throws XMLStreamException {
+            decode(idx);
+            return (stringPool != null) ? stringPool.intern(chars, 0, length) : new String(chars, 0, length);
+        }
+
+        /**
+         * Decode an attribute value like {@link #value(int) } and return its
+         * id in a dictionary.
+         */
+        int valueId(int idx, StringDictionary dictionary) throws XMLStreamException {
+            decode(idx);
+            return dictionary.id(chars, 0, length);
+        }
+
+        private void decode(int idx) throws XMLStreamException {
+            final int start = attrs[4 * idx + 2];
+            final int end = start + attrs[4 * idx + 3];
+            if (chars.length < end - start) {
+                chars = new char[Math.max(end - start, 2 * chars.length)];
+            }
+            length = 0;
+            int p = start;
+            while (p < end) {
+                int b = buf.get(p) & 0xFF;
+                if (b == '&') {
+                    int semicolon = indexOf((byte) ';', p);
+                    if (semicolon < 0 || semicolon >= end) {
+                        throw error("malformed reference");
+                    }
+                    appendReference(p + 1, semicolon);
+                    p = semicolon + 1;
+                } else if (b < 0x80 || latin1) {
+                    if (b == '\r') {
+                        if (p + 1 < end && buf.get(p + 1) == '\n') {
+                            p++;
+                        }
+                        b = ' ';
+                    } else if (b == '\n' || b == '\t') {
+                        b = ' ';
+                    }
+                    chars[length++] = (char) b;
+                    p++;
+                } else {
+                    p = appendUtf8(p, end);
+                }
+            }
+        }
+
+        private int length;
+
+        /**
+         * Decode one UTF-8 sequence, returning the position after it.
+         * Malformed sequences are replaced with U+FFFD.
+         */
+        private int appendUtf8(int p, int end) {
+            int b = buf.get(p) & 0xFF;
+            int size;
+            int codePoint;
+            if (b >= 0xF8) {
+                size = 0;
+                codePoint = 0;
+            } else if (b >= 0xF0) {
+                size = 4;
+                codePoint = b & 0x07;
+            } else if (b >= 0xE0) {
+                size = 3;
+                codePoint = b & 0x0F;
+            } else if (b >= 0xC0) {
+                size = 2;
+                codePoint = b & 0x1F;
+            } else {
+                size = 0;
+                codePoint = 0;
+            }
+            if (size == 0 || p + size > end) {
+                chars[length++] = REPLACEMENT;
+                return p + 1;
+            }
+            for (int idx = 1; idx < size; idx++) {
+                int next = buf.get(p + idx) & 0xFF;
+                if ((next & 0xC0) != 0x80) {
+                    chars[length++] = REPLACEMENT;
+                    return p + idx;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+            }
+            appendCodePoint(codePoint);
+            return p + size;
+        }
+
+        private static final char REPLACEMENT = '\uFFFD';
+
+        private void appendCodePoint(int codePoint) {
+            if (Character.isBmpCodePoint(codePoint)) {
+                chars[length++] = (char) codePoint;
+            } else if (Character.isValidCodePoint(codePoint)) {
+                chars[length++] = Character.highSurrogate(codePoint);
+                chars[length++] = Character.lowSurrogate(codePoint);
+            } else {
+                chars[length++] = REPLACEMENT;
+            }
+        }
+
+        private void appendReference(int start, int end) throws XMLStreamException {
+            if (start < end && buf.get(start) == '#') {
+                int codePoint = 0;
+                int radix = 10;
+                int p = start + 1;
+                if (p < end && buf.get(p) == 'x') {
+                    radix = 16;
+                    p++;
+                }
+                if (p == end) {
+                    throw error("malformed character reference");
+                }
+                for (; p < end; p++) {
+                    int digit = Character.digit((char) buf.get(p), radix);
+                    if (digit < 0 || codePoint > 0x10FFFF) {
+                        throw error("malformed character reference");
+                    }
+                    codePoint = codePoint * radix + digit;
+                }
+                appendCodePoint(codePoint);
+                return;
+            }
+            char c;
+            if (matchesName(start, end, "lt")) {
+                c = '<';
+            } else if (matchesName(start, end, "gt")) {
+                c = '>';
+            } else if (matchesName(start, end, "amp")) {
+                c = '&';
+            } else if (matchesName(start, end, "quot")) {
+                c = '"';
+            } else if (matchesName(start, end, "apos")) {
+                c = '\'';
+            } else {
+                throw error("undeclared entity");
+            }
+            chars[length++] = c;
+        }
+
+        private boolean matchesName(int start, int end, String name) {
+            return end - start == name.length() && startsWith(start, name);
+        }
+
+        /**
+         * Parse an attribute value as an int, returning a default for values
+         * that are not a valid decimal int.
+         */
+        int intValue(int idx, int def) {
+            long value = longValue(idx, Long.MIN_VALUE);
+            return (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) ? (int) value : def;
+        }
+
+        /**
+         * Parse an attribute value as a long, returning a default for values
+         * that are not a valid decimal long.
+         */
+        long longValue(int idx, long def) {
+            int p = attrs[4 * idx + 2];
+            final int end = p + attrs[4 * idx + 3];
+            if (p == end) {
+                return def;
+            }
+            boolean negative = false;
+            byte first = buf.get(p);
+            if (first == '-' || first == '+') {
+                negative = (first == '-');
+                if (++p == end) {
+                    return def;
+                }
+            }
+            // accumulate negatively, which covers Long.MIN_VALUE
+            long value = 0;
+            for (; p < end; p++) {
+                int digit = buf.get(p) - '0';
+                if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                    return def;
+                }
+                value = value * 10 - digit;
+            }
+            if (!negative) {
+                if (value == Long.MIN_VALUE) {
+                    return def;
+                }
+                value = -value;
+            }
+            return value;
+        }
+
+    }
+
+}
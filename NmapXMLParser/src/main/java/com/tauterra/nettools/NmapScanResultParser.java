@@ -15,22 +15,41 @@
  */
 package com.tauterra.nettools;
 
-import com.tauterra.nettools.nmap.model.NmapAddressElement;
+import com.tauterra.nettools.binding.XmlBindingOptions;
+import com.tauterra.nettools.binding.XmlBindingSupport;
 import com.tauterra.nettools.nmap.model.NmapHostElement;
-import com.tauterra.nettools.nmap.model.NmapHostname;
-import com.tauterra.nettools.nmap.model.NmapHostnames;
-import com.tauterra.nettools.nmap.model.NmapOSClass;
-import com.tauterra.nettools.nmap.model.NmapOSElement;
-import com.tauterra.nettools.nmap.model.NmapOSMatch;
-import com.tauterra.nettools.nmap.model.NmapPortElement;
-import com.tauterra.nettools.nmap.model.NmapPortState;
-import com.tauterra.nettools.nmap.model.NmapPortUsed;
-import com.tauterra.nettools.nmap.model.NmapPortsElement;
+import com.tauterra.nettools.nmap.model.NmapHostElementXmlParser;
 import com.tauterra.nettools.nmap.model.NmapScanResult;
-import com.tauterra.nettools.nmap.model.NmapService;
-import com.tauterra.nettools.nmap.model.NmapUptime;
+import com.tauterra.nettools.nmap.model.NmapScanResultXmlParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  *
@@ -38,114 +57,416 @@ import javax.xml.stream.XMLStreamException;
  */
 public class NmapScanResultParser {
 
-    private final StAXObjectBuilder<NmapScanResult> scanResultParser;
+    private static final long MIN_CHUNK_SIZE = 4L * 1024 * 1024;
+    private static final String FRAGMENT_START = "<nmaprun>";
+    private static final String FRAGMENT_END = "</nmaprun>";
+    private static final XMLElementSplitter HOST_SPLITTER = new XMLElementSplitter("host");
 
+    /**
+     * Looking up the StAX implementation is costly, and factories are not
+     * guaranteed to be thread-safe, so each thread keeps its own.
+     */
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = ThreadLocal.withInitial(XMLInputFactory::newFactory);
+
+    private final XmlBindingOptions options;
+    private final XmlBindingOptions transientOptions;
+    private final boolean times;
+
+    /**
+     * Return a new parser that deduplicates the values of low-cardinality
+     * attributes, such as protocols, port states and service names, with a
+     * pool of the default size.
+     */
     public NmapScanResultParser() {
+        this(new StringPool());
+    }
 
-        final StAXObjectBuilder<NmapUptime> uptimeParser
-                = new StAXObjectBuilder<>("uptime", () -> new NmapUptime());
-        uptimeParser.addAttributeHandler("lastboot", (obj, val) -> obj.setLastboot(val));
-        uptimeParser.addAttributeHandler("seconds", (obj, val) -> obj.setSeconds(parseLong(val, 0L)));
-
-        final StAXObjectBuilder<NmapOSClass> osClassParser
-                = new StAXObjectBuilder<>("osclass", () -> new NmapOSClass());
-        osClassParser.addAttributeHandler("type", (obj, val) -> obj.setType(val));
-        osClassParser.addAttributeHandler("osfamily", (obj, val) -> obj.setOsfamily(val));
-        osClassParser.addAttributeHandler("vendor", (obj, val) -> obj.setVendor(val));
-        osClassParser.addAttributeHandler("osgen", (obj, val) -> obj.setOsgen(val));
-        osClassParser.addAttributeHandler("accuracy", (obj, val) -> obj.setAccuracy(parseInteger(val, 0)));
-
-        final StAXObjectBuilder<NmapOSMatch> osMatchParser
-                = new StAXObjectBuilder<>("osmatch", () -> new NmapOSMatch());
-        osMatchParser.addAttributeHandler("line", (obj, val) -> obj.setLine(parseLong(val, 0L)));
-        osMatchParser.addAttributeHandler("name", (obj, val) -> obj.setName(val));
-        osMatchParser.addAttributeHandler("accuracy", (obj, val) -> obj.setAccuracy(parseInteger(val, 0)));
-        osMatchParser.addHandler(osClassParser, (obj, val) -> obj.setOsclass(val));
-
-        final StAXObjectBuilder<NmapPortUsed> portUsedParser
-                = new StAXObjectBuilder<>("portused", () -> new NmapPortUsed());
-        portUsedParser.addAttributeHandler("state", (obj, val) -> obj.setState(val));
-        portUsedParser.addAttributeHandler("portid", (obj, val) -> obj.setPortID(parseInteger(val, 0)));
-        portUsedParser.addAttributeHandler("proto", (obj, val) -> obj.setProto(val));
-
-        final StAXObjectBuilder<NmapOSElement> osElementParser
-                = new StAXObjectBuilder<>("os", () -> new NmapOSElement());
-        osElementParser.addHandler(portUsedParser, (obj, val) -> obj.getPortsUsed().add(val));
-        osElementParser.addHandler(osMatchParser, (obj, val) -> obj.getOsMatches().add(val));
-
-        final StAXObjectBuilder<NmapService> serviceParser
-                = new StAXObjectBuilder<>("service", () -> new NmapService());
-        serviceParser.addAttributeHandler("extrainfo", (obj, val) -> obj.setExtrainfo(val));
-        serviceParser.addAttributeHandler("product", (obj, val) -> obj.setProduct(val));
-        serviceParser.addAttributeHandler("method", (obj, val) -> obj.setMethod(val));
-        serviceParser.addAttributeHandler("version", (obj, val) -> obj.setVersion(val));
-        serviceParser.addAttributeHandler("name", (obj, val) -> obj.setName(val));
-        serviceParser.addAttributeHandler("conf", (obj, val) -> obj.setConf(parseInteger(val, 0)));
-
-        final StAXObjectBuilder<NmapPortState> portStateParser
-                = new StAXObjectBuilder<>("state", () -> new NmapPortState());
-        portStateParser.addAttributeHandler("reason", (obj, val) -> obj.setReason(val));
-        portStateParser.addAttributeHandler("state", (obj, val) -> obj.setState(val));
-        portStateParser.addAttributeHandler("reason_ttl", (obj, val) -> obj.setReason_ttl(val));
-
-        final StAXObjectBuilder<NmapPortElement> portParser
-                = new StAXObjectBuilder<>("port", () -> new NmapPortElement());
-        portParser.addAttributeHandler("protocol", (obj, val) -> obj.setProtocol(val));
-        portParser.addAttributeHandler("portid", (obj, val) -> obj.setPortid(parseInteger(val, 0)));
-        portParser.addHandler(portStateParser, (obj, val) -> obj.setState(val));
-        portParser.addHandler(serviceParser, (obj, val) -> obj.setService(val));
-
-        final StAXObjectBuilder<NmapPortsElement> portsParser
-                = new StAXObjectBuilder<>("ports", () -> new NmapPortsElement());
-        portsParser.addHandler(portParser, (obj, val) -> obj.getPorts().add(val));
-
-        final StAXObjectBuilder<NmapAddressElement> addressParser
-                = new StAXObjectBuilder<>("address", () -> new NmapAddressElement());
-        addressParser.addAttributeHandler("addrtype", (obj, val) -> obj.setAddrtype(val));
-        addressParser.addAttributeHandler("vendor", (obj, val) -> obj.setVendor(val));
-        addressParser.addAttributeHandler("addr", (obj, val) -> obj.setAddr(val));
-
-        final StAXObjectBuilder<NmapHostname> hostnameParser
-                = new StAXObjectBuilder<>("hostname", () -> new NmapHostname());
-        hostnameParser.addAttributeHandler("type", (obj, val) -> obj.setType(val));
-        hostnameParser.addAttributeHandler("name", (obj, val) -> obj.setName(val));
-
-        final StAXObjectBuilder<NmapHostnames> hostnamesParser
-                = new StAXObjectBuilder<>("hostnames", () -> new NmapHostnames());
-        hostnamesParser.addHandler(hostnameParser, (obj, val) -> obj.getHostnames().add(val));
-
-        final StAXObjectBuilder<NmapHostElement> hostParser
-                = new StAXObjectBuilder<>("host", () -> new NmapHostElement());
-        hostParser.addAttributeHandler("comment", (obj, val) -> obj.setComment(val));
-        hostParser.addHandler(addressParser, (obj, val) -> obj.getAddresses().add(val));
-        hostParser.addHandler(portsParser, (obj, val) -> obj.getPorts().addAll(val.getPorts()));
-        hostParser.addHandler(osElementParser, (obj, val) -> obj.setOs(val));
-        hostParser.addHandler(hostnamesParser, (obj, val) -> obj.getHostnames().addAll(val.getHostnames()));
-
-        final StAXObjectBuilder<NmapScanResult> scanResParser
-                = new StAXObjectBuilder<>(null, () -> new NmapScanResult());
-        scanResParser.addHandler(hostParser, (obj, val) -> obj.getHosts().add(val));
-
-        this.scanResultParser = scanResParser;
+    /**
+     * Return a new parser.
+     *
+     * @param stringPool Deduplicates the values of low-cardinality attributes,
+     * or null to keep every value as a separate instance
+     */
+    public NmapScanResultParser(StringPool stringPool) {
+        this(stringPool, EnumSet.allOf(NmapField.class));
     }
 
+    /**
+     * Return a new parser that only builds some fields of the hosts.
+     *
+     * Elements that belong to other fields are skipped without being built,
+     * which makes parsing faster when only a few fields are needed.
+     *
+     * @param stringPool Deduplicates the values of low-cardinality attributes,
+     * or null to keep every value as a separate instance
+     * @param fields The fields to build
+     */
+    public NmapScanResultParser(StringPool stringPool, Set<NmapField> fields) {
+        final Set<NmapField> selected = EnumSet.noneOf(NmapField.class);
+        selected.addAll(fields);
+        this.options = new XmlBindingOptions(field -> selected.contains(NmapField.valueOf(field)),
+                (stringPool == null) ? null : stringPool::intern, false);
+        this.transientOptions = options.reusing();
+        this.times = selected.contains(NmapField.TIMES);
+    }
+
+    /**
+     * Parse a scan result using the StAX event API.
+     *
+     * Produces the same result as {@link #parse(javax.xml.stream.XMLStreamReader) }.
+     *
+     * @param eventReader
+     * @return
+     * @throws XMLStreamException
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     */
     public NmapScanResult parse(XMLEventReader eventReader) throws XMLStreamException, InstantiationException, IllegalAccessException {
-        return this.scanResultParser.parseDocument(eventReader);
+        return parse(new XMLEventStreamReader(eventReader));
+    }
+
+    /**
+     * Parse a scan result using the StAX cursor API.
+     *
+     * Produces the same result as {@link #parse(javax.xml.stream.XMLEventReader) }
+     * without allocating an event object for every node. Prefer this method
+     * for large scan files.
+     *
+     * @param streamReader
+     * @return The scan result, or null if the document has no elements
+     * @throws XMLStreamException
+     */
+    public NmapScanResult parse(XMLStreamReader streamReader) throws XMLStreamException {
+        if (!XmlBindingSupport.findElement(streamReader, null)) {
+            return null;
+        }
+        return inheritStart(new NmapScanResultXmlParser(options).parse(streamReader), times);
+    }
+
+    /**
+     * Parse a scan result, handing each host to a consumer.
+     *
+     * Each host is passed to the consumer as soon as its end tag is read and
+     * is not retained by the parser, so memory use does not grow with the
+     * number of hosts in the document.
+     *
+     * @param streamReader
+     * @param hostConsumer
+     * @return The scan result without hosts
+     * @throws XMLStreamException
+     */
+    public NmapScanResult parse(XMLStreamReader streamReader, Consumer<? super NmapHostElement> hostConsumer) throws XMLStreamException {
+        final Long start = times ? readStart(streamReader) : null;
+        if (!XmlBindingSupport.findElement(streamReader, null)) {
+            return null;
+        }
+        final NmapScanResultXmlParser parser = new NmapScanResultXmlParser(options);
+        parser.setHostConsumer(inheritStart(hostConsumer, start));
+        return parser.parse(streamReader);
+    }
+
+    /**
+     * Parse a scan result, handing each host to a consumer.
+     *
+     * See {@link #parse(javax.xml.stream.XMLStreamReader, java.util.function.Consumer) }.
+     *
+     * @param eventReader
+     * @param hostConsumer
+     * @return The scan result without hosts
+     * @throws XMLStreamException
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     */
+    public NmapScanResult parse(XMLEventReader eventReader, Consumer<? super NmapHostElement> hostConsumer) throws XMLStreamException, InstantiationException, IllegalAccessException {
+        return parse(new XMLEventStreamReader(eventReader), hostConsumer);
+    }
+
+    /**
+     * Return a lazy stream of the hosts in a scan result.
+     *
+     * The next host is only parsed when the stream requests it. Closing the
+     * stream closes the reader.
+     *
+     * Hosts without a starttime take the start of the scan, if the reader is
+     * not past the root element.
+     *
+     * @param streamReader
+     * @return
+     * @throws XMLStreamException
+     */
+    public Stream<NmapHostElement> hosts(XMLStreamReader streamReader) throws XMLStreamException {
+        return stream(streamReader, options);
+    }
+
+    /**
+     * Return a lazy stream of the hosts in a scan result file.
+     *
+     * The file is read only as far as needed to produce the hosts requested by
+     * the stream. Closing the stream closes the file, so use it in a
+     * try-with-resources statement.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public Stream<NmapHostElement> hosts(Path file) throws IOException, XMLStreamException {
+        return hosts(file, options);
+    }
+
+    /**
+     * Return a lazy stream of the hosts in a scan result, recycling the host
+     * objects.
+     *
+     * Every element of the stream is the same host instance, along with its
+     * addresses, hostnames and ports, filled in again for each host. A host is
+     * only valid until the stream requests the next one, so consumers must
+     * copy what they keep, for example with
+     * {@link com.tauterra.nettools.nmap.model.CompactHost#of(com.tauterra.nettools.nmap.model.NmapHostElement) }.
+     * The stream must be processed sequentially.
+     *
+     * Hosts without a starttime take the start of the scan, as in
+     * {@link #hosts(javax.xml.stream.XMLStreamReader) }.
+     *
+     * @param streamReader
+     * @return
+     * @throws XMLStreamException
+     */
+    public Stream<NmapHostElement> transientHosts(XMLStreamReader streamReader) throws XMLStreamException {
+        return stream(streamReader, transientOptions);
+    }
+
+    /**
+     * Return a lazy stream of the hosts in a scan result file, recycling the
+     * host objects.
+     *
+     * See {@link #transientHosts(javax.xml.stream.XMLStreamReader) } and
+     * {@link #hosts(java.nio.file.Path) }.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public Stream<NmapHostElement> transientHosts(Path file) throws IOException, XMLStreamException {
+        return hosts(file, transientOptions);
+    }
+
+    /**
+     * Return a lazy stream of the hosts in a scan result read from an input
+     * stream, recycling the host objects.
+     *
+     * See {@link #transientHosts(javax.xml.stream.XMLStreamReader) }. Closing
+     * the stream closes the input stream.
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public Stream<NmapHostElement> transientHosts(InputStream in) throws IOException, XMLStreamException {
+        return hosts(in, transientOptions);
+    }
+
+    private Stream<NmapHostElement> hosts(Path file, XmlBindingOptions options) throws IOException, XMLStreamException {
+        return hosts(ReadAheadInputStream.open(file), options);
+    }
+
+    private Stream<NmapHostElement> hosts(InputStream in, XmlBindingOptions options) throws IOException, XMLStreamException {
+        try {
+            XMLStreamReader streamReader = inputFactory().createXMLStreamReader(in);
+            return stream(streamReader, options).onClose(() -> {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (XMLStreamException | RuntimeException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    private Stream<NmapHostElement> stream(XMLStreamReader streamReader, XmlBindingOptions options) throws XMLStreamException {
+        final Long start = times ? readStart(streamReader) : null;
+        final NmapHostElementXmlParser parser = new NmapHostElementXmlParser(options);
+        final Stream<NmapHostElement> hosts = StAXSpliterator.stream(streamReader, NmapHostElementXmlParser.TAG_NAME, reader -> {
+            // the previous host has been consumed
+            parser.release();
+            return parser.parse(reader);
+        });
+        return (start == null) ? hosts : hosts.peek(host -> inheritStart(host, start));
+    }
+
+    /**
+     * Move the reader to the first start tag, unless it is already on one,
+     * and return its start attribute.
+     *
+     * @return The start of the scan, or null if the element has none
+     */
+    private static Long readStart(XMLStreamReader streamReader) throws XMLStreamException {
+        int eventType = streamReader.getEventType();
+        while (eventType != XMLStreamConstants.START_ELEMENT && eventType != XMLStreamConstants.END_DOCUMENT
+                && streamReader.hasNext()) {
+            eventType = streamReader.next();
+        }
+        if (eventType != XMLStreamConstants.START_ELEMENT) {
+            return null;
+        }
+        final String start = streamReader.getAttributeValue(null, "start");
+        return (start == null) ? null : XmlBindingSupport.parseLong(start, 0L);
+    }
+
+    /**
+     * Give a host without a starttime the start of its scan.
+     */
+    static NmapHostElement inheritStart(NmapHostElement host, Long start) {
+        if (host.getStarttime() == null) {
+            host.setStarttime(start);
+        }
+        return host;
+    }
+
+    private static NmapScanResult inheritStart(NmapScanResult result, boolean times) {
+        if (times && result != null && result.getStart() != null) {
+            for (NmapHostElement host : result.getHosts()) {
+                inheritStart(host, result.getStart());
+            }
+        }
+        return result;
+    }
+
+    private static Consumer<? super NmapHostElement> inheritStart(Consumer<? super NmapHostElement> hostConsumer, Long start) {
+        if (start == null) {
+            return hostConsumer;
+        }
+        return host -> hostConsumer.accept(inheritStart(host, start));
+    }
+
+    /**
+     * Parse a scan result file on several threads.
+     *
+     * Equivalent to {@link #parseParallel(java.nio.file.Path, java.util.concurrent.ForkJoinPool) }
+     * using the common pool.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public NmapScanResult parseParallel(Path file) throws IOException, XMLStreamException {
+        return parseParallel(file, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parse a scan result file on several threads.
+     *
+     * The file is split into byte ranges at {@code <host} start tags and the
+     * ranges are parsed concurrently on the pool. The hosts are returned in
+     * document order, exactly as {@link #parse(javax.xml.stream.XMLStreamReader) }
+     * would return them. Small files are parsed as a single range.
+     *
+     * Files in an encoding that is not ASCII-compatible are parsed
+     * sequentially.
+     *
+     * @param file
+     * @param pool
+     * @return
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public NmapScanResult parseParallel(Path file, ForkJoinPool pool) throws IOException, XMLStreamException {
+        return parseParallel(file, pool, MIN_CHUNK_SIZE);
+    }
+
+    NmapScanResult parseParallel(Path file, ForkJoinPool pool, long minChunkSize) throws IOException, XMLStreamException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final NmapScanResult result = new NmapScanResult();
+            final Charset charset = readCharset(channel, result);
+            if (charset == null) {
+                return parse(inputFactory().createXMLStreamReader(new FileRangeInputStream(channel, 0, size)));
+            }
+
+            int parts = (int) Math.max(1, Math.min(pool.getParallelism() * 4L, size / minChunkSize));
+            long[] boundaries = HOST_SPLITTER.split(channel, parts);
+            List<ForkJoinTask<List<NmapHostElement>>> tasks = new ArrayList<>();
+            for (int idx = 0; idx + 1 < boundaries.length; idx++) {
+                final long start = boundaries[idx];
+                final long end = boundaries[idx + 1];
+                tasks.add(pool.submit(() -> parseHosts(channel, start, end, charset)));
+            }
+
+            try {
+                for (ForkJoinTask<List<NmapHostElement>> task : tasks) {
+                    result.getHosts().addAll(task.get());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while parsing " + file);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof XMLStreamException) {
+                    throw (XMLStreamException) cause;
+                }
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            } finally {
+                tasks.forEach(task -> task.cancel(false));
+            }
+            return inheritStart(result, times);
+        }
+    }
+
+    private static XMLInputFactory inputFactory() {
+        return INPUT_FACTORY.get();
     }
 
-    private static Long parseLong(String value, Long def) {
+    /**
+     * Parse the hosts in a byte range of a scan result file.
+     *
+     * The range is wrapped in a synthetic root element so that it is a
+     * well-formed document on its own.
+     */
+    private List<NmapHostElement> parseHosts(FileChannel channel, long start, long end, Charset charset) throws XMLStreamException {
+        InputStream in = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                new ByteArrayInputStream(FRAGMENT_START.getBytes(charset)),
+                new FileRangeInputStream(channel, start, end),
+                new ByteArrayInputStream(FRAGMENT_END.getBytes(charset)))));
+        XMLStreamReader streamReader = inputFactory().createXMLStreamReader(in, charset.name());
         try {
-            return Long.parseLong(value);
-        } catch (NumberFormatException e) {
-            return def;
+            return new NmapScanResultXmlParser(options).parseDocument(streamReader).getHosts();
+        } finally {
+            streamReader.close();
         }
     }
 
-    private static Integer parseInteger(String value, Integer def) {
+    /**
+     * Return the charset of a scan result file, or null if the file must not
+     * be split because its encoding is not ASCII-compatible. The start of the
+     * scan is set on the result.
+     */
+    private static Charset readCharset(FileChannel channel, NmapScanResult result) throws IOException, XMLStreamException {
+        XMLStreamReader streamReader = inputFactory()
+                .createXMLStreamReader(new FileRangeInputStream(channel, 0, channel.size()));
         try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException e) {
-            return def;
+            while (streamReader.hasNext() && streamReader.next() != XMLStreamConstants.START_ELEMENT) {
+            }
+            result.setStart(readStart(streamReader));
+            String encoding = streamReader.getEncoding();
+            Charset charset = (encoding != null) ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            byte[] ascii = FRAGMENT_END.getBytes(StandardCharsets.US_ASCII);
+            return Arrays.equals(ascii, FRAGMENT_END.getBytes(charset)) ? charset : null;
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException ex) {
+            return null;
+        } finally {
+            streamReader.close();
         }
     }
 }
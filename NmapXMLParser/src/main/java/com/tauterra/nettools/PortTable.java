@@ -0,0 +1,317 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import com.tauterra.nettools.nmap.model.CompactHost;
+import com.tauterra.nettools.nmap.model.NmapProtocol;
+import com.tauterra.nettools.nmap.model.NmapState;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * A columnar table of IPv4 ports for aggregating whole scans in memory.
+ *
+ * <p>Each row is one port of one IPv4 address; a host with two IPv4
+ * addresses contributes its ports twice. The columns are parallel primitive
+ * arrays: the packed address (see {@link Ipv4}), the port number, protocol
+ * and state codes, and dictionary ids for the service name and product.
+ * Protocol and state codes are {@code ordinal() + 1} of {@link NmapProtocol}
+ * and {@link NmapState}, or 0 for a missing or unknown value.</p>
+ *
+ * <p>{@link NmapMappedFileParser#parsePorts(java.nio.file.Path, PortTable) }
+ * fills a table straight from a scan file. Filters and group-bys run over row
+ * indices, which {@link #rows() } streams in contiguous ranges, so they can
+ * run in parallel. The table is not thread-safe while rows are added.</p>
+ *
+ * @author Nicholas Folse
+ */
+public final class PortTable {
+
+    /**
+     * The columns of the table. The value of a column in a row is the int
+     * returned by {@link PortTable#get(com.tauterra.nettools.PortTable.Column, int) }.
+     */
+    public enum Column {
+        IP, PORT, PROTOCOL, STATE, SERVICE, PRODUCT
+    }
+
+    private static final NmapProtocol[] PROTOCOLS = NmapProtocol.values();
+    private static final NmapState[] STATES = NmapState.values();
+
+    private int[] ips;
+    private int[] ports;
+    private byte[] protocols;
+    private byte[] states;
+    private int[] services;
+    private int[] products;
+    private int size = 0;
+    private final StringDictionary serviceDictionary = new StringDictionary();
+    private final StringDictionary productDictionary = new StringDictionary();
+
+    public PortTable() {
+        this(1024);
+    }
+
+    /**
+     * Return a new table.
+     *
+     * @param capacity The initial number of rows
+     */
+    public PortTable(int capacity) {
+        capacity = Math.max(capacity, 16);
+        ips = new int[capacity];
+        ports = new int[capacity];
+        protocols = new byte[capacity];
+        states = new byte[capacity];
+        services = new int[capacity];
+        products = new int[capacity];
+    }
+
+    /**
+     * Add a row.
+     *
+     * @param ip The packed IPv4 address
+     * @param port A port number from 0 to 65535
+     * @param protocol The protocol, or null if missing or unknown
+     * @param state The state, or null if missing or unknown
+     * @param service
+     * @param product
+     */
+    public void add(int ip, int port, NmapProtocol protocol, NmapState state, String service, String product) {
+        add(ip, port, protocolCode(protocol), stateCode(state), serviceDictionary.id(service), productDictionary.id(product));
+    }
+
+    /**
+     * Add a row for every port and IPv4 address of a host.
+     *
+     * @param host
+     */
+    public void add(CompactHost host) {
+        for (int addr = 0; addr < host.getIpv4AddressCount(); addr++) {
+            for (int idx = 0; idx < host.getPortCount(); idx++) {
+                add(host.getIpv4Address(addr), host.getPortid(idx), host.getProtocolCode(idx), host.getStateCode(idx),
+                        host.getServiceName(idx), host.getServiceProduct(idx));
+            }
+        }
+    }
+
+    void add(int ip, int port, byte protocol, byte state, int service, int product) {
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("invalid port: " + port);
+        }
+        if (size == ips.length) {
+            grow();
+        }
+        ips[size] = ip;
+        ports[size] = port;
+        protocols[size] = protocol;
+        states[size] = state;
+        services[size] = service;
+        products[size] = product;
+        size++;
+    }
+
+    private void grow() {
+        final int capacity = 2 * ips.length;
+        ips = Arrays.copyOf(ips, capacity);
+        ports = Arrays.copyOf(ports, capacity);
+        protocols = Arrays.copyOf(protocols, capacity);
+        states = Arrays.copyOf(states, capacity);
+        services = Arrays.copyOf(services, capacity);
+        products = Arrays.copyOf(products, capacity);
+    }
+
+    static byte protocolCode(NmapProtocol protocol) {
+        return (byte) ((protocol != null) ? protocol.ordinal() + 1 : 0);
+    }
+
+    static byte stateCode(NmapState state) {
+        return (byte) ((state != null) ? state.ordinal() + 1 : 0);
+    }
+
+    /**
+     * Return the number of rows.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getIp(int row) {
+        return ips[check(row)];
+    }
+
+    public int getPort(int row) {
+        return ports[check(row)];
+    }
+
+    public NmapProtocol getProtocol(int row) {
+        final byte code = protocols[check(row)];
+        return (code > 0) ? PROTOCOLS[code - 1] : null;
+    }
+
+    public NmapState getState(int row) {
+        final byte code = states[check(row)];
+        return (code > 0) ? STATES[code - 1] : null;
+    }
+
+    public String getService(int row) {
+        return serviceDictionary.get(services[check(row)]);
+    }
+
+    public String getProduct(int row) {
+        return productDictionary.get(products[check(row)]);
+    }
+
+    /**
+     * Return the dictionary of the SERVICE column.
+     *
+     * @return
+     */
+    public StringDictionary getServices() {
+        return serviceDictionary;
+    }
+
+    /**
+     * Return the dictionary of the PRODUCT column.
+     *
+     * @return
+     */
+    public StringDictionary getProducts() {
+        return productDictionary;
+    }
+
+    /**
+     * Return the value of a column in a row: the packed address, port
+     * number, protocol or state code, or dictionary id.
+     *
+     * @param column
+     * @param row
+     * @return
+     */
+    public int get(Column column, int row) {
+        check(row);
+        switch (column) {
+            case IP:
+                return ips[row];
+            case PORT:
+                return ports[row];
+            case PROTOCOL:
+                return protocols[row];
+            case STATE:
+                return states[row];
+            case SERVICE:
+                return services[row];
+            case PRODUCT:
+                return products[row];
+            default:
+                throw new IllegalArgumentException("column: " + column);
+        }
+    }
+
+    /**
+     * Return the number of distinct values a column can take, which is the
+     * length of the array returned by {@link #countBy(com.tauterra.nettools.PortTable.Column, java.util.function.IntPredicate) }.
+     *
+     * @param column Any column but IP
+     * @return
+     */
+    public int cardinality(Column column) {
+        switch (column) {
+            case PORT:
+                return 1 << 16;
+            case PROTOCOL:
+                return PROTOCOLS.length + 1;
+            case STATE:
+                return STATES.length + 1;
+            case SERVICE:
+                return serviceDictionary.size();
+            case PRODUCT:
+                return productDictionary.size();
+            default:
+                throw new IllegalArgumentException("no cardinality for column " + column);
+        }
+    }
+
+    /**
+     * Return a stream of the row indices of the table.
+     *
+     * Call {@code parallel()} on the stream to process rows on several
+     * threads.
+     *
+     * @return
+     */
+    public IntStream rows() {
+        return IntStream.range(0, size);
+    }
+
+    /**
+     * Return the rows that match a predicate, in table order. The rows are
+     * tested in parallel.
+     *
+     * @param filter Tests a row index
+     * @return
+     */
+    public int[] select(IntPredicate filter) {
+        return rows().parallel().filter(filter).toArray();
+    }
+
+    /**
+     * Count the rows that match a predicate, grouped by the value of a column.
+     * The rows are counted in parallel.
+     *
+     * @param column Any column but IP
+     * @param filter Tests a row index
+     * @return The number of rows per column value
+     */
+    public long[] countBy(Column column, IntPredicate filter) {
+        final int cardinality = cardinality(column);
+        final int[] keys = column(column);
+        final byte[] codes = (column == Column.PROTOCOL) ? protocols : (column == Column.STATE) ? states : null;
+        return rows().parallel()
+                .filter(filter)
+                .collect(() -> new long[cardinality],
+                        (counts, row) -> counts[(codes != null) ? codes[row] : keys[row]]++,
+                        (left, right) -> {
+                            for (int idx = 0; idx < cardinality; idx++) {
+                                left[idx] += right[idx];
+                            }
+                        });
+    }
+
+    private int[] column(Column column) {
+        switch (column) {
+            case PORT:
+                return ports;
+            case SERVICE:
+                return services;
+            case PRODUCT:
+                return products;
+            default:
+                return null;
+        }
+    }
+
+    private int check(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row: " + row);
+        }
+        return row;
+    }
+
+}
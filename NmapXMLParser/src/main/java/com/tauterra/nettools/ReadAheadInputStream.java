@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * An input stream over a file that reads the next block while the current
+ * one is consumed.
+ *
+ * <p>The stream alternates between two direct buffers: one is read by the
+ * caller while an asynchronous read fills the other, so parsing overlaps with
+ * the disk or network instead of waiting for a read call every few kilobytes.
+ * Use it where a plain file stream would be parsed, for example with
+ * {@link NmapScanResultParser#transientHosts(java.io.InputStream) }.</p>
+ *
+ * <p>The stream is not thread-safe.</p>
+ *
+ * @author Nicholas Folse
+ */
+public final class ReadAheadInputStream extends InputStream {
+
+    /** The size of each of the two buffers, unless given. */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    private static final int MIN_BUFFER_SIZE = 8 * 1024;
+
+    private final AsynchronousFileChannel channel;
+    /** The buffer being read by the caller. */
+    private ByteBuffer current;
+    /** The buffer being filled, or null at end of file. */
+    private ByteBuffer next;
+    private Future<Integer> pending;
+    /** The file position of the next read. */
+    private long position = 0;
+    private boolean closed = false;
+
+    private ReadAheadInputStream(AsynchronousFileChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.current = ByteBuffer.allocateDirect(bufferSize);
+        this.current.limit(0);
+        this.next = ByteBuffer.allocateDirect(bufferSize);
+        readAhead();
+    }
+
+    /**
+     * Open a file with buffers of {@link #DEFAULT_BUFFER_SIZE}.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static ReadAheadInputStream open(Path file) throws IOException {
+        return open(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Open a file. Small files get smaller buffers.
+     *
+     * @param file
+     * @param bufferSize The size of each of the two buffers
+     * @return
+     * @throws IOException
+     */
+    public static ReadAheadInputStream open(Path file, int bufferSize) throws IOException {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("invalid buffer size: " + bufferSize);
+        }
+        final AsynchronousFileChannel channel = AsynchronousFileChannel.open(file, StandardOpenOption.READ);
+        try {
+            // one more byte than the file, so that the first read ahead finds
+            // the end of a small file
+            final long size = channel.size() + 1;
+            return new ReadAheadInputStream(channel, (int) Math.min(bufferSize, Math.max(size, MIN_BUFFER_SIZE)));
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private void readAhead() {
+        next.clear();
+        pending = channel.read(next, position);
+    }
+
+    /**
+     * Make the buffer filled in the background the current one, and start
+     * filling the other.
+     *
+     * @return false at end of file
+     */
+    private boolean swap() throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        if (next == null) {
+            return false;
+        }
+        final int count;
+        try {
+            count = pending.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while reading");
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+        }
+        pending = null;
+        if (count < 0) {
+            next = null;
+            current.limit(0);
+            return false;
+        }
+        position += count;
+        final ByteBuffer filled = next;
+        filled.flip();
+        next = current;
+        current = filled;
+        readAhead();
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (!current.hasRemaining()) {
+            if (!swap()) {
+                return -1;
+            }
+        }
+        return current.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (!current.hasRemaining()) {
+            if (!swap()) {
+                return -1;
+            }
+        }
+        final int count = Math.min(len, current.remaining());
+        current.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            current.limit(0);
+            next = null;
+            channel.close();
+        }
+    }
+
+}
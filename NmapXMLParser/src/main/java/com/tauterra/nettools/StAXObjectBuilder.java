@@ -15,14 +15,27 @@
  */
 package com.tauterra.nettools;
 
+import com.tauterra.nettools.binding.XmlBindingSupport;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
+import javax.xml.stream.XMLEventFactory;
 import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
@@ -73,7 +86,9 @@ import javax.xml.stream.events.XMLEvent;
  * <p>The StAXObjectBuilder accepts three types of handlers: leaf handlers
  * (specified as above), attribute handlers (these work just like leaf handlers,
  * but are used to process attributes), and nested handlers. Nested handlers
- * allow you to define a hierarchy of builders to parse a complex document.</p>
+ * allow you to define a hierarchy of builders to parse a complex document.
+ * Reducing handlers fold the objects of a nested builder into a single value
+ * as they are parsed, instead of collecting all of them.</p>
  *
  * <h3>Error handling:</h3>
  *
@@ -83,21 +98,64 @@ import javax.xml.stream.events.XMLEvent;
  * {@link #setMissingElementHandler(java.util.function.Consumer)} on the
  * top-level object builder to define a missing element handler. The
  * missing-element handler is applied with a top-down approach. Thus the
- * top-level handler will be called for missing handlers in nested builders.</p>
+ * top-level handler will be called for missing handlers in nested builders.
+ * Elements registered with {@link #ignore(java.lang.String) } are skipped
+ * without being reported.</p>
+ *
+ * <h3>Streaming:</h3>
+ *
+ * <p>Documents with many repeated elements do not have to be held in memory.
+ * Pass a nested builder and a consumer to
+ * {@link #parseDocument(javax.xml.stream.XMLStreamReader, StAXObjectBuilder, java.util.function.Consumer) }
+ * and each object built by that builder is handed to the consumer as soon as
+ * its end tag is read, instead of being applied to its parent.</p>
+ *
+ * <pre>{@code
+ * config_parser.parseDocument(streamReader, entry_parser, entry -> process(entry));
+ * }</pre>
+ *
+ * <p>Alternatively, {@link #stream(javax.xml.stream.XMLStreamReader) } returns a
+ * lazy stream of the objects built by a builder. The next element is only
+ * parsed when the stream asks for it, so short-circuiting operations such as
+ * {@code findFirst} stop reading the document early.</p>
+ *
+ * <h3>Cursor engine:</h3>
+ *
+ * <p>Every parse method is also available for a StAX cursor
+ * ({@link XMLStreamReader}). The cursor engine applies the same handlers and
+ * produces the same objects, but it reads names, attributes and text directly
+ * from the reader instead of allocating an event object for every node. Prefer
+ * it for large documents.</p>
+ *
+ * <pre>{@code
+ * XMLStreamReader streamReader = inputFactory.createXMLStreamReader(in);
+ *
+ * Config config = config_parser.parseDocument(streamReader);
+ * }</pre>
+ *
+ * <p>Once a builder tree is configured, {@link #compile() } turns it into an
+ * immutable {@link CompiledObjectBuilder} that resolves each name with a
+ * single lookup and can be shared between threads.</p>
  *
  * @author Nicholas Folse <https://github.com/NF1198>
  * @param <U> The type of object that this builder will produce
  */
 public class StAXObjectBuilder<U> {
 
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newFactory();
+
     private final Supplier<U> supplier;
     private final String tagName;
     private final Map<String, BiConsumer<U, String>> handlerMap = new HashMap<>();
     private final Map<String, BiConsumer<U, String>> attrHandlerMap = new HashMap<>();
     private final Map<String, BiConsumer<U, ? extends Object>> objectHandlerMap = new HashMap<>();
     private final Map<String, StAXObjectBuilder<? extends Object>> builderMap = new HashMap<>();
+    private final Map<String, Reducer<U, ?, ?>> reducerMap = new HashMap<>();
+    private int reducerCount = 0;
+    private final Set<String> ignoredTags = new HashSet<>();
     private BiConsumer<U, String> characterDataHandler = null;
     private Consumer<StartElement> missingHandlerHandler = null;
+    private Consumer<? super U> resetter = null;
 
     /**
      * Return a new object builder
@@ -111,6 +169,15 @@ public class StAXObjectBuilder<U> {
         this.supplier = supplier;
     }
 
+    /**
+     * Return the XML tag name processed by this builder.
+     *
+     * @return
+     */
+    public String getTagName() {
+        return tagName;
+    }
+
     /**
      * Set the missing element handler for the builder.
      *
@@ -150,6 +217,53 @@ public class StAXObjectBuilder<U> {
         attrHandlerMap.put(tagName, handler);
     }
 
+    /**
+     * Add an attribute handler that deduplicates the attribute values.
+     *
+     * Each value is passed through the pool before it reaches the handler,
+     * so repeated values share one instance. Use this for attributes with
+     * few distinct values.
+     *
+     * @param tagName
+     * @param handler
+     * @param pool The pool, or null to pass the values unchanged
+     */
+    public void addAttributeHandler(String tagName, BiConsumer<U, String> handler, StringPool pool) {
+        if (pool == null) {
+            addAttributeHandler(tagName, handler);
+        } else {
+            attrHandlerMap.put(tagName, (obj, val) -> handler.accept(obj, pool.intern(val)));
+        }
+    }
+
+    /**
+     * Add an attribute handler for a decimal int attribute.
+     *
+     * The value is parsed without boxing and without exceptions. Anything but
+     * an optional sign followed by decimal digits, or a value out of range,
+     * yields the default.
+     *
+     * @param tagName
+     * @param handler
+     * @param defaultValue Passed to the handler if the value is not a valid int
+     */
+    public void addIntAttributeHandler(String tagName, ObjIntConsumer<U> handler, int defaultValue) {
+        attrHandlerMap.put(tagName, (obj, val) -> handler.accept(obj, XmlBindingSupport.parseInt(val, defaultValue)));
+    }
+
+    /**
+     * Add an attribute handler for a decimal long attribute.
+     *
+     * See {@link #addIntAttributeHandler(java.lang.String, java.util.function.ObjIntConsumer, int) }.
+     *
+     * @param tagName
+     * @param handler
+     * @param defaultValue Passed to the handler if the value is not a valid long
+     */
+    public void addLongAttributeHandler(String tagName, ObjLongConsumer<U> handler, long defaultValue) {
+        attrHandlerMap.put(tagName, (obj, val) -> handler.accept(obj, XmlBindingSupport.parseLong(val, defaultValue)));
+    }
+
     /**
      * Add a nested object builder handler.
      *
@@ -163,6 +277,81 @@ public class StAXObjectBuilder<U> {
     public <T> void addHandler(StAXObjectBuilder<T> builder, BiConsumer<U, T> handler) {
         builderMap.put(builder.tagName, builder);
         objectHandlerMap.put(builder.tagName, handler);
+        reducerMap.remove(builder.tagName);
+    }
+
+    /**
+     * Add a nested object builder whose objects are reduced to a single
+     * value.
+     *
+     * Each nested object is folded into the value with the accumulator as
+     * soon as it is built, and is not retained afterwards. When the parent
+     * element ends, the finisher applies the value to the parent, or the
+     * identity if there were no nested objects. For example, to keep only
+     * the most accurate match:
+     *
+     * <pre>{@code
+     * os_parser.addReducingHandler(match_parser, null,
+     *         (best, match) -> (best == null || match.getAccuracy() > best.getAccuracy()) ? match : best,
+     *         (os, best) -> os.setBestMatch(best));
+     * }</pre>
+     *
+     * @param <T>
+     * @param <A> The type of the reduced value
+     * @param builder
+     * @param identity The initial value, which must not be modified
+     * @param accumulator Returns the value with one more nested object
+     * @param finisher Applies the value to the parent
+     */
+    public <T, A> void addReducingHandler(StAXObjectBuilder<T> builder, A identity,
+            BiFunction<A, ? super T, A> accumulator, BiConsumer<U, ? super A> finisher) {
+        Reducer<U, ?, ?> previous = reducerMap.get(builder.tagName);
+        int index = (previous != null) ? previous.index : reducerCount++;
+        builderMap.put(builder.tagName, builder);
+        objectHandlerMap.remove(builder.tagName);
+        reducerMap.put(builder.tagName, new Reducer<>(index, identity, accumulator, finisher));
+    }
+
+    /**
+     * Ignore an element.
+     *
+     * Ignored elements are skipped along with their descendants, and are not
+     * reported to the missing element handler. Use this for elements that are
+     * known to be irrelevant, especially large ones: the subtree is skipped
+     * without creating events or strings. A handler registered for the same
+     * tag takes precedence.
+     *
+     * @param tagName
+     */
+    public void ignore(String tagName) {
+        ignoredTags.add(tagName);
+    }
+
+    /**
+     * Let compiled builders reuse the objects built by this builder.
+     *
+     * <p>A reusable builder does not call the supplier for every element.
+     * Within a {@link CompiledObjectBuilder#stream(javax.xml.stream.XMLStreamReader) }
+     * or an emitting
+     * {@link CompiledObjectBuilder#parseDocument(javax.xml.stream.XMLStreamReader, StAXObjectBuilder, java.util.function.Consumer) },
+     * the objects built for one streamed or emitted element are recycled for
+     * the next one: each object is passed to the resetter and filled in
+     * again. The n-th object a reusable builder creates below an element is
+     * the same instance for every element. A reusable builder that also
+     * occurs outside the streamed or emitted element creates new objects,
+     * since those are kept by their parents.</p>
+     *
+     * <p>Objects of a reusable builder are only valid until the stream
+     * requests the next element, or until the emitter returns. Consumers must
+     * copy anything they keep, and the stream must not be parallel. The parse
+     * methods of this class and single-object parses always create new
+     * objects.</p>
+     *
+     * @param resetter Restores an object to the state of a new one, or null
+     * to create a new object for every element
+     */
+    public void setReusable(Consumer<? super U> resetter) {
+        this.resetter = resetter;
     }
 
     /**
@@ -177,6 +366,64 @@ public class StAXObjectBuilder<U> {
         this.characterDataHandler = handler;
     }
 
+    /**
+     * Compile this builder and the builders nested in it into an immutable
+     * parser.
+     *
+     * The compiled parser resolves tag and attribute names with a single
+     * table lookup, and can be shared between threads. It is a snapshot:
+     * handlers added to the builders afterwards are not seen by it.
+     *
+     * @return
+     */
+    public CompiledObjectBuilder<U> compile() {
+        return new CompiledObjectBuilder<>(this);
+    }
+
+    Supplier<U> getSupplier() {
+        return supplier;
+    }
+
+    Map<String, BiConsumer<U, String>> getHandlers() {
+        return handlerMap;
+    }
+
+    Map<String, BiConsumer<U, String>> getAttributeHandlers() {
+        return attrHandlerMap;
+    }
+
+    Map<String, BiConsumer<U, ? extends Object>> getObjectHandlers() {
+        return objectHandlerMap;
+    }
+
+    Map<String, StAXObjectBuilder<? extends Object>> getBuilders() {
+        return builderMap;
+    }
+
+    BiConsumer<U, String> getCharacterDataHandler() {
+        return characterDataHandler;
+    }
+
+    Consumer<StartElement> getMissingElementHandler() {
+        return missingHandlerHandler;
+    }
+
+    Consumer<? super U> getResetter() {
+        return resetter;
+    }
+
+    Map<String, Reducer<U, ?, ?>> getReducers() {
+        return reducerMap;
+    }
+
+    int getReducerCount() {
+        return reducerCount;
+    }
+
+    Set<String> getIgnoredTags() {
+        return ignoredTags;
+    }
+
     /**
      * Parse an XML document.
      *
@@ -191,6 +438,26 @@ public class StAXObjectBuilder<U> {
      * @throws IllegalAccessException
      */
     public U parseDocument(XMLEventReader eventReader) throws XMLStreamException, InstantiationException, IllegalAccessException {
+        return parseDocument(eventReader, null, null);
+    }
+
+    /**
+     * Parse an XML document, streaming the objects built by a nested builder.
+     *
+     * Every object built by {@code emitBuilder} anywhere below this builder is
+     * passed to {@code emitter} as soon as its end tag is read. It is not
+     * applied to its parent, so it can be released once the emitter returns.
+     *
+     * @param <T>
+     * @param eventReader
+     * @param emitBuilder A builder nested (directly or indirectly) in this one
+     * @param emitter Receives each object built by {@code emitBuilder}
+     * @return The top-level object, without the emitted children
+     * @throws XMLStreamException
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     */
+    public <T> U parseDocument(XMLEventReader eventReader, StAXObjectBuilder<T> emitBuilder, Consumer<? super T> emitter) throws XMLStreamException, InstantiationException, IllegalAccessException {
         while (eventReader.hasNext()) {
             XMLEvent event = eventReader.nextEvent();
             if (event.getEventType() == XMLEvent.START_DOCUMENT) {
@@ -198,7 +465,8 @@ public class StAXObjectBuilder<U> {
             if (event.getEventType() == XMLEvent.START_ELEMENT) {
                 StartElement startElement = event.asStartElement();
                 if (this.tagName == null || startElement.getName().getLocalPart().equals(tagName)) {
-                    return parse(eventReader, startElement);
+                    ParseContext context = new ParseContext(this.missingHandlerHandler, emitBuilder, emitter);
+                    return emit(parse(eventReader, startElement, context), context);
                 }
             }
             if (event.getEventType() == XMLEvent.END_DOCUMENT) {
@@ -247,15 +515,20 @@ public class StAXObjectBuilder<U> {
      * @throws IllegalAccessException 
      */
     public U parse(XMLEventReader eventReader, StartElement start, Consumer<StartElement> missingHandlerHandler) throws XMLStreamException, InstantiationException, IllegalAccessException {
+        return parse(eventReader, start, new ParseContext(missingHandlerHandler, null, null));
+    }
+
+    private U parse(XMLEventReader eventReader, StartElement start, ParseContext context) throws XMLStreamException, InstantiationException, IllegalAccessException {
+        final Consumer<StartElement> missingHandlerHandler = context.missingHandler;
         U result = supplier.get();
+        Object[] reductions = null;
         Iterator<Attribute> attrsIter = start.getAttributes();
         while (attrsIter != null && attrsIter.hasNext()) {
             final Attribute attr = attrsIter.next();
             final String attrName = attr.getName().getLocalPart();
-            if (attrHandlerMap.containsKey(attrName)) {
-                BiConsumer<U, String> handler = attrHandlerMap.get(attrName);
-                final String data = attr.getValue();
-                handler.accept(result, data);
+            BiConsumer<U, String> handler = attrHandlerMap.get(attrName);
+            if (handler != null) {
+                handler.accept(result, attr.getValue());
             }
         }
         OUTER:
@@ -265,15 +538,20 @@ public class StAXObjectBuilder<U> {
                 case XMLEvent.START_ELEMENT:
                     StartElement startElement = event.asStartElement();
                     String elementName = startElement.getName().getLocalPart();
-                    if (builderMap.containsKey(elementName)) {
+                    StAXObjectBuilder<? extends Object> itemBuilder = builderMap.get(elementName);
+                    BiConsumer leafHandler;
+                    if (itemBuilder != null) {
                         // check if item is a object with an associated builder
                         BiConsumer<U, Object> handler = (BiConsumer<U, Object>) objectHandlerMap.get(elementName);
-                        
-                        StAXObjectBuilder<? extends Object> itemBuilder = builderMap.get(elementName);
-                        Object item = itemBuilder.parse(eventReader, startElement, missingHandlerHandler);
-                        handler.accept(result, item);
-                    } else if (handlerMap.containsKey(elementName)) {
-                        BiConsumer handler = handlerMap.get(elementName);
+                        Object item = itemBuilder.parse(eventReader, startElement, context);
+                        if (itemBuilder == context.emitBuilder) {
+                            context.emitter.accept(item);
+                        } else if (handler != null) {
+                            handler.accept(result, item);
+                        } else {
+                            reductions = reduce(reductions, reducerMap.get(elementName), item);
+                        }
+                    } else if ((leafHandler = handlerMap.get(elementName)) != null) {
                         XMLEvent dataEvent = eventReader.nextEvent();
                         StringBuilder sb = new StringBuilder();
                         if (dataEvent.getEventType() == XMLEvent.CHARACTERS) {
@@ -289,18 +567,20 @@ public class StAXObjectBuilder<U> {
                                 dataEvent = eventReader.nextEvent();
                             }
                         }
-                        handler.accept(result, sb.toString());
+                        leafHandler.accept(result, sb.toString());
                     } else {  // no handler for element
-                        if (missingHandlerHandler != null) {
-                            missingHandlerHandler.accept(startElement);
+                        final Consumer<StartElement> missing
+                                = ignoredTags.contains(elementName) ? null : missingHandlerHandler;
+                        if (missing != null) {
+                            missing.accept(startElement);
                         }
                         int level = 0;
                         while (eventReader.hasNext()) {
                             XMLEvent next = eventReader.nextEvent();
                             if (next.getEventType() == XMLEvent.START_ELEMENT) {
                                 level++;
-                                if (missingHandlerHandler != null) {
-                                    missingHandlerHandler.accept(next.asStartElement());
+                                if (missing != null) {
+                                    missing.accept(next.asStartElement());
                                 }
                             } else if (next.getEventType() == XMLEvent.END_ELEMENT) {
                                 if (level == 0) {
@@ -329,7 +609,337 @@ public class StAXObjectBuilder<U> {
                     break;
             }
         }
+        finish(result, reductions);
         return result;
     }
 
-}
\ No newline at end of file
+    /**
+     * Parse an XML document using the StAX cursor API.
+     *
+     * This is the cursor-based counterpart of
+     * {@link #parseDocument(javax.xml.stream.XMLEventReader) }. The reader is
+     * advanced to the first element handled by this builder, which is then
+     * parsed by calling
+     * {@link #parse(javax.xml.stream.XMLStreamReader) }.
+     *
+     * @param streamReader
+     * @return
+     * @throws XMLStreamException
+     */
+    public U parseDocument(XMLStreamReader streamReader) throws XMLStreamException {
+        return parseDocument(streamReader, null, null);
+    }
+
+    /**
+     * Parse an XML document using the StAX cursor API, streaming the objects
+     * built by a nested builder.
+     *
+     * See {@link #parseDocument(javax.xml.stream.XMLEventReader, StAXObjectBuilder, java.util.function.Consumer) }.
+     *
+     * @param <T>
+     * @param streamReader
+     * @param emitBuilder A builder nested (directly or indirectly) in this one
+     * @param emitter Receives each object built by {@code emitBuilder}
+     * @return The top-level object, without the emitted children
+     * @throws XMLStreamException
+     */
+    public <T> U parseDocument(XMLStreamReader streamReader, StAXObjectBuilder<T> emitBuilder, Consumer<? super T> emitter) throws XMLStreamException {
+        int eventType = streamReader.getEventType();
+        while (true) {
+            if (eventType == XMLStreamConstants.START_ELEMENT
+                    && (this.tagName == null || streamReader.getLocalName().equals(tagName))) {
+                ParseContext context = new ParseContext(this.missingHandlerHandler, emitBuilder, emitter);
+                return emit(parse(streamReader, context), context);
+            }
+            if (eventType == XMLStreamConstants.END_DOCUMENT || !streamReader.hasNext()) {
+                break;
+            }
+            eventType = streamReader.next();
+        }
+        return null;
+    }
+
+    /**
+     * Parse an object from a StAX cursor.
+     *
+     * The reader must be positioned on the START_ELEMENT that defines the
+     * object. When this method returns, the reader is positioned on the
+     * matching END_ELEMENT.
+     *
+     * The missing element handler defined on the builder instance will be used to
+     * handle missing elements.
+     *
+     * @param streamReader The XMLStreamReader cursor
+     * @return
+     * @throws XMLStreamException
+     */
+    public U parse(XMLStreamReader streamReader) throws XMLStreamException {
+        return parse(streamReader, this.missingHandlerHandler);
+    }
+
+    /**
+     * Parse an object from a StAX cursor.
+     *
+     * This version of the method accepts an error handler for missing elements.
+     * Because the cursor API does not produce events, a StartElement is only
+     * created for elements that are reported to the missing element handler.
+     *
+     * @param streamReader
+     * @param missingHandlerHandler
+     * @return
+     * @throws XMLStreamException
+     */
+    public U parse(XMLStreamReader streamReader, Consumer<StartElement> missingHandlerHandler) throws XMLStreamException {
+        return parse(streamReader, new ParseContext(missingHandlerHandler, null, null));
+    }
+
+    private U parse(XMLStreamReader streamReader, ParseContext context) throws XMLStreamException {
+        final Consumer<StartElement> missingHandlerHandler = context.missingHandler;
+        U result = supplier.get();
+        Object[] reductions = null;
+        if (!attrHandlerMap.isEmpty()) {
+            for (int idx = 0, count = streamReader.getAttributeCount(); idx < count; idx++) {
+                BiConsumer<U, String> handler = attrHandlerMap.get(streamReader.getAttributeLocalName(idx));
+                if (handler != null) {
+                    handler.accept(result, streamReader.getAttributeValue(idx));
+                }
+            }
+        }
+        OUTER:
+        while (streamReader.hasNext()) {
+            int eventType = streamReader.next();
+            switch (eventType) {
+                case XMLStreamConstants.START_ELEMENT:
+                    String elementName = streamReader.getLocalName();
+                    StAXObjectBuilder<? extends Object> itemBuilder = builderMap.get(elementName);
+                    if (itemBuilder != null) {
+                        // check if item is a object with an associated builder
+                        @SuppressWarnings("unchecked")
+                        BiConsumer<U, Object> handler = (BiConsumer<U, Object>) objectHandlerMap.get(elementName);
+                        Object item = itemBuilder.parse(streamReader, context);
+                        if (itemBuilder == context.emitBuilder) {
+                            context.emitter.accept(item);
+                        } else if (handler != null) {
+                            handler.accept(result, item);
+                        } else {
+                            reductions = reduce(reductions, reducerMap.get(elementName), item);
+                        }
+                        break;
+                    }
+                    BiConsumer<U, String> leafHandler = handlerMap.get(elementName);
+                    if (leafHandler != null) {
+                        leafHandler.accept(result, readElementText(streamReader));
+                    } else if (ignoredTags.contains(elementName)) {
+                        skipElement(streamReader);
+                    } else {  // no handler for element
+                        skipElement(streamReader, missingHandlerHandler);
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    if (this.characterDataHandler != null) {
+                        StringBuilder sb = new StringBuilder();
+                        while (eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.CDATA) {
+                            sb.append(streamReader.getTextCharacters(), streamReader.getTextStart(), streamReader.getTextLength());
+                            if (!streamReader.hasNext()) {
+                                break;
+                            }
+                            eventType = streamReader.next();
+                        }
+                        this.characterDataHandler.accept(result, sb.toString());
+                        break OUTER;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    break OUTER;
+                default:
+                    break;
+            }
+        }
+        finish(result, reductions);
+        return result;
+    }
+
+    /**
+     * Return a lazy stream of the objects built from a document.
+     *
+     * Each element with this builder's tag name is parsed when the stream
+     * requests the next object, in document order. Elements before, between
+     * and after the matching elements are skipped. Closing the stream closes
+     * the reader, but not its underlying input source.
+     *
+     * XML errors are thrown as {@link UncheckedXMLStreamException} by the
+     * stream's terminal operation.
+     *
+     * @param streamReader
+     * @return
+     */
+    public Stream<U> stream(XMLStreamReader streamReader) {
+        return StAXSpliterator.stream(streamReader, tagName, this::parse);
+    }
+
+    /**
+     * Fold a nested object into the reductions of a parent, creating them on
+     * the first nested object.
+     */
+    private Object[] reduce(Object[] reductions, Reducer<U, ?, ?> reducer, Object item) {
+        if (reductions == null) {
+            reductions = new Object[reducerCount];
+            for (Reducer<U, ?, ?> each : reducerMap.values()) {
+                reductions[each.index] = each.identity;
+            }
+        }
+        reductions[reducer.index] = reducer.accumulate(reductions[reducer.index], item);
+        return reductions;
+    }
+
+    private void finish(U result, Object[] reductions) {
+        if (!reducerMap.isEmpty()) {
+            for (Reducer<U, ?, ?> reducer : reducerMap.values()) {
+                reducer.finish(result, (reductions != null) ? reductions[reducer.index] : reducer.identity);
+            }
+        }
+    }
+
+    private U emit(U result, ParseContext context) {
+        if (this == context.emitBuilder) {
+            context.emitter.accept(result);
+        }
+        return result;
+    }
+
+    /**
+     * Read the character data of a leaf node and leave the reader on its
+     * END_ELEMENT.
+     */
+    static String readElementText(XMLStreamReader streamReader) throws XMLStreamException {
+        StringBuilder sb = new StringBuilder();
+        int level = 0;
+        while (streamReader.hasNext()) {
+            int eventType = streamReader.next();
+            if (eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.CDATA) {
+                if (level == 0) {
+                    sb.append(streamReader.getTextCharacters(), streamReader.getTextStart(), streamReader.getTextLength());
+                }
+            } else if (eventType == XMLStreamConstants.START_ELEMENT) {
+                level++;
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                if (level == 0) {
+                    break;
+                }
+                level--;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Skip the element at the cursor, reporting it and its descendants to the
+     * missing element handler, and leave the reader on its END_ELEMENT.
+     */
+    static void skipElement(XMLStreamReader streamReader, Consumer<StartElement> missingHandlerHandler) throws XMLStreamException {
+        if (missingHandlerHandler == null) {
+            skipElement(streamReader);
+            return;
+        }
+        missingHandlerHandler.accept(toStartElement(streamReader));
+        int level = 0;
+        while (streamReader.hasNext()) {
+            int next = streamReader.next();
+            if (next == XMLStreamConstants.START_ELEMENT) {
+                level++;
+                missingHandlerHandler.accept(toStartElement(streamReader));
+            } else if (next == XMLStreamConstants.END_ELEMENT) {
+                if (level == 0) {
+                    break;
+                } else {
+                    level--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Skip the element at the cursor and leave the reader on its END_ELEMENT.
+     *
+     * Only the event types are read, so the reader never has to create names,
+     * attribute values or text for the skipped subtree.
+     */
+    static void skipElement(XMLStreamReader streamReader) throws XMLStreamException {
+        int level = 0;
+        while (streamReader.hasNext()) {
+            switch (streamReader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    level++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (level-- == 0) {
+                        return;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Create a StartElement for the element at the cursor. Only used to report
+     * elements to the missing element handler.
+     */
+    private static StartElement toStartElement(XMLStreamReader streamReader) {
+        final int count = streamReader.getAttributeCount();
+        List<Attribute> attributes = new ArrayList<>(count);
+        for (int idx = 0; idx < count; idx++) {
+            attributes.add(EVENT_FACTORY.createAttribute(streamReader.getAttributeName(idx), streamReader.getAttributeValue(idx)));
+        }
+        return EVENT_FACTORY.createStartElement(streamReader.getName(), attributes.iterator(), Collections.emptyIterator());
+    }
+
+    /**
+     * A reducing handler. The index is the slot of its value among the
+     * reductions of a parent object.
+     */
+    static final class Reducer<U, T, A> {
+
+        final int index;
+        final A identity;
+        final BiFunction<A, ? super T, A> accumulator;
+        final BiConsumer<U, ? super A> finisher;
+
+        Reducer(int index, A identity, BiFunction<A, ? super T, A> accumulator, BiConsumer<U, ? super A> finisher) {
+            this.index = index;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.finisher = finisher;
+        }
+
+        @SuppressWarnings("unchecked")
+        Object accumulate(Object value, Object item) {
+            return accumulator.apply((A) value, (T) item);
+        }
+
+        @SuppressWarnings("unchecked")
+        void finish(Object parent, Object value) {
+            finisher.accept((U) parent, (A) value);
+        }
+    }
+
+    /**
+     * State shared by the builders taking part in a single parse.
+     */
+    private static final class ParseContext {
+
+        final Consumer<StartElement> missingHandler;
+        final StAXObjectBuilder<?> emitBuilder;
+        final Consumer<Object> emitter;
+
+        @SuppressWarnings("unchecked")
+        ParseContext(Consumer<StartElement> missingHandler, StAXObjectBuilder<?> emitBuilder, Consumer<?> emitter) {
+            this.missingHandler = missingHandler;
+            this.emitBuilder = emitBuilder;
+            this.emitter = (Consumer<Object>) emitter;
+        }
+    }
+
+}
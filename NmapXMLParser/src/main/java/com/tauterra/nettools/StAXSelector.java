@@ -0,0 +1,595 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Extracts values from a document with path selectors, without building
+ * objects.
+ *
+ * <p>A selector is a path of element names relative to the document element,
+ * optionally ending with an attribute. It selects the attribute value, or the
+ * character data of the last element if there is no attribute:</p>
+ *
+ * <pre>{@code
+ * host/address/@addr
+ * host/ports/port[state/@state='open']/@portid
+ * host[@comment]/hostnames/hostname/@name
+ * /nmaprun/@start
+ * }</pre>
+ *
+ * <p>A leading slash makes the path start at the document element itself.
+ * {@code *} matches any element. A step may have predicates: {@code [@a]}
+ * requires an attribute, {@code [@a='v']} an attribute value, and
+ * {@code [x/y/@a='v']} a descendant at that path with the attribute value.
+ * Values are compared as they appear in the document.</p>
+ *
+ * <p>The selectors are compiled into a single state machine and evaluated in
+ * one pass over a StAX cursor. Subtrees that no selector can reach are skipped
+ * without being decoded. A value that depends on a predicate later in the
+ * document is held back until the predicate is satisfied, and dropped if the
+ * element ends first; otherwise values are reported in document order.</p>
+ *
+ * <p>A compiled selector is immutable and can be shared between threads.</p>
+ *
+ * @author Nicholas Folse
+ */
+public final class StAXSelector {
+
+    /**
+     * Receives the values selected from a document.
+     */
+    public interface SelectionHandler {
+
+        /**
+         * Accept a selected value.
+         *
+         * @param selector The index of the selector that matched
+         * @param value
+         */
+        void accept(int selector, String value);
+    }
+
+    private static final Step[] NO_STEPS = new Step[0];
+    private static final int[] NO_SELECTORS = new int[0];
+
+    /** A virtual step above the document element. */
+    private final Step document;
+    private final String[] selectors;
+
+    private StAXSelector(String[] selectors) {
+        this.selectors = selectors.clone();
+        this.document = new Step(null, "", new Test[0], new Probe[0]);
+        for (int idx = 0; idx < selectors.length; idx++) {
+            new SelectorParser(selectors[idx]).parse(document, idx);
+        }
+        document.freeze();
+    }
+
+    /**
+     * Compile a set of selectors.
+     *
+     * @param selectors
+     * @return
+     * @throws IllegalArgumentException if a selector is invalid
+     */
+    public static StAXSelector compile(String... selectors) {
+        return new StAXSelector(selectors);
+    }
+
+    /**
+     * Return the number of selectors.
+     *
+     * @return
+     */
+    public int size() {
+        return selectors.length;
+    }
+
+    /**
+     * Return a selector as it was compiled.
+     *
+     * @param selector
+     * @return
+     */
+    public String getSelector(int selector) {
+        return selectors[selector];
+    }
+
+    /**
+     * Select the values of a document.
+     *
+     * The reader is read up to the end of the document element.
+     *
+     * @param streamReader
+     * @param handler
+     * @throws XMLStreamException
+     */
+    public void select(XMLStreamReader streamReader, SelectionHandler handler) throws XMLStreamException {
+        new Matcher(document, handler).run(streamReader);
+    }
+
+    /**
+     * Select the values of a document.
+     *
+     * @param streamReader
+     * @return The values of each selector, in the order they were reported
+     * @throws XMLStreamException
+     */
+    public List<List<String>> selectAll(XMLStreamReader streamReader) throws XMLStreamException {
+        final List<List<String>> values = new ArrayList<>(selectors.length);
+        for (String selector : selectors) {
+            values.add(new ArrayList<>());
+        }
+        select(streamReader, (selector, value) -> values.get(selector).add(value));
+        return values;
+    }
+
+    /**
+     * An attribute predicate: the attribute must exist, and have the value
+     * if one is given.
+     */
+    private static final class Test {
+
+        final String attribute;
+        final String value;
+
+        Test(String attribute, String value) {
+            this.attribute = attribute;
+            this.value = value;
+        }
+
+        boolean matches(XMLStreamReader streamReader) {
+            final String actual = streamReader.getAttributeValue(null, attribute);
+            return (actual != null) && (value == null || value.equals(actual));
+        }
+    }
+
+    /**
+     * A predicate on a descendant: some element at the path below the step
+     * must pass the test.
+     */
+    private static final class Probe {
+
+        final String[] path;
+        final Test test;
+
+        Probe(String[] path, Test test) {
+            this.path = path;
+            this.test = test;
+        }
+    }
+
+    /**
+     * A state of the machine: an element name with predicates, reached from
+     * its parent step. Selectors that share leading steps share states.
+     */
+    private static final class Step {
+
+        /** The interned element name, or null for any element. */
+        final String name;
+        final String key;
+        final Test[] tests;
+        final Probe[] probes;
+        final Map<String, Step> childMap = new LinkedHashMap<>();
+        Step[] children = NO_STEPS;
+        final List<String> attributeList = new ArrayList<>();
+        final List<Integer> attributeSelectorList = new ArrayList<>();
+        final List<Integer> textSelectorList = new ArrayList<>();
+        String[] attributes;
+        int[] attributeSelectors;
+        int[] textSelectors = NO_SELECTORS;
+
+        Step(String name, String key, Test[] tests, Probe[] probes) {
+            this.name = name;
+            this.key = key;
+            this.tests = tests;
+            this.probes = probes;
+        }
+
+        Step child(Step step) {
+            Step child = childMap.get(step.key);
+            if (child == null) {
+                childMap.put(step.key, step);
+                child = step;
+            }
+            return child;
+        }
+
+        boolean matches(String localName, XMLStreamReader streamReader) {
+            if (name != null && name != localName && !name.equals(localName)) {
+                return false;
+            }
+            for (Test test : tests) {
+                if (!test.matches(streamReader)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void freeze() {
+            children = childMap.values().toArray(NO_STEPS);
+            attributes = attributeList.toArray(new String[0]);
+            attributeSelectors = attributeSelectorList.stream().mapToInt(Integer::intValue).toArray();
+            textSelectors = textSelectorList.stream().mapToInt(Integer::intValue).toArray();
+            for (Step child : children) {
+                child.freeze();
+            }
+        }
+    }
+
+    /**
+     * Parses one selector and adds its steps below the document step.
+     */
+    private static final class SelectorParser {
+
+        private final String text;
+        private int pos = 0;
+
+        SelectorParser(String text) {
+            this.text = text;
+        }
+
+        void parse(Step document, int selector) {
+            Step step = document;
+            if (peek('/')) {
+                pos++;
+            } else {
+                // relative to the document element
+                step = step.child(new Step(null, "*", new Test[0], new Probe[0]));
+            }
+            while (true) {
+                if (peek('@')) {
+                    pos++;
+                    step.attributeList.add(name());
+                    step.attributeSelectorList.add(selector);
+                    break;
+                }
+                step = step.child(step());
+                if (!peek('/')) {
+                    step.textSelectorList.add(selector);
+                    break;
+                }
+                pos++;
+            }
+            if (pos != text.length()) {
+                throw error("unexpected character");
+            }
+        }
+
+        private Step step() {
+            final int start = pos;
+            final String name = peek('*') ? null : name();
+            if (name == null) {
+                pos++;
+            }
+            List<Test> tests = new ArrayList<>();
+            List<Probe> probes = new ArrayList<>();
+            while (peek('[')) {
+                pos++;
+                List<String> path = new ArrayList<>();
+                while (!peek('@')) {
+                    path.add(peek('*') ? null : name());
+                    if (path.get(path.size() - 1) == null) {
+                        pos++;
+                    }
+                    expect('/');
+                }
+                pos++;
+                String attribute = name();
+                String value = null;
+                if (peek('=')) {
+                    pos++;
+                    value = literal();
+                }
+                expect(']');
+                Test test = new Test(attribute, value);
+                if (path.isEmpty()) {
+                    tests.add(test);
+                } else {
+                    probes.add(new Probe(path.toArray(new String[path.size()]), test));
+                }
+            }
+            if (probes.size() > Integer.SIZE) {
+                throw error("too many predicates");
+            }
+            return new Step(name, text.substring(start, pos), tests.toArray(new Test[tests.size()]),
+                    probes.toArray(new Probe[probes.size()]));
+        }
+
+        private String name() {
+            final int start = pos;
+            while (pos < text.length() && isNameChar(text.charAt(pos))) {
+                pos++;
+            }
+            if (pos == start) {
+                throw error("name expected");
+            }
+            return text.substring(start, pos).intern();
+        }
+
+        private String literal() {
+            if (!peek('\'') && !peek('"')) {
+                throw error("quoted value expected");
+            }
+            final char quote = text.charAt(pos++);
+            final int end = text.indexOf(quote, pos);
+            if (end < 0) {
+                throw error("unterminated value");
+            }
+            String value = text.substring(pos, end);
+            pos = end + 1;
+            return value;
+        }
+
+        private static boolean isNameChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == ':';
+        }
+
+        private boolean peek(char c) {
+            return pos < text.length() && text.charAt(pos) == c;
+        }
+
+        private void expect(char c) {
+            if (!peek(c)) {
+                throw error("'" + c + "' expected");
+            }
+            pos++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("invalid selector <" + text + "> at " + pos + ": " + message);
+        }
+    }
+
+    /**
+     * A step matched by an open element.
+     */
+    private static final class Instance {
+
+        Step step;
+        Instance parent;
+        /** A bit per probe of the step that has not been satisfied yet. */
+        int unresolved;
+        final StringBuilder text = new StringBuilder();
+        /** Values held back until the probes are satisfied. */
+        int[] heldSelectors = NO_SELECTORS;
+        String[] heldValues = new String[0];
+        int held;
+
+        void hold(int selector, String value) {
+            if (held == heldSelectors.length) {
+                heldSelectors = Arrays.copyOf(heldSelectors, Math.max(4, 2 * held));
+                heldValues = Arrays.copyOf(heldValues, heldSelectors.length);
+            }
+            heldSelectors[held] = selector;
+            heldValues[held++] = value;
+        }
+    }
+
+    /**
+     * A probe that has matched the first {@code matched} names of its path.
+     */
+    private static final class Watcher {
+
+        Instance instance;
+        int probe;
+        int matched;
+    }
+
+    /**
+     * The instances and watchers of an open element. Frames and their
+     * contents are reused for every element at the same depth.
+     */
+    private static final class Frame {
+
+        Instance[] instances = new Instance[4];
+        int instanceCount;
+        Watcher[] watchers = new Watcher[4];
+        int watcherCount;
+
+        Instance addInstance(Step step, Instance parent) {
+            if (instanceCount == instances.length) {
+                instances = Arrays.copyOf(instances, 2 * instanceCount);
+            }
+            Instance instance = instances[instanceCount];
+            if (instance == null) {
+                instance = instances[instanceCount] = new Instance();
+            }
+            instanceCount++;
+            instance.step = step;
+            instance.parent = parent;
+            instance.unresolved = (step.probes.length == Integer.SIZE) ? -1 : (1 << step.probes.length) - 1;
+            instance.text.setLength(0);
+            instance.held = 0;
+            return instance;
+        }
+
+        void addWatcher(Instance instance, int probe, int matched) {
+            if (watcherCount == watchers.length) {
+                watchers = Arrays.copyOf(watchers, 2 * watcherCount);
+            }
+            Watcher watcher = watchers[watcherCount];
+            if (watcher == null) {
+                watcher = watchers[watcherCount] = new Watcher();
+            }
+            watcherCount++;
+            watcher.instance = instance;
+            watcher.probe = probe;
+            watcher.matched = matched;
+        }
+    }
+
+    /**
+     * The state of a single evaluation.
+     */
+    private static final class Matcher {
+
+        private final SelectionHandler handler;
+        private Frame[] frames = new Frame[16];
+        private int depth = 0;
+
+        Matcher(Step document, SelectionHandler handler) {
+            this.handler = handler;
+            frames[0] = new Frame();
+            frames[0].addInstance(document, null);
+        }
+
+        void run(XMLStreamReader streamReader) throws XMLStreamException {
+            int eventType = streamReader.getEventType();
+            while (true) {
+                switch (eventType) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement(streamReader);
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                        if (depth > 0) {
+                            characters(streamReader);
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement();
+                        if (depth == 0) {
+                            return;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                if (!streamReader.hasNext()) {
+                    return;
+                }
+                eventType = streamReader.next();
+            }
+        }
+
+        private void startElement(XMLStreamReader streamReader) throws XMLStreamException {
+            final String localName = streamReader.getLocalName();
+            final Frame parent = frames[depth];
+            if (depth + 1 == frames.length) {
+                frames = Arrays.copyOf(frames, 2 * frames.length);
+            }
+            Frame frame = frames[depth + 1];
+            if (frame == null) {
+                frame = frames[depth + 1] = new Frame();
+            }
+            frame.instanceCount = 0;
+            frame.watcherCount = 0;
+
+            for (int idx = 0; idx < parent.instanceCount; idx++) {
+                final Instance parentInstance = parent.instances[idx];
+                for (Step step : parentInstance.step.children) {
+                    if (!step.matches(localName, streamReader)) {
+                        continue;
+                    }
+                    Instance instance = frame.addInstance(step, parentInstance);
+                    for (int probe = 0; probe < step.probes.length; probe++) {
+                        frame.addWatcher(instance, probe, 0);
+                    }
+                    for (int attr = 0; attr < step.attributes.length; attr++) {
+                        String value = streamReader.getAttributeValue(null, step.attributes[attr]);
+                        if (value != null) {
+                            deliver(instance, step.attributeSelectors[attr], value);
+                        }
+                    }
+                }
+            }
+            for (int idx = 0; idx < parent.watcherCount; idx++) {
+                final Watcher watcher = parent.watchers[idx];
+                final int bit = 1 << watcher.probe;
+                if ((watcher.instance.unresolved & bit) == 0) {
+                    continue;
+                }
+                final Probe probe = watcher.instance.step.probes[watcher.probe];
+                final String name = probe.path[watcher.matched];
+                if (name != null && name != localName && !name.equals(localName)) {
+                    continue;
+                }
+                if (watcher.matched + 1 < probe.path.length) {
+                    frame.addWatcher(watcher.instance, watcher.probe, watcher.matched + 1);
+                } else if (probe.test.matches(streamReader)) {
+                    resolve(watcher.instance, bit);
+                }
+            }
+
+            if (frame.instanceCount == 0 && frame.watcherCount == 0) {
+                // nothing below this element can be selected
+                StAXObjectBuilder.skipElement(streamReader);
+            } else {
+                depth++;
+            }
+        }
+
+        private void characters(XMLStreamReader streamReader) {
+            final Frame frame = frames[depth];
+            for (int idx = 0; idx < frame.instanceCount; idx++) {
+                final Instance instance = frame.instances[idx];
+                if (instance.step.textSelectors.length > 0) {
+                    instance.text.append(streamReader.getTextCharacters(), streamReader.getTextStart(), streamReader.getTextLength());
+                }
+            }
+        }
+
+        private void endElement() {
+            final Frame frame = frames[depth];
+            for (int idx = 0; idx < frame.instanceCount; idx++) {
+                final Instance instance = frame.instances[idx];
+                final int[] textSelectors = instance.step.textSelectors;
+                for (int selector : textSelectors) {
+                    deliver(instance, selector, instance.text.toString());
+                }
+                // values of an element whose predicates failed are dropped
+                instance.held = 0;
+            }
+            depth--;
+        }
+
+        /**
+         * Report a value, or hold it back at the nearest element that still
+         * waits for a predicate.
+         */
+        private void deliver(Instance instance, int selector, String value) {
+            for (Instance pending = instance; pending != null; pending = pending.parent) {
+                if (pending.unresolved != 0) {
+                    pending.hold(selector, value);
+                    return;
+                }
+            }
+            handler.accept(selector, value);
+        }
+
+        private void resolve(Instance instance, int bit) {
+            instance.unresolved &= ~bit;
+            if (instance.unresolved == 0) {
+                for (int idx = 0; idx < instance.held; idx++) {
+                    deliver(instance.parent, instance.heldSelectors[idx], instance.heldValues[idx]);
+                }
+                instance.held = 0;
+            }
+        }
+    }
+
+}
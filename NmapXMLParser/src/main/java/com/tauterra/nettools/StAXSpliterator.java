@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A spliterator that builds one object per matching element, pulling events
+ * from a StAX cursor only when the next object is requested. A reader that is
+ * already on a matching start tag yields that element first.
+ *
+ * @author Nicholas Folse
+ * @param <T> The type of object built by the builder
+ */
+class StAXSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+    /**
+     * Parses the element at the cursor, leaving the reader on its
+     * END_ELEMENT.
+     */
+    interface ElementParser<T> {
+
+        T parse(XMLStreamReader streamReader) throws XMLStreamException;
+    }
+
+    private final XMLStreamReader streamReader;
+    private final String tagName;
+    private final ElementParser<T> parser;
+    private boolean started = false;
+    private boolean done = false;
+
+    StAXSpliterator(XMLStreamReader streamReader, String tagName, ElementParser<T> parser) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.streamReader = streamReader;
+        this.tagName = tagName;
+        this.parser = parser;
+    }
+
+    /**
+     * Return a lazy stream of the objects parsed from the elements with the
+     * given tag name. Closing the stream closes the reader.
+     */
+    static <T> Stream<T> stream(XMLStreamReader streamReader, String tagName, ElementParser<T> parser) {
+        return StreamSupport.stream(new StAXSpliterator<>(streamReader, tagName, parser), false)
+                .onClose(() -> {
+                    try {
+                        streamReader.close();
+                    } catch (XMLStreamException ex) {
+                        throw new UncheckedXMLStreamException(ex);
+                    }
+                });
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (done) {
+            return false;
+        }
+        try {
+            if (!started) {
+                started = true;
+                if (streamReader.getEventType() == XMLStreamConstants.START_ELEMENT
+                        && streamReader.getLocalName().equals(tagName)) {
+                    action.accept(parser.parse(streamReader));
+                    return true;
+                }
+            }
+            while (streamReader.hasNext()) {
+                int eventType = streamReader.next();
+                if (eventType == XMLStreamConstants.START_ELEMENT && streamReader.getLocalName().equals(tagName)) {
+                    action.accept(parser.parse(streamReader));
+                    return true;
+                }
+            }
+        } catch (XMLStreamException ex) {
+            done = true;
+            throw new UncheckedXMLStreamException(ex);
+        }
+        done = true;
+        return false;
+    }
+
+}
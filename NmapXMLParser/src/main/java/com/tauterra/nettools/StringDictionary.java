@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Assigns dense int ids to strings, for dictionary-encoded columns.
+ *
+ * <p>Ids are assigned in order of first appearance, starting at zero. Unlike
+ * {@link StringPool}, the dictionary keeps every value. Lookups by character
+ * range only allocate a string for values that are not in the dictionary
+ * yet.</p>
+ *
+ * <p>A dictionary is not thread-safe while values are added. Once filled, it
+ * can be read from several threads.</p>
+ *
+ * @author Nicholas Folse
+ */
+public final class StringDictionary {
+
+    private String[] values = new String[16];
+    /** Open-addressing table of id + 1 per slot, 0 for an empty slot. */
+    private int[] slots = new int[32];
+    private int size = 0;
+
+    public StringDictionary() {
+    }
+
+    /**
+     * Return the number of values in the dictionary.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the value with an id.
+     *
+     * @param id
+     * @return
+     */
+    public String get(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("id: " + id);
+        }
+        return values[id];
+    }
+
+    /**
+     * Return the id of a value, adding the value if it is not in the
+     * dictionary.
+     *
+     * @param value
+     * @return
+     */
+    public int id(String value) {
+        Objects.requireNonNull(value, "value");
+        final int mask = slots.length - 1;
+        for (int slot = spread(value.hashCode()) & mask;; slot = (slot + 1) & mask) {
+            final int id = slots[slot] - 1;
+            if (id < 0) {
+                return add(value, slot);
+            }
+            if (values[id].equals(value)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Return the id of a range of characters, adding the value if it is not
+     * in the dictionary.
+     *
+     * @param chars
+     * @param start
+     * @param length
+     * @return
+     */
+    public int id(char[] chars, int start, int length) {
+        int hash = 0;
+        for (int idx = start, end = start + length; idx < end; idx++) {
+            hash = 31 * hash + chars[idx];
+        }
+        final int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask;; slot = (slot + 1) & mask) {
+            final int id = slots[slot] - 1;
+            if (id < 0) {
+                return add(new String(chars, start, length), slot);
+            }
+            if (equals(values[id], chars, start, length)) {
+                return id;
+            }
+        }
+    }
+
+    private int add(String value, int slot) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, 2 * size);
+        }
+        final int id = size++;
+        values[id] = value;
+        slots[slot] = id + 1;
+        if (2 * size > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[2 * slots.length];
+        final int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = spread(values[id].hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(String value, char[] chars, int start, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int idx = 0; idx < length; idx++) {
+            if (value.charAt(idx) != chars[start + idx]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
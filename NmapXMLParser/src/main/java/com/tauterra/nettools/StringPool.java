@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+/**
+ * A bounded cache that makes repeated strings share a single instance.
+ *
+ * <p>The pool is a fixed-size hash table with one string per slot. A value
+ * replaces whatever string occupied its slot before, so the pool never grows
+ * and a value that collides with another one is merely not deduplicated.
+ * This works well for attributes with few distinct values, such as protocols,
+ * port states or service names, which repeat for every port of a scan.</p>
+ *
+ * <p>A pool can be shared between threads without locking. Concurrent
+ * updates of a slot may lose an entry, which only costs a duplicate.</p>
+ *
+ * @author Nicholas Folse
+ */
+public final class StringPool {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * Longer values are returned as they are; they rarely repeat and would
+     * make the pool retain a lot of memory.
+     */
+    private static final int MAX_LENGTH = 256;
+
+    private final String[] table;
+
+    /**
+     * Return a new pool with the default capacity.
+     */
+    public StringPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Return a new pool.
+     *
+     * @param capacity The number of slots, rounded up to a power of two
+     */
+    public StringPool(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.table = new String[size];
+    }
+
+    /**
+     * Return the pooled instance equal to a value, pooling the value if there
+     * is none.
+     *
+     * @param value
+     * @return An instance equal to {@code value}, or null if it is null
+     */
+    public String intern(String value) {
+        if (value == null || value.length() > MAX_LENGTH) {
+            return value;
+        }
+        final int slot = slot(value.hashCode());
+        final String pooled = table[slot];
+        if (value.equals(pooled)) {
+            return pooled;
+        }
+        table[slot] = value;
+        return value;
+    }
+
+    /**
+     * Return the pooled instance equal to a range of characters, creating and
+     * pooling a string if there is none.
+     *
+     * A string is only allocated if the value is not in the pool.
+     *
+     * @param chars
+     * @param start
+     * @param length
+     * @return
+     */
+    public String intern(char[] chars, int start, int length) {
+        if (length > MAX_LENGTH) {
+            return new String(chars, start, length);
+        }
+        int hash = 0;
+        for (int idx = start, end = start + length; idx < end; idx++) {
+            hash = 31 * hash + chars[idx];
+        }
+        final int slot = slot(hash);
+        final String pooled = table[slot];
+        if (pooled != null && equals(pooled, chars, start, length)) {
+            return pooled;
+        }
+        final String value = new String(chars, start, length);
+        table[slot] = value;
+        return value;
+    }
+
+    private int slot(int hash) {
+        return (hash ^ (hash >>> 16)) & (table.length - 1);
+    }
+
+    private static boolean equals(String value, char[] chars, int start, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int idx = 0; idx < length; idx++) {
+            if (value.charAt(idx) != chars[start + idx]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
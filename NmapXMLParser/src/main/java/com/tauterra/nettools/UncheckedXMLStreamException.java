@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import java.util.Objects;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Wraps an {@link XMLStreamException} with an unchecked exception.
+ *
+ * Thrown where a checked exception cannot be declared, such as from the
+ * streams returned by {@link StAXObjectBuilder#stream(javax.xml.stream.XMLStreamReader) }.
+ *
+ * @author Nicholas Folse
+ */
+public class UncheckedXMLStreamException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedXMLStreamException(XMLStreamException cause) {
+        super(Objects.requireNonNull(cause));
+    }
+
+    public UncheckedXMLStreamException(String message, XMLStreamException cause) {
+        super(message, Objects.requireNonNull(cause));
+    }
+
+    @Override
+    public XMLStreamException getCause() {
+        return (XMLStreamException) super.getCause();
+    }
+
+}
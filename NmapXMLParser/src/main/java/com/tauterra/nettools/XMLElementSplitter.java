@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a file into byte ranges that start at an element's start tag.
+ *
+ * The file is never tokenized: start tags are found by searching for the raw
+ * bytes {@code <tagName} followed by whitespace, {@code >} or {@code /}. This
+ * is only reliable for elements that do not nest and do not appear inside
+ * comments or CDATA sections, which holds for the {@code <host>} elements of
+ * Nmap output. The encoding of the file must be ASCII-compatible.
+ *
+ * @author Nicholas Folse
+ */
+class XMLElementSplitter {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final byte[] startTag;
+    private final byte[] endTag;
+
+    XMLElementSplitter(String tagName) {
+        this.startTag = ("<" + tagName).getBytes(StandardCharsets.US_ASCII);
+        this.endTag = ("</" + tagName + ">").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Split the region of a file holding the elements into ranges.
+     *
+     * The first range starts at the first start tag and the last range ends
+     * after the last end tag. Every other boundary is the first start tag
+     * found after an evenly spaced offset, so ranges hold whole elements.
+     *
+     * @param channel
+     * @param parts The maximum number of ranges
+     * @return The range boundaries (ranges are {@code [b[i], b[i + 1])}), or
+     * an empty array if the file holds no complete element
+     * @throws IOException
+     */
+    long[] split(FileChannel channel, int parts) throws IOException {
+        final long size = channel.size();
+        final long first = indexOfStartTag(channel, 0, size);
+        if (first < 0) {
+            return new long[0];
+        }
+        final long lastEndTag = lastIndexOf(channel, endTag, first, size);
+        if (lastEndTag < 0) {
+            return new long[0];
+        }
+        final long end = lastEndTag + endTag.length;
+        long[] boundaries = new long[parts + 1];
+        int count = 0;
+        boundaries[count++] = first;
+        for (int part = 1; part < parts; part++) {
+            long offset = first + (end - first) / parts * part;
+            if (offset <= boundaries[count - 1]) {
+                continue;
+            }
+            long next = indexOfStartTag(channel, offset, end);
+            if (next < 0) {
+                break;
+            }
+            if (next > boundaries[count - 1]) {
+                boundaries[count++] = next;
+            }
+        }
+        boundaries[count++] = end;
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    /**
+     * Find the next start tag in {@code [from, to)}.
+     */
+    long indexOfStartTag(FileChannel channel, long from, long to) throws IOException {
+        long position = from;
+        while (true) {
+            long found = indexOf(channel, startTag, position, to);
+            if (found < 0) {
+                return -1;
+            }
+            long delimiter = found + startTag.length;
+            if (delimiter < to) {
+                ByteBuffer b = ByteBuffer.allocate(1);
+                channel.read(b, delimiter);
+                if (b.position() == 1 && isDelimiter(b.get(0))) {
+                    return found;
+                }
+            }
+            position = found + 1;
+        }
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '>' || b == '/';
+    }
+
+    private static long indexOf(FileChannel channel, byte[] pattern, long from, long to) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        long position = from;
+        while (position + pattern.length <= to) {
+            block.clear();
+            block.limit((int) Math.min(BLOCK_SIZE, to - position));
+            int count = read(channel, block, position);
+            if (count < pattern.length) {
+                return -1;
+            }
+            int idx = indexOf(block.array(), count, pattern);
+            if (idx >= 0) {
+                return position + idx;
+            }
+            position += count - pattern.length + 1;
+        }
+        return -1;
+    }
+
+    private static long lastIndexOf(FileChannel channel, byte[] pattern, long from, long to) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        long end = to;
+        while (end - from >= pattern.length) {
+            long position = Math.max(from, end - BLOCK_SIZE);
+            block.clear();
+            block.limit((int) (end - position));
+            int count = read(channel, block, position);
+            int idx = lastIndexOf(block.array(), count, pattern);
+            if (idx >= 0) {
+                return position + idx;
+            }
+            if (position == from) {
+                break;
+            }
+            end = position + pattern.length - 1;
+        }
+        return -1;
+    }
+
+    private static int read(FileChannel channel, ByteBuffer block, long position) throws IOException {
+        while (block.hasRemaining()) {
+            if (channel.read(block, position + block.position()) < 0) {
+                break;
+            }
+        }
+        return block.position();
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        final byte first = pattern[0];
+        OUTER:
+        for (int idx = 0; idx <= length - pattern.length; idx++) {
+            if (data[idx] != first) {
+                continue;
+            }
+            for (int p = 1; p < pattern.length; p++) {
+                if (data[idx + p] != pattern[p]) {
+                    continue OUTER;
+                }
+            }
+            return idx;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] data, int length, byte[] pattern) {
+        OUTER:
+        for (int idx = length - pattern.length; idx >= 0; idx--) {
+            for (int p = 0; p < pattern.length; p++) {
+                if (data[idx + p] != pattern[p]) {
+                    continue OUTER;
+                }
+            }
+            return idx;
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.DTD;
+import javax.xml.stream.events.EntityReference;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.ProcessingInstruction;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * A StAX cursor over an event reader, so that code written for
+ * {@link XMLStreamReader} can read events.
+ *
+ * The cursor starts on the next event of the event reader and consumes an
+ * event each time it advances; closing the cursor closes the event reader.
+ *
+ * @author Nicholas Folse
+ */
+class XMLEventStreamReader implements XMLStreamReader {
+
+    private final XMLEventReader eventReader;
+    private final List<Attribute> attributes = new ArrayList<>();
+    private final List<Namespace> namespaces = new ArrayList<>();
+    private XMLEvent event;
+    private StartDocument document;
+    private NamespaceContext namespaceContext;
+
+    XMLEventStreamReader(XMLEventReader eventReader) throws XMLStreamException {
+        this.eventReader = eventReader;
+        if (eventReader.hasNext()) {
+            setEvent(eventReader.nextEvent());
+        }
+    }
+
+    private void setEvent(XMLEvent event) {
+        this.event = event;
+        attributes.clear();
+        namespaces.clear();
+        if (event.isStartElement()) {
+            for (Iterator<?> it = event.asStartElement().getAttributes(); it.hasNext();) {
+                attributes.add((Attribute) it.next());
+            }
+            for (Iterator<?> it = event.asStartElement().getNamespaces(); it.hasNext();) {
+                namespaces.add((Namespace) it.next());
+            }
+            namespaceContext = event.asStartElement().getNamespaceContext();
+        } else if (event.isEndElement()) {
+            for (Iterator<?> it = event.asEndElement().getNamespaces(); it.hasNext();) {
+                namespaces.add((Namespace) it.next());
+            }
+        } else if (event.isStartDocument()) {
+            document = (StartDocument) event;
+        }
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return eventReader.getProperty(name);
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        if (!eventReader.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        setEvent(eventReader.nextEvent());
+        return event.getEventType();
+    }
+
+    @Override
+    public void require(int type, String namespaceURI, String localName) throws XMLStreamException {
+        if (getEventType() != type
+                || (namespaceURI != null && !namespaceURI.equals(getNamespaceURI()))
+                || (localName != null && !localName.equals(getLocalName()))) {
+            throw new XMLStreamException("unexpected event " + event, getLocation());
+        }
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+        if (getEventType() != XMLStreamConstants.START_ELEMENT) {
+            throw new XMLStreamException("not on a start element", getLocation());
+        }
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int eventType = next();
+            switch (eventType) {
+                case XMLStreamConstants.END_ELEMENT:
+                    return sb.toString();
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    sb.append(getText());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    break;
+                default:
+                    throw new XMLStreamException("unexpected event in element text", getLocation());
+            }
+        }
+    }
+
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int eventType = next();
+        while (eventType == XMLStreamConstants.COMMENT || eventType == XMLStreamConstants.PROCESSING_INSTRUCTION
+                || eventType == XMLStreamConstants.SPACE || isWhiteSpace()) {
+            eventType = next();
+        }
+        if (eventType != XMLStreamConstants.START_ELEMENT && eventType != XMLStreamConstants.END_ELEMENT) {
+            throw new XMLStreamException("expected a start or end tag", getLocation());
+        }
+        return eventType;
+    }
+
+    @Override
+    public boolean hasNext() throws XMLStreamException {
+        return eventReader.hasNext();
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        eventReader.close();
+    }
+
+    @Override
+    public String getNamespaceURI(String prefix) {
+        return (namespaceContext == null) ? null : namespaceContext.getNamespaceURI(prefix);
+    }
+
+    @Override
+    public boolean isStartElement() {
+        return event != null && event.isStartElement();
+    }
+
+    @Override
+    public boolean isEndElement() {
+        return event != null && event.isEndElement();
+    }
+
+    @Override
+    public boolean isCharacters() {
+        return getEventType() == XMLStreamConstants.CHARACTERS;
+    }
+
+    @Override
+    public boolean isWhiteSpace() {
+        return event != null && event.isCharacters() && event.asCharacters().isWhiteSpace();
+    }
+
+    @Override
+    public String getAttributeValue(String namespaceURI, String localName) {
+        requireStartElement();
+        for (Attribute attribute : attributes) {
+            QName name = attribute.getName();
+            if (name.getLocalPart().equals(localName)
+                    && (namespaceURI == null || namespaceURI.equals(name.getNamespaceURI()))) {
+                return attribute.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getAttributeCount() {
+        requireStartElement();
+        return attributes.size();
+    }
+
+    @Override
+    public QName getAttributeName(int index) {
+        requireStartElement();
+        return attributes.get(index).getName();
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+        String namespaceURI = getAttributeName(index).getNamespaceURI();
+        return namespaceURI.isEmpty() ? null : namespaceURI;
+    }
+
+    @Override
+    public String getAttributeLocalName(int index) {
+        return getAttributeName(index).getLocalPart();
+    }
+
+    @Override
+    public String getAttributePrefix(int index) {
+        return getAttributeName(index).getPrefix();
+    }
+
+    @Override
+    public String getAttributeType(int index) {
+        requireStartElement();
+        return attributes.get(index).getDTDType();
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        requireStartElement();
+        return attributes.get(index).getValue();
+    }
+
+    @Override
+    public boolean isAttributeSpecified(int index) {
+        requireStartElement();
+        return attributes.get(index).isSpecified();
+    }
+
+    @Override
+    public int getNamespaceCount() {
+        requireElement();
+        return namespaces.size();
+    }
+
+    @Override
+    public String getNamespacePrefix(int index) {
+        requireElement();
+        String prefix = namespaces.get(index).getPrefix();
+        return (prefix == null || prefix.isEmpty()) ? null : prefix;
+    }
+
+    @Override
+    public String getNamespaceURI(int index) {
+        requireElement();
+        return namespaces.get(index).getNamespaceURI();
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return namespaceContext;
+    }
+
+    @Override
+    public int getEventType() {
+        return (event == null) ? XMLStreamConstants.END_DOCUMENT : event.getEventType();
+    }
+
+    @Override
+    public String getText() {
+        switch (getEventType()) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                return event.asCharacters().getData();
+            case XMLStreamConstants.COMMENT:
+                return ((Comment) event).getText();
+            case XMLStreamConstants.DTD:
+                return ((DTD) event).getDocumentTypeDeclaration();
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                EntityReference reference = (EntityReference) event;
+                return (reference.getDeclaration() == null) ? null : reference.getDeclaration().getReplacementText();
+            default:
+                throw new IllegalStateException("the current event has no text");
+        }
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        return getText().toCharArray();
+    }
+
+    @Override
+    public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length) throws XMLStreamException {
+        String text = getText();
+        int count = Math.max(0, Math.min(length, text.length() - sourceStart));
+        text.getChars(sourceStart, sourceStart + count, target, targetStart);
+        return count;
+    }
+
+    @Override
+    public int getTextStart() {
+        return 0;
+    }
+
+    @Override
+    public int getTextLength() {
+        return getText().length();
+    }
+
+    @Override
+    public String getEncoding() {
+        return (document != null && document.encodingSet()) ? document.getCharacterEncodingScheme() : null;
+    }
+
+    @Override
+    public boolean hasText() {
+        switch (getEventType()) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+            case XMLStreamConstants.COMMENT:
+            case XMLStreamConstants.DTD:
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public Location getLocation() {
+        return (event == null) ? null : event.getLocation();
+    }
+
+    @Override
+    public QName getName() {
+        if (isStartElement()) {
+            return event.asStartElement().getName();
+        }
+        if (isEndElement()) {
+            return event.asEndElement().getName();
+        }
+        throw new IllegalStateException("not on a start or end tag");
+    }
+
+    @Override
+    public String getLocalName() {
+        if (event instanceof EntityReference) {
+            return ((EntityReference) event).getName();
+        }
+        return getName().getLocalPart();
+    }
+
+    @Override
+    public boolean hasName() {
+        return isStartElement() || isEndElement();
+    }
+
+    @Override
+    public String getNamespaceURI() {
+        if (!hasName()) {
+            return null;
+        }
+        String namespaceURI = getName().getNamespaceURI();
+        return namespaceURI.isEmpty() ? null : namespaceURI;
+    }
+
+    @Override
+    public String getPrefix() {
+        return hasName() ? getName().getPrefix() : null;
+    }
+
+    @Override
+    public String getVersion() {
+        return (document == null) ? null : document.getVersion();
+    }
+
+    @Override
+    public boolean isStandalone() {
+        return document != null && document.isStandalone();
+    }
+
+    @Override
+    public boolean standaloneSet() {
+        return document != null && document.standaloneSet();
+    }
+
+    @Override
+    public String getCharacterEncodingScheme() {
+        return (document == null) ? null : document.getCharacterEncodingScheme();
+    }
+
+    @Override
+    public String getPITarget() {
+        return (event instanceof ProcessingInstruction) ? ((ProcessingInstruction) event).getTarget() : null;
+    }
+
+    @Override
+    public String getPIData() {
+        return (event instanceof ProcessingInstruction) ? ((ProcessingInstruction) event).getData() : null;
+    }
+
+    private void requireStartElement() {
+        if (!isStartElement()) {
+            throw new IllegalStateException("not on a start tag");
+        }
+    }
+
+    private void requireElement() {
+        if (!hasName()) {
+            throw new IllegalStateException("not on a start or end tag");
+        }
+    }
+
+}
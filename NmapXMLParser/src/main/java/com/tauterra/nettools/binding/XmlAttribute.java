@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools.binding;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a setter to an attribute of the enclosing {@link XmlElement}.
+ *
+ * The setter must take a single {@code String}, {@code int}/{@code Integer}
+ * or {@code long}/{@code Long} argument. Numeric attributes that cannot be
+ * parsed are set to 0.
+ *
+ * With {@link #fields() }, the attribute is only set when the
+ * {@link XmlBindingOptions} of the parser select one of the listed fields.
+ *
+ * @author Nicholas Folse
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface XmlAttribute {
+
+    /**
+     * @return The attribute's name
+     */
+    String value();
+
+    /**
+     * Deduplicate the values of a low-cardinality {@code String} attribute
+     * with the pool of the {@link XmlBindingOptions}.
+     *
+     * @return true if the values are pooled
+     */
+    boolean pooled() default false;
+
+    /**
+     * @return The fields that need this attribute, or an empty array if it is
+     * always set
+     */
+    String[] fields() default {};
+
+}
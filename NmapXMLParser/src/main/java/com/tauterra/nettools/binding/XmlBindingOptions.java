@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools.binding;
+
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Options of the parsers generated from {@link XmlElement} bindings: the
+ * selected fields, the pool for {@link XmlAttribute#pooled() } values and
+ * whether objects are recycled.
+ *
+ * Options are immutable and can be shared between parsers and threads, as
+ * long as the field selector and the pool are thread-safe.
+ *
+ * @author Nicholas Folse
+ */
+public final class XmlBindingOptions {
+
+    /**
+     * Select every field, keep every value and create a new object for every
+     * element.
+     */
+    public static final XmlBindingOptions DEFAULT = new XmlBindingOptions(null, null, false);
+
+    private final Predicate<String> fields;
+    private final UnaryOperator<String> pool;
+    private final boolean reusing;
+
+    /**
+     * Return new options.
+     *
+     * @param fields Selects fields by name, or null to select every field
+     * @param pool Returns the pooled instance of a value, or null to keep
+     * every value as a separate instance
+     * @param reusing Recycle the objects of {@link XmlReset} classes once
+     * their parser is released
+     */
+    public XmlBindingOptions(Predicate<String> fields, UnaryOperator<String> pool, boolean reusing) {
+        this.fields = fields;
+        this.pool = pool;
+        this.reusing = reusing;
+    }
+
+    /**
+     * @param names The fields of a binding
+     * @return true if a binding for these fields is parsed: if it lists no
+     * fields, or one of them is selected
+     */
+    public boolean isSelected(String... names) {
+        if (fields == null || names.length == 0) {
+            return true;
+        }
+        for (String name : names) {
+            if (fields.test(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param value
+     * @return The pooled instance of the value
+     */
+    public String pool(String value) {
+        return (pool == null) ? value : pool.apply(value);
+    }
+
+    public boolean isReusing() {
+        return reusing;
+    }
+
+    /**
+     * @return These options with reusing enabled
+     */
+    public XmlBindingOptions reusing() {
+        return reusing ? this : new XmlBindingOptions(fields, pool, true);
+    }
+
+}
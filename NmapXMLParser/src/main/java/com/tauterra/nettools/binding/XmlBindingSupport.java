@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools.binding;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Runtime support for the parsers generated from {@link XmlElement} bindings.
+ *
+ * @author Nicholas Folse
+ */
+public final class XmlBindingSupport {
+
+    private XmlBindingSupport() {
+    }
+
+    /**
+     * Advance the reader to the first element with the given tag name.
+     *
+     * @param streamReader
+     * @param tagName The tag name, or null to find the first element
+     * @return false if the document has no such element
+     * @throws XMLStreamException
+     */
+    public static boolean findElement(XMLStreamReader streamReader, String tagName) throws XMLStreamException {
+        int eventType = streamReader.getEventType();
+        while (true) {
+            if (eventType == XMLStreamConstants.START_ELEMENT
+                    && (tagName == null || streamReader.getLocalName().equals(tagName))) {
+                return true;
+            }
+            if (eventType == XMLStreamConstants.END_DOCUMENT || !streamReader.hasNext()) {
+                return false;
+            }
+            eventType = streamReader.next();
+        }
+    }
+
+    /**
+     * Skip the element at the cursor, leaving the reader on its END_ELEMENT.
+     *
+     * @param streamReader
+     * @throws XMLStreamException
+     */
+    public static void skipElement(XMLStreamReader streamReader) throws XMLStreamException {
+        int level = 0;
+        while (streamReader.hasNext()) {
+            int eventType = streamReader.next();
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                level++;
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                if (level == 0) {
+                    return;
+                }
+                level--;
+            }
+        }
+    }
+
+    /**
+     * Parse a decimal int without throwing on malformed input.
+     *
+     * @param value
+     * @param def Returned if the value is not a valid int
+     * @return
+     */
+    public static int parseInt(String value, int def) {
+        long result = parseLong(value, Long.MIN_VALUE);
+        return (result >= Integer.MIN_VALUE && result <= Integer.MAX_VALUE) ? (int) result : def;
+    }
+
+    /**
+     * Parse a decimal long without throwing on malformed input.
+     *
+     * @param value
+     * @param def Returned if the value is not a valid long
+     * @return
+     */
+    public static long parseLong(String value, long def) {
+        if (value == null || value.isEmpty()) {
+            return def;
+        }
+        final int length = value.length();
+        int idx = 0;
+        boolean negative = false;
+        char first = value.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = (first == '-');
+            if (++idx == length) {
+                return def;
+            }
+        }
+        // accumulate negatively, which covers Long.MIN_VALUE
+        long result = 0;
+        for (; idx < length; idx++) {
+            int digit = value.charAt(idx) - '0';
+            if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) {
+                return def;
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                return def;
+            }
+            result = -result;
+        }
+        return result;
+    }
+
+}
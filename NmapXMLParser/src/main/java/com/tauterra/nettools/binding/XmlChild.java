@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools.binding;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a child element of the enclosing {@link XmlElement}.
+ *
+ * Annotate either a setter taking a single {@link XmlElement} type (the last
+ * matching child is kept), or a getter returning a {@code List} of an
+ * {@link XmlElement} type (every matching child is added to the list).
+ *
+ * With {@link #fields() }, the child is only parsed when the
+ * {@link XmlBindingOptions} of the parser select one of the listed fields;
+ * otherwise it is skipped without being built. A wrapper is skipped when none
+ * of its children are parsed.
+ *
+ * @author Nicholas Folse
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface XmlChild {
+
+    /**
+     * The tag name of an element that wraps the children, such as
+     * {@code ports} for {@code <ports><port/><port/></ports>}. The wrapper
+     * itself has no bound type.
+     *
+     * @return The wrapper element's tag name, or "" if the children are not
+     * wrapped
+     */
+    String wrapper() default "";
+
+    /**
+     * @return The fields that need this child, or an empty array if it is
+     * always parsed
+     */
+    String[] fields() default {};
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools.binding;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a class to an XML element.
+ *
+ * The binding processor generates a parser named {@code <Class>XmlParser} in
+ * the same package for every class with this annotation. The class must be
+ * top-level and have a public no-argument constructor. Every StAX parse path
+ * of {@code NmapScanResultParser} uses the generated parsers, so these
+ * annotations are the only place where the model is bound to those paths.
+ *
+ * @author Nicholas Folse
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface XmlElement {
+
+    /**
+     * @return The element's tag name
+     */
+    String value();
+
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools.nmap.model;
+
+import com.tauterra.nettools.Ipv4;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable, compact copy of the host fields used to export and merge
+ * large inventories.
+ *
+ * <p>A {@link NmapHostElement} holds three lists and a handful of objects per
+ * port. This class keeps the same information in exact-size arrays: IPv4
+ * addresses packed into ints, port numbers in shorts, protocols and states as
+ * byte codes, and one array per service field. Ports are addressed by index,
+ * and the accessors return the values the full model would return.</p>
+ *
+ * <p>Protocols and states outside {@link NmapProtocol} and {@link NmapState}
+ * are kept as strings, so no value is lost. Empty ones, which is what a port
+ * reads as when its state is not parsed, have a code of their own.</p>
+ *
+ * <p>A host can be written in a binary form with {@link #write(DataOutput) }
+ * and read back with {@link #read(DataInput) }, to move hosts out of the heap
+ * and back.</p>
+ *
+ * @author Nicholas Folse
+ */
+public final class CompactHost {
+
+    private static final int[] NO_ADDRESSES = new int[0];
+    private static final String[] NO_STRINGS = new String[0];
+    private static final NmapProtocol[] PROTOCOLS = NmapProtocol.values();
+    private static final NmapState[] STATES = NmapState.values();
+
+    /** Code of a missing protocol or state. */
+    private static final byte NONE = 0;
+    /** Code of a protocol or state that is kept in {@link #otherValues}. */
+    private static final byte OTHER = -1;
+    /**
+     * Code of an empty protocol or state, the default of a port or state
+     * that was not parsed.
+     */
+    private static final byte EMPTY = -2;
+
+    private final long starttime;
+    private final int[] ipv4Addresses;
+    private final String[] hostnames;
+    private final short[] portids;
+    private final byte[] protocols;
+    private final byte[] states;
+    private final byte[] confs;
+    private final String[] serviceNames;
+    private final String[] serviceProducts;
+    /** Protocol and state of each port as text, only if a code is OTHER. */
+    private final String[] otherValues;
+
+    private CompactHost(NmapHostElement host) {
+        this.starttime = (host.getStarttime() != null) ? host.getStarttime() : 0;
+        this.ipv4Addresses = ipv4Addresses(host.getAddresses());
+        this.hostnames = hostnames(host.getHostnames());
+
+        final List<NmapPortElement> ports = host.getPorts();
+        final int count = ports.size();
+        this.portids = new short[count];
+        this.protocols = new byte[count];
+        this.states = new byte[count];
+        this.confs = new byte[count];
+        this.serviceNames = new String[count];
+        this.serviceProducts = new String[count];
+        String[] others = null;
+        for (int idx = 0; idx < count; idx++) {
+            final NmapPortElement port = ports.get(idx);
+            final NmapPortState state = port.getState();
+            final NmapService service = port.getService();
+            final String protocolValue = port.getProtocol();
+            final String stateValue = state.getState();
+            portids[idx] = (short) ((port.getPortid() != null) ? port.getPortid() : 0);
+            protocols[idx] = code(NmapProtocol.fromValue(protocolValue), protocolValue);
+            states[idx] = code(NmapState.fromValue(stateValue), stateValue);
+            if (protocols[idx] == OTHER || states[idx] == OTHER) {
+                if (others == null) {
+                    others = new String[2 * count];
+                }
+                others[2 * idx] = protocolValue;
+                others[2 * idx + 1] = stateValue;
+            }
+            confs[idx] = (byte) ((service.getConf() != null) ? service.getConf() : 0);
+            serviceNames[idx] = service.getName();
+            serviceProducts[idx] = service.getProduct();
+        }
+        this.otherValues = others;
+    }
+
+    private CompactHost(long starttime, int[] ipv4Addresses, String[] hostnames, short[] portids, byte[] protocols,
+            byte[] states, byte[] confs, String[] serviceNames, String[] serviceProducts, String[] otherValues) {
+        this.starttime = starttime;
+        this.ipv4Addresses = ipv4Addresses;
+        this.hostnames = hostnames;
+        this.portids = portids;
+        this.protocols = protocols;
+        this.states = states;
+        this.confs = confs;
+        this.serviceNames = serviceNames;
+        this.serviceProducts = serviceProducts;
+        this.otherValues = otherValues;
+    }
+
+    /**
+     * Return a compact copy of a host.
+     *
+     * @param host
+     * @return
+     */
+    public static CompactHost of(NmapHostElement host) {
+        return new CompactHost(host);
+    }
+
+    private static int[] ipv4Addresses(List<NmapAddressElement> addresses) {
+        int[] result = new int[addresses.size()];
+        int count = 0;
+        for (NmapAddressElement address : addresses) {
+            long packed = "ipv4".equals(address.getAddrtype()) ? Ipv4.parse(address.getAddr()) : Ipv4.INVALID;
+            if (packed != Ipv4.INVALID) {
+                result[count++] = (int) packed;
+            }
+        }
+        return (count == 0) ? NO_ADDRESSES : (count == result.length) ? result : Arrays.copyOf(result, count);
+    }
+
+    private static String[] hostnames(List<NmapHostname> hostnames) {
+        if (hostnames.isEmpty()) {
+            return NO_STRINGS;
+        }
+        String[] result = new String[hostnames.size()];
+        for (int idx = 0; idx < result.length; idx++) {
+            result[idx] = hostnames.get(idx).getName();
+        }
+        return result;
+    }
+
+    private static byte code(Enum<?> constant, String value) {
+        if (constant != null) {
+            return (byte) (constant.ordinal() + 1);
+        }
+        return (value == null) ? NONE : value.isEmpty() ? EMPTY : OTHER;
+    }
+
+    /**
+     * Return a host with the addresses and hostnames of one host and ports
+     * selected from two.
+     *
+     * @param host The host of the addresses and hostnames
+     * @param other
+     * @param ports The ports of the result, in order: the index of a port of
+     * {@code host}, or the complement ({@code ~idx}) of the index of a port of
+     * {@code other}
+     * @return
+     */
+    public static CompactHost withPorts(CompactHost host, CompactHost other, int[] ports) {
+        final int count = ports.length;
+        final short[] portids = new short[count];
+        final byte[] protocols = new byte[count];
+        final byte[] states = new byte[count];
+        final byte[] confs = new byte[count];
+        final String[] serviceNames = new String[count];
+        final String[] serviceProducts = new String[count];
+        String[] others = null;
+        for (int idx = 0; idx < count; idx++) {
+            final CompactHost source = (ports[idx] >= 0) ? host : other;
+            final int port = (ports[idx] >= 0) ? ports[idx] : ~ports[idx];
+            portids[idx] = source.portids[port];
+            protocols[idx] = source.protocols[port];
+            states[idx] = source.states[port];
+            confs[idx] = source.confs[port];
+            serviceNames[idx] = source.serviceNames[port];
+            serviceProducts[idx] = source.serviceProducts[port];
+            if (protocols[idx] == OTHER || states[idx] == OTHER) {
+                if (others == null) {
+                    others = new String[2 * count];
+                }
+                others[2 * idx] = source.otherValues[2 * port];
+                others[2 * idx + 1] = source.otherValues[2 * port + 1];
+            }
+        }
+        return new CompactHost(host.starttime, host.ipv4Addresses, host.hostnames, portids, protocols,
+                states, confs, serviceNames, serviceProducts, others);
+    }
+
+    /**
+     * Return the time the scan of the host started, in seconds since the
+     * epoch.
+     *
+     * @return The time, or 0 if it is not known
+     */
+    public long getStarttime() {
+        return starttime;
+    }
+
+    /**
+     * Return the number of IPv4 addresses of the host.
+     *
+     * @return
+     */
+    public int getIpv4AddressCount() {
+        return ipv4Addresses.length;
+    }
+
+    /**
+     * Return an IPv4 address of the host, packed as described in {@link Ipv4}.
+     *
+     * @param idx
+     * @return
+     */
+    public int getIpv4Address(int idx) {
+        return ipv4Addresses[idx];
+    }
+
+    /**
+     * Return the number of hostnames of the host.
+     *
+     * @return
+     */
+    public int getHostnameCount() {
+        return hostnames.length;
+    }
+
+    public String getHostname(int idx) {
+        return hostnames[idx];
+    }
+
+    /**
+     * Return the number of ports of the host.
+     *
+     * @return
+     */
+    public int getPortCount() {
+        return portids.length;
+    }
+
+    public int getPortid(int idx) {
+        return portids[idx] & 0xFFFF;
+    }
+
+    /**
+     * Return the protocol of a port.
+     *
+     * @param idx
+     * @return The protocol, or null if it is missing or not a known protocol
+     */
+    public NmapProtocol getProtocolCode(int idx) {
+        return (protocols[idx] > 0) ? PROTOCOLS[protocols[idx] - 1] : null;
+    }
+
+    public String getProtocol(int idx) {
+        final byte code = protocols[idx];
+        return (code > 0) ? PROTOCOLS[code - 1].getValue() : (code == OTHER) ? otherValues[2 * idx]
+                : (code == EMPTY) ? "" : null;
+    }
+
+    /**
+     * Return the state of a port.
+     *
+     * @param idx
+     * @return The state, or null if it is missing or not a known state
+     */
+    public NmapState getStateCode(int idx) {
+        return (states[idx] > 0) ? STATES[states[idx] - 1] : null;
+    }
+
+    public String getState(int idx) {
+        final byte code = states[idx];
+        return (code > 0) ? STATES[code - 1].getValue() : (code == OTHER) ? otherValues[2 * idx + 1]
+                : (code == EMPTY) ? "" : null;
+    }
+
+    public int getServiceConf(int idx) {
+        return confs[idx];
+    }
+
+    public String getServiceName(int idx) {
+        return serviceNames[idx];
+    }
+
+    public String getServiceProduct(int idx) {
+        return serviceProducts[idx];
+    }
+
+    /**
+     * Write the host in binary form.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(starttime);
+        out.writeInt(ipv4Addresses.length);
+        for (int address : ipv4Addresses) {
+            out.writeInt(address);
+        }
+        out.writeInt(hostnames.length);
+        for (String hostname : hostnames) {
+            writeString(out, hostname);
+        }
+        out.writeInt(portids.length);
+        out.writeBoolean(otherValues != null);
+        for (int idx = 0; idx < portids.length; idx++) {
+            out.writeShort(portids[idx]);
+            out.writeByte(protocols[idx]);
+            out.writeByte(states[idx]);
+            out.writeByte(confs[idx]);
+            writeString(out, serviceNames[idx]);
+            writeString(out, serviceProducts[idx]);
+            if (otherValues != null) {
+                writeString(out, otherValues[2 * idx]);
+                writeString(out, otherValues[2 * idx + 1]);
+            }
+        }
+    }
+
+    /**
+     * Read a host written by {@link #write(DataOutput) }.
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static CompactHost read(DataInput in) throws IOException {
+        final long starttime = in.readLong();
+        final int addressCount = in.readInt();
+        final int[] addresses = (addressCount == 0) ? NO_ADDRESSES : new int[addressCount];
+        for (int idx = 0; idx < addressCount; idx++) {
+            addresses[idx] = in.readInt();
+        }
+        final int hostnameCount = in.readInt();
+        final String[] names = (hostnameCount == 0) ? NO_STRINGS : new String[hostnameCount];
+        for (int idx = 0; idx < hostnameCount; idx++) {
+            names[idx] = readString(in);
+        }
+        final int count = in.readInt();
+        final String[] others = in.readBoolean() ? new String[2 * count] : null;
+        final short[] portids = new short[count];
+        final byte[] protocols = new byte[count];
+        final byte[] states = new byte[count];
+        final byte[] confs = new byte[count];
+        final String[] serviceNames = new String[count];
+        final String[] serviceProducts = new String[count];
+        for (int idx = 0; idx < count; idx++) {
+            portids[idx] = in.readShort();
+            protocols[idx] = in.readByte();
+            states[idx] = in.readByte();
+            confs[idx] = in.readByte();
+            serviceNames[idx] = readString(in);
+            serviceProducts[idx] = readString(in);
+            if (others != null) {
+                others[2 * idx] = readString(in);
+                others[2 * idx + 1] = readString(in);
+            }
+        }
+        return new CompactHost(starttime, addresses, names, portids, protocols, states, confs, serviceNames, serviceProducts, others);
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Return an estimate of the heap size of the host in bytes, counting its
+     * strings as if they were not shared with other hosts.
+     *
+     * @return
+     */
+    public long estimateSize() {
+        final int count = portids.length;
+        long size = 56 + arraySize(4 * ipv4Addresses.length) + arraySize(2 * count) + 3 * arraySize(count);
+        size += stringsSize(hostnames) + stringsSize(serviceNames) + stringsSize(serviceProducts);
+        if (otherValues != null) {
+            size += stringsSize(otherValues);
+        }
+        return size;
+    }
+
+    private static long arraySize(long bytes) {
+        return (16 + bytes + 7) & ~7L;
+    }
+
+    private static long stringsSize(String[] values) {
+        long size = arraySize(4L * values.length);
+        for (String value : values) {
+            if (value != null) {
+                size += 24 + arraySize(value.length());
+            }
+        }
+        return size;
+    }
+
+}
@@ -15,10 +15,15 @@
  */
 package com.tauterra.nettools.nmap.model;
 
+import com.tauterra.nettools.binding.XmlAttribute;
+import com.tauterra.nettools.binding.XmlElement;
+import com.tauterra.nettools.binding.XmlReset;
+
 /**
  *
  * @author Nicholas Folse
  */
+@XmlElement("address")
 public class NmapAddressElement implements Comparable<NmapAddressElement> {
 
     private String addrtype;
@@ -28,10 +33,21 @@ public class NmapAddressElement implements Comparable<NmapAddressElement> {
     public NmapAddressElement() {
     }
 
+    /**
+     * Restore the state of a new instance, so that a parser can reuse it.
+     */
+    @XmlReset
+    public void reset() {
+        addrtype = null;
+        vendor = null;
+        addr = null;
+    }
+
     public String getAddrtype() {
         return addrtype;
     }
 
+    @XmlAttribute(value = "addrtype", pooled = true)
     public void setAddrtype(String addrtype) {
         this.addrtype = addrtype;
     }
@@ -40,6 +56,7 @@ public class NmapAddressElement implements Comparable<NmapAddressElement> {
         return vendor;
     }
 
+    @XmlAttribute(value = "vendor", pooled = true)
     public void setVendor(String vendor) {
         this.vendor = vendor;
     }
@@ -48,6 +65,7 @@ public class NmapAddressElement implements Comparable<NmapAddressElement> {
         return addr;
     }
 
+    @XmlAttribute("addr")
     public void setAddr(String addr) {
         this.addr = addr;
     }
@@ -15,6 +15,10 @@
  */
 package com.tauterra.nettools.nmap.model;
 
+import com.tauterra.nettools.binding.XmlAttribute;
+import com.tauterra.nettools.binding.XmlChild;
+import com.tauterra.nettools.binding.XmlElement;
+import com.tauterra.nettools.binding.XmlReset;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,10 +26,13 @@ import java.util.List;
  *
  * @author Nicholas Folse
  */
+@XmlElement("host")
 public class NmapHostElement {
 
     private String comment = null;
     private String status = null;
+    private Long starttime = null;
+    private Long endtime = null;
     private final List<NmapHostname> hostnames = new ArrayList<>();
     private final List<NmapAddressElement> addresses = new ArrayList<>();
     private final List<NmapPortElement> ports = new ArrayList<>();
@@ -36,10 +43,27 @@ public class NmapHostElement {
     public NmapHostElement() {
     }
 
+    /**
+     * Restore the state of a new instance, so that a parser can reuse it.
+     */
+    @XmlReset
+    public void reset() {
+        comment = null;
+        status = null;
+        starttime = null;
+        endtime = null;
+        hostnames.clear();
+        addresses.clear();
+        ports.clear();
+        os = null;
+        uptime = null;
+    }
+
     public String getComment() {
         return comment;
     }
 
+    @XmlAttribute(value = "comment", fields = "COMMENT")
     public void setComment(String comment) {
         this.comment = comment;
     }
@@ -52,10 +76,41 @@ public class NmapHostElement {
         this.status = status;
     }
 
+    /**
+     * Return the time the scan of the host started, in seconds since the
+     * epoch. The parsers give hosts without a starttime attribute the start of
+     * the scan.
+     *
+     * @return The time, or null if the scan does not record it
+     */
+    public Long getStarttime() {
+        return starttime;
+    }
+
+    @XmlAttribute(value = "starttime", fields = "TIMES")
+    public void setStarttime(Long starttime) {
+        this.starttime = starttime;
+    }
+
+    /**
+     * Return the time the scan of the host ended, in seconds since the epoch.
+     *
+     * @return The time, or null if the scan does not record it
+     */
+    public Long getEndtime() {
+        return endtime;
+    }
+
+    @XmlAttribute(value = "endtime", fields = "TIMES")
+    public void setEndtime(Long endtime) {
+        this.endtime = endtime;
+    }
+
     public NmapOSElement getOs() {
         return os;
     }
 
+    @XmlChild(fields = "OS")
     public void setOs(NmapOSElement os) {
         this.os = os;
     }
@@ -68,14 +123,17 @@ public class NmapHostElement {
         this.uptime = uptime;
     }
 
+    @XmlChild(fields = "ADDRESS")
     public List<NmapAddressElement> getAddresses() {
         return addresses;
     }
 
+    @XmlChild(wrapper = "ports", fields = {"PORT", "STATE", "SERVICE_NAME", "SERVICE_PRODUCT", "SERVICE_DETAILS"})
     public List<NmapPortElement> getPorts() {
         return ports;
     }
 
+    @XmlChild(wrapper = "hostnames", fields = "HOSTNAME")
     public List<NmapHostname> getHostnames() {
         return hostnames;
     }
@@ -15,10 +15,15 @@
  */
 package com.tauterra.nettools.nmap.model;
 
+import com.tauterra.nettools.binding.XmlAttribute;
+import com.tauterra.nettools.binding.XmlElement;
+import com.tauterra.nettools.binding.XmlReset;
+
 /**
  *
  * @author Nicholas Folse
  */
+@XmlElement("hostname")
 public class NmapHostname {
 
     private String type = "";
@@ -27,10 +32,20 @@ public class NmapHostname {
     public NmapHostname() {
     }
 
+    /**
+     * Restore the state of a new instance, so that a parser can reuse it.
+     */
+    @XmlReset
+    public void reset() {
+        type = "";
+        name = "";
+    }
+
     public String getType() {
         return type;
     }
 
+    @XmlAttribute(value = "type", pooled = true)
     public void setType(String type) {
         this.type = type;
     }
@@ -39,6 +54,7 @@ public class NmapHostname {
         return name;
     }
 
+    @XmlAttribute("name")
     public void setName(String name) {
         this.name = name;
     }
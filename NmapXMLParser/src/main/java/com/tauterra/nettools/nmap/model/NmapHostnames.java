@@ -29,6 +29,13 @@ public class NmapHostnames {
     public NmapHostnames() {
     }
 
+    /**
+     * Restore the state of a new instance, so that a builder can reuse it.
+     */
+    public void reset() {
+        hostnames.clear();
+    }
+
     public List<NmapHostname> getHostnames() {
         return hostnames;
     }
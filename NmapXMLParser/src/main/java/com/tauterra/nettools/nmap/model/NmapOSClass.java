@@ -15,10 +15,14 @@
  */
 package com.tauterra.nettools.nmap.model;
 
+import com.tauterra.nettools.binding.XmlAttribute;
+import com.tauterra.nettools.binding.XmlElement;
+
 /**
  *
  * @author Nicholas Folse
  */
+@XmlElement("osclass")
 public class NmapOSClass {
 
     private String type;
@@ -34,6 +38,7 @@ public class NmapOSClass {
         return type;
     }
 
+    @XmlAttribute(value = "type", pooled = true)
     public void setType(String type) {
         this.type = type;
     }
@@ -42,6 +47,7 @@ public class NmapOSClass {
         return osfamily;
     }
 
+    @XmlAttribute(value = "osfamily", pooled = true)
     public void setOsfamily(String osfamily) {
         this.osfamily = osfamily;
     }
@@ -50,6 +56,7 @@ public class NmapOSClass {
         return vendor;
     }
 
+    @XmlAttribute(value = "vendor", pooled = true)
     public void setVendor(String vendor) {
         this.vendor = vendor;
     }
@@ -58,6 +65,7 @@ public class NmapOSClass {
         return osgen;
     }
 
+    @XmlAttribute(value = "osgen", pooled = true)
     public void setOsgen(String osgen) {
         this.osgen = osgen;
     }
@@ -66,6 +74,7 @@ public class NmapOSClass {
         return accuracy;
     }
 
+    @XmlAttribute("accuracy")
     public void setAccuracy(Integer accuracy) {
         this.accuracy = accuracy;
     }
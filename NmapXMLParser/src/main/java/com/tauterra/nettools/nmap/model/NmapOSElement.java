@@ -15,6 +15,8 @@
  */
 package com.tauterra.nettools.nmap.model;
 
+import com.tauterra.nettools.binding.XmlChild;
+import com.tauterra.nettools.binding.XmlElement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,6 +24,7 @@ import java.util.List;
  *
  * @author Nicholas Folse
  */
+@XmlElement("os")
 public class NmapOSElement {
 
     private final List<NmapPortUsed> portsUsed = new ArrayList<>();
@@ -30,10 +33,12 @@ public class NmapOSElement {
     public NmapOSElement() {
     }
 
+    @XmlChild
     public List<NmapPortUsed> getPortsUsed() {
         return portsUsed;
     }
 
+    @XmlChild
     public List<NmapOSMatch> getOsMatches() {
         return osMatches;
     }
@@ -15,10 +15,15 @@
  */
 package com.tauterra.nettools.nmap.model;
 
+import com.tauterra.nettools.binding.XmlAttribute;
+import com.tauterra.nettools.binding.XmlChild;
+import com.tauterra.nettools.binding.XmlElement;
+
 /**
  *
  * @author Nicholas Folse
  */
+@XmlElement("osmatch")
 public class NmapOSMatch {
 
     private Long line;
@@ -33,6 +38,7 @@ public class NmapOSMatch {
         return line;
     }
 
+    @XmlAttribute("line")
     public void setLine(Long line) {
         this.line = line;
     }
@@ -41,6 +47,7 @@ public class NmapOSMatch {
         return name;
     }
 
+    @XmlAttribute(value = "name", pooled = true)
     public void setName(String name) {
         this.name = name;
     }
@@ -49,6 +56,7 @@ public class NmapOSMatch {
         return accuracy;
     }
 
+    @XmlAttribute("accuracy")
     public void setAccuracy(Integer accuracy) {
         this.accuracy = accuracy;
     }
@@ -57,6 +65,7 @@ public class NmapOSMatch {
         return osclass;
     }
 
+    @XmlChild
     public void setOsclass(NmapOSClass osclass) {
         this.osclass = osclass;
     }
@@ -15,10 +15,16 @@
  */
 package com.tauterra.nettools.nmap.model;
 
+import com.tauterra.nettools.binding.XmlAttribute;
+import com.tauterra.nettools.binding.XmlChild;
+import com.tauterra.nettools.binding.XmlElement;
+import com.tauterra.nettools.binding.XmlReset;
+
 /**
  *
  * @author Nicholas Folse
  */
+@XmlElement("port")
 public class NmapPortElement {
 
     private String protocol;
@@ -29,10 +35,22 @@ public class NmapPortElement {
     public NmapPortElement() {
     }
 
+    /**
+     * Restore the state of a new instance, so that a parser can reuse it.
+     */
+    @XmlReset
+    public void reset() {
+        protocol = null;
+        portid = null;
+        state = null;
+        service = null;
+    }
+
     public String getProtocol() {
         return protocol;
     }
 
+    @XmlAttribute(value = "protocol", pooled = true)
     public void setProtocol(String protocol) {
         this.protocol = protocol;
     }
@@ -41,6 +59,7 @@ public class NmapPortElement {
         return portid;
     }
 
+    @XmlAttribute("portid")
     public void setPortid(Integer portid) {
         this.portid = portid;
     }
@@ -49,6 +68,7 @@ public class NmapPortElement {
         return (state != null) ? state : new NmapPortState();
     }
 
+    @XmlChild(fields = "STATE")
     public void setState(NmapPortState state) {
         this.state = state;
     }
@@ -57,6 +77,7 @@ public class NmapPortElement {
         return (service != null) ? service : new NmapService();
     }
 
+    @XmlChild(fields = {"SERVICE_NAME", "SERVICE_PRODUCT", "SERVICE_DETAILS"})
     public void setService(NmapService service) {
         this.service = service;
     }
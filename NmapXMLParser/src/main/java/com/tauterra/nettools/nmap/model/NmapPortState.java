@@ -15,10 +15,15 @@
  */
 package com.tauterra.nettools.nmap.model;
 
+import com.tauterra.nettools.binding.XmlAttribute;
+import com.tauterra.nettools.binding.XmlElement;
+import com.tauterra.nettools.binding.XmlReset;
+
 /**
  *
  * @author Nicholas Folse
  */
+@XmlElement("state")
 public class NmapPortState {
     private String reason = "";
     private String state = "";
@@ -27,10 +32,21 @@ public class NmapPortState {
     public NmapPortState() {
     }
 
+    /**
+     * Restore the state of a new instance, so that a parser can reuse it.
+     */
+    @XmlReset
+    public void reset() {
+        reason = "";
+        state = "";
+        reason_ttl = "";
+    }
+
     public String getReason() {
         return reason;
     }
 
+    @XmlAttribute(value = "reason", pooled = true)
     public void setReason(String reason) {
         this.reason = reason;
     }
@@ -39,6 +55,7 @@ public class NmapPortState {
         return state;
     }
 
+    @XmlAttribute(value = "state", pooled = true)
     public void setState(String state) {
         this.state = state;
     }
@@ -47,6 +64,7 @@ public class NmapPortState {
         return reason_ttl;
     }
 
+    @XmlAttribute(value = "reason_ttl", pooled = true)
     public void setReason_ttl(String reason_ttl) {
         this.reason_ttl = reason_ttl;
     }
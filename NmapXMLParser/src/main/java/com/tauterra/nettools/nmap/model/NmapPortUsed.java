@@ -15,10 +15,14 @@
  */
 package com.tauterra.nettools.nmap.model;
 
+import com.tauterra.nettools.binding.XmlAttribute;
+import com.tauterra.nettools.binding.XmlElement;
+
 /**
  *
  * @author Nicholas Folse
  */
+@XmlElement("portused")
 public class NmapPortUsed {
 
     private String state;
@@ -32,6 +36,7 @@ public class NmapPortUsed {
         return state;
     }
 
+    @XmlAttribute(value = "state", pooled = true)
     public void setState(String state) {
         this.state = state;
     }
@@ -40,6 +45,7 @@ public class NmapPortUsed {
         return portID;
     }
 
+    @XmlAttribute("portid")
     public void setPortID(Integer portID) {
         this.portID = portID;
     }
@@ -48,6 +54,7 @@ public class NmapPortUsed {
         return proto;
     }
 
+    @XmlAttribute(value = "proto", pooled = true)
     public void setProto(String proto) {
         this.proto = proto;
     }
@@ -29,6 +29,13 @@ public class NmapPortsElement {
     public NmapPortsElement() {
     }
 
+    /**
+     * Restore the state of a new instance, so that a builder can reuse it.
+     */
+    public void reset() {
+        ports.clear();
+    }
+
     public List<NmapPortElement> getPorts() {
         return ports;
     }
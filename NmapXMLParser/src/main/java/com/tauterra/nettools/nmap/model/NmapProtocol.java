@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools.nmap.model;
+
+/**
+ * The protocols reported in the {@code protocol} attribute of a port.
+ *
+ * @author Nicholas Folse
+ */
+public enum NmapProtocol {
+
+    TCP("tcp"),
+    UDP("udp"),
+    SCTP("sctp"),
+    IP("ip");
+
+    private static final NmapProtocol[] VALUES = values();
+
+    private final String value;
+
+    private NmapProtocol(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Return the attribute value of this protocol.
+     *
+     * @return
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Return the protocol for an attribute value.
+     *
+     * @param value
+     * @return The protocol, or null if the value is not a known protocol
+     */
+    public static NmapProtocol fromValue(String value) {
+        for (NmapProtocol protocol : VALUES) {
+            if (protocol.value.equals(value)) {
+                return protocol;
+            }
+        }
+        return null;
+    }
+
+}
@@ -15,6 +15,9 @@
  */
 package com.tauterra.nettools.nmap.model;
 
+import com.tauterra.nettools.binding.XmlAttribute;
+import com.tauterra.nettools.binding.XmlChild;
+import com.tauterra.nettools.binding.XmlElement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,13 +25,30 @@ import java.util.List;
  *
  * @author Nicholas Folse
  */
+@XmlElement("nmaprun")
 public class NmapScanResult {
 
+    private Long start = null;
     private final List<NmapHostElement> hosts = new ArrayList<>();
 
     public NmapScanResult() {
     }
 
+    /**
+     * Return the time the scan started, in seconds since the epoch.
+     *
+     * @return The time, or null if the scan does not record it
+     */
+    public Long getStart() {
+        return start;
+    }
+
+    @XmlAttribute("start")
+    public void setStart(Long start) {
+        this.start = start;
+    }
+
+    @XmlChild
     public List<NmapHostElement> getHosts() {
         return hosts;
     }
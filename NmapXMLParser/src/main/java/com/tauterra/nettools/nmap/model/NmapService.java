@@ -15,10 +15,15 @@
  */
 package com.tauterra.nettools.nmap.model;
 
+import com.tauterra.nettools.binding.XmlAttribute;
+import com.tauterra.nettools.binding.XmlElement;
+import com.tauterra.nettools.binding.XmlReset;
+
 /**
  *
  * @author Nicholas Folse
  */
+@XmlElement("service")
 public class NmapService {
     private String extrainfo = "";
     private String product = "";
@@ -30,10 +35,24 @@ public class NmapService {
     public NmapService() {
     }
 
+    /**
+     * Restore the state of a new instance, so that a parser can reuse it.
+     */
+    @XmlReset
+    public void reset() {
+        extrainfo = "";
+        product = "";
+        method = "";
+        conf = 0;
+        name = "";
+        version = "";
+    }
+
     public String getExtrainfo() {
         return extrainfo;
     }
 
+    @XmlAttribute(value = "extrainfo", pooled = true, fields = "SERVICE_DETAILS")
     public void setExtrainfo(String extrainfo) {
         this.extrainfo = extrainfo;
     }
@@ -42,6 +61,7 @@ public class NmapService {
         return method;
     }
 
+    @XmlAttribute(value = "method", pooled = true, fields = "SERVICE_DETAILS")
     public void setMethod(String method) {
         this.method = method;
     }
@@ -50,6 +70,7 @@ public class NmapService {
         return conf;
     }
 
+    @XmlAttribute(value = "conf", fields = "SERVICE_DETAILS")
     public void setConf(Integer conf) {
         this.conf = conf;
     }
@@ -58,6 +79,7 @@ public class NmapService {
         return name;
     }
 
+    @XmlAttribute(value = "name", pooled = true, fields = "SERVICE_NAME")
     public void setName(String name) {
         this.name = name;
     }
@@ -66,6 +88,7 @@ public class NmapService {
         return version;
     }
 
+    @XmlAttribute(value = "version", pooled = true, fields = "SERVICE_DETAILS")
     public void setVersion(String version) {
         this.version = version;
     }
@@ -74,6 +97,7 @@ public class NmapService {
         return product;
     }
 
+    @XmlAttribute(value = "product", pooled = true, fields = "SERVICE_PRODUCT")
     public void setProduct(String product) {
         this.product = product;
     }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools.nmap.model;
+
+/**
+ * The port states reported in the {@code state} attribute of a port state.
+ *
+ * @author Nicholas Folse
+ */
+public enum NmapState {
+
+    OPEN("open"),
+    CLOSED("closed"),
+    FILTERED("filtered"),
+    UNFILTERED("unfiltered"),
+    OPEN_FILTERED("open|filtered"),
+    CLOSED_FILTERED("closed|filtered");
+
+    private static final NmapState[] VALUES = values();
+
+    private final String value;
+
+    private NmapState(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Return the attribute value of this state.
+     *
+     * @return
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Return the state for an attribute value.
+     *
+     * @param value
+     * @return The state, or null if the value is not a known state
+     */
+    public static NmapState fromValue(String value) {
+        for (NmapState state : VALUES) {
+            if (state.value.equals(value)) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+}
@@ -15,10 +15,14 @@
  */
 package com.tauterra.nettools.nmap.model;
 
+import com.tauterra.nettools.binding.XmlAttribute;
+import com.tauterra.nettools.binding.XmlElement;
+
 /**
  *
  * @author Nicholas Folse
  */
+@XmlElement("uptime")
 public class NmapUptime {
 
     private String lastboot;
@@ -31,6 +35,7 @@ public class NmapUptime {
         return lastboot;
     }
 
+    @XmlAttribute("lastboot")
     public void setLastboot(String lastboot) {
         this.lastboot = lastboot;
     }
@@ -39,6 +44,7 @@ public class NmapUptime {
         return seconds;
     }
 
+    @XmlAttribute("seconds")
     public void setSeconds(Long seconds) {
         this.seconds = seconds;
     }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Nicholas Folse
+ */
+public class Ipv4Test {
+
+    public Ipv4Test() {
+    }
+
+    /**
+     * Test of parse and format methods, of class Ipv4.
+     */
+    @Test
+    public void testParseFormat() {
+        System.out.println("Testing IPv4 parse and format");
+
+        assertEquals(0x7F000001L, Ipv4.parse("127.0.0.1"));
+        assertEquals(0xFFFFFFFFL, Ipv4.parse("255.255.255.255"));
+        assertEquals(0L, Ipv4.parse("0.0.0.0"));
+        assertEquals("192.168.10.254", Ipv4.format((int) Ipv4.parse("192.168.10.254")));
+        assertEquals("255.0.1.10", Ipv4.format(0xFF00010A));
+
+        String[] invalid = {null, "", "1.2.3", "1.2.3.4.5", "1.2.3.256", "01.2.3.4", "1.2.3.4 ", "1..3.4", "a.b.c.d", "1.2.3.1000", "::1"};
+        for (String text : invalid) {
+            assertEquals(text, Ipv4.INVALID, Ipv4.parse(text));
+        }
+    }
+
+    /**
+     * Test of compareAsText method, of class Ipv4.
+     */
+    @Test
+    public void testCompareAsText() {
+        System.out.println("Testing IPv4 text order");
+
+        assertTrue(Ipv4.compareAsText((int) Ipv4.parse("10.0.0.10"), (int) Ipv4.parse("10.0.0.9")) < 0);
+        assertTrue(Ipv4.compareAsText((int) Ipv4.parse("10.0.0.1"), (int) Ipv4.parse("10.0.0.10")) < 0);
+        assertTrue(Ipv4.compareAsText((int) Ipv4.parse("2.0.0.1"), (int) Ipv4.parse("10.0.0.1")) > 0);
+
+        Random random = new Random(1);
+        for (int idx = 0; idx < 100000; idx++) {
+            // small octets make shared prefixes likely
+            int a = random.nextBoolean() ? random.nextInt() : random.nextInt() & 0x1F1F1F1F;
+            int b = random.nextBoolean() ? random.nextInt() : random.nextInt() & 0x1F1F1F1F;
+            int expected = Integer.signum(Ipv4.format(a).compareTo(Ipv4.format(b)));
+            assertEquals(Ipv4.format(a) + " " + Ipv4.format(b), expected, Integer.signum(Ipv4.compareAsText(a, b)));
+        }
+    }
+
+    /**
+     * Test of sort and sortAsText methods, of class Ipv4.
+     */
+    @Test
+    public void testSort() {
+        System.out.println("Testing IPv4 radix sort");
+
+        Random random = new Random(2);
+        int[] addresses = new int[10000];
+        for (int idx = 0; idx < addresses.length; idx++) {
+            addresses[idx] = random.nextBoolean() ? random.nextInt() : random.nextInt() & 0x0A00FF1F;
+        }
+
+        int[] numeric = addresses.clone();
+        Ipv4.sort(numeric);
+        for (int idx = 1; idx < numeric.length; idx++) {
+            assertTrue(Integer.compareUnsigned(numeric[idx - 1], numeric[idx]) <= 0);
+        }
+
+        int[] text = addresses.clone();
+        Ipv4.sortAsText(text);
+        for (int idx = 1; idx < text.length; idx++) {
+            assertTrue(Ipv4.format(text[idx - 1]).compareTo(Ipv4.format(text[idx])) <= 0);
+        }
+
+        Arrays.sort(addresses);
+        Arrays.sort(numeric);
+        Arrays.sort(text);
+        assertArrayEquals(addresses, numeric);
+        assertArrayEquals(addresses, text);
+    }
+
+    /**
+     * Test of class HostIndex.
+     */
+    @Test
+    public void testHostIndex() {
+        System.out.println("Testing IPv4 host index");
+
+        HostIndex<String> index = new HostIndex<>();
+        String[] texts = {"10.0.0.9", "10.0.0.10", "0.0.0.0", "255.255.255.255", "2.0.0.1", "10.0.0.9"};
+        for (String text : texts) {
+            index.put((int) Ipv4.parse(text), text);
+        }
+        assertEquals(5, index.size());
+        assertEquals("0.0.0.0", index.get(0));
+        assertNull(index.get((int) Ipv4.parse("10.0.0.1")));
+        assertEquals("10.0.0.9", index.put((int) Ipv4.parse("10.0.0.9"), "nine"));
+        assertEquals("nine", index.get((int) Ipv4.parse("10.0.0.9")));
+
+        int[] numeric = index.sortedAddresses(false);
+        assertEquals("0.0.0.0", Ipv4.format(numeric[0]));
+        assertEquals("2.0.0.1", Ipv4.format(numeric[1]));
+        assertEquals("10.0.0.9", Ipv4.format(numeric[2]));
+        assertEquals("10.0.0.10", Ipv4.format(numeric[3]));
+        int[] text = index.sortedAddresses(true);
+        assertEquals("10.0.0.10", Ipv4.format(text[1]));
+        assertEquals("10.0.0.9", Ipv4.format(text[2]));
+        assertEquals("2.0.0.1", Ipv4.format(text[3]));
+
+        // enough addresses of one subnet to grow the table several times
+        for (int idx = 0; idx < 100000; idx++) {
+            index.put(0x0B000000 + idx, Integer.toString(idx));
+        }
+        assertEquals(100005, index.size());
+        assertEquals("65535", index.get(0x0B00FFFF));
+        assertEquals(index.size(), index.addresses().length);
+    }
+
+}
@@ -15,11 +15,36 @@
  */
 package com.tauterra.nettools;
 
+import com.tauterra.nettools.nmap.model.CompactHost;
+import com.tauterra.nettools.nmap.model.NmapAddressElement;
 import com.tauterra.nettools.nmap.model.NmapHostElement;
+import com.tauterra.nettools.nmap.model.NmapHostname;
+import com.tauterra.nettools.nmap.model.NmapOSClass;
+import com.tauterra.nettools.nmap.model.NmapOSMatch;
+import com.tauterra.nettools.nmap.model.NmapPortElement;
+import com.tauterra.nettools.nmap.model.NmapPortUsed;
+import com.tauterra.nettools.nmap.model.NmapProtocol;
+import com.tauterra.nettools.nmap.model.NmapPortState;
 import com.tauterra.nettools.nmap.model.NmapScanResult;
+import com.tauterra.nettools.nmap.model.NmapState;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -61,4 +86,607 @@ public class NmapScanResultParserTest {
 
     }
 
+    /**
+     * Test of parse method (cursor engine), of class NmapScanResultParser.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testParseStreamReader() throws Exception {
+        System.out.println("Testing Nmap Scan Result Parser (cursor engine)");
+
+        for (String resource : RESOURCES) {
+            NmapScanResult expected = parseEvents(resource);
+            NmapScanResult result = parseCursor(resource);
+            assertSameResult(expected, result);
+        }
+
+        NmapScanResult result = parseCursor("/test_scan_os.xml");
+        assertEquals(3, result.getHosts().size());
+        NmapHostElement host = result.getHosts().get(0);
+        assertEquals("Caf\u00e9 Networks", host.getAddresses().get(1).getVendor());
+        assertEquals("(CentOS) & PHP/5.4.16", host.getPorts().get(1).getService().getExtrainfo());
+        assertEquals(2, host.getOs().getOsMatches().size());
+        assertEquals("4.X", host.getOs().getOsMatches().get(0).getOsclass().getOsgen());
+    }
+
+    /**
+     * Test of parse method with a host consumer, of class NmapScanResultParser.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testParseHostConsumer() throws Exception {
+        System.out.println("Testing Nmap Scan Result Parser (host consumer)");
+
+        XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        NmapScanResultParser instance = new NmapScanResultParser();
+        for (String resource : RESOURCES) {
+            NmapScanResult expected = parseEvents(resource);
+
+            List<NmapHostElement> streamed = new ArrayList<>();
+            try (InputStream in = NmapScanResultParserTest.class.getResourceAsStream(resource)) {
+                NmapScanResult result = instance.parse(inputFactory.createXMLStreamReader(in), streamed::add);
+                assertTrue(result.getHosts().isEmpty());
+            }
+            assertSameHosts(expected.getHosts(), streamed);
+
+            List<NmapHostElement> events = new ArrayList<>();
+            try (InputStream in = NmapScanResultParserTest.class.getResourceAsStream(resource)) {
+                NmapScanResult result = instance.parse(inputFactory.createXMLEventReader(in), events::add);
+                assertTrue(result.getHosts().isEmpty());
+            }
+            assertSameHosts(expected.getHosts(), events);
+        }
+    }
+
+    /**
+     * Test of hosts method, of class NmapScanResultParser.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testHosts() throws Exception {
+        System.out.println("Testing Nmap Scan Result Parser (host stream)");
+
+        NmapScanResultParser instance = new NmapScanResultParser();
+        for (String resource : RESOURCES) {
+            NmapScanResult expected = parseEvents(resource);
+            try (Stream<NmapHostElement> hosts = instance.hosts(resourcePath(resource))) {
+                assertSameHosts(expected.getHosts(), hosts.collect(Collectors.toList()));
+            }
+        }
+
+        try (Stream<NmapHostElement> hosts = instance.hosts(resourcePath("/test_scan_os.xml"))) {
+            Optional<NmapHostElement> host = hosts
+                    .filter(h -> h.getPorts().size() == 1)
+                    .findFirst();
+            assertTrue(host.isPresent());
+            assertEquals("10.0.0.10", host.get().getAddresses().get(0).getAddr());
+        }
+    }
+
+    /**
+     * Test of transientHosts method, of class NmapScanResultParser.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testTransientHosts() throws Exception {
+        System.out.println("Testing Nmap Scan Result Parser (transient host stream)");
+
+        NmapScanResultParser instance = new NmapScanResultParser();
+        for (String resource : RESOURCES) {
+            List<NmapHostElement> expected = parseEvents(resource).getHosts();
+            List<NmapHostElement> seen = new ArrayList<>();
+            try (Stream<NmapHostElement> hosts = instance.transientHosts(resourcePath(resource))) {
+                // each host is only valid until the next one is parsed
+                hosts.forEach(host -> {
+                    assertSameHost(expected.get(seen.size()), host);
+                    seen.add(host);
+                });
+            }
+            assertEquals(expected.size(), seen.size());
+            for (NmapHostElement host : seen) {
+                assertSame(seen.get(0), host);
+            }
+        }
+    }
+
+    /**
+     * Test of ReadAheadInputStream, as an input of transientHosts.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReadAhead() throws Exception {
+        System.out.println("Testing Nmap Scan Result Parser (read-ahead input)");
+
+        NmapScanResultParser instance = new NmapScanResultParser();
+        for (String resource : RESOURCES) {
+            Path file = resourcePath(resource);
+            byte[] expected = Files.readAllBytes(file);
+            // buffers much smaller than the file, and reads of odd sizes
+            try (InputStream in = ReadAheadInputStream.open(file, 100)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[77];
+                for (int count = 0; count >= 0; count = in.read(buffer, 0, 1 + out.size() % buffer.length)) {
+                    out.write(buffer, 0, count);
+                    int b = in.read();
+                    if (b < 0) {
+                        break;
+                    }
+                    out.write(b);
+                }
+                assertArrayEquals(expected, out.toByteArray());
+                assertEquals(-1, in.read());
+            }
+
+            List<NmapHostElement> hosts = parseEvents(resource).getHosts();
+            int[] count = {0};
+            try (Stream<NmapHostElement> stream = instance.transientHosts(ReadAheadInputStream.open(file))) {
+                stream.forEach(host -> assertSameHost(hosts.get(count[0]++), host));
+            }
+            assertEquals(hosts.size(), count[0]);
+        }
+    }
+
+    /**
+     * Test of parseParallel method, of class NmapScanResultParser.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testParseParallel() throws Exception {
+        System.out.println("Testing Nmap Scan Result Parser (parallel)");
+
+        NmapScanResultParser instance = new NmapScanResultParser();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String resource : RESOURCES) {
+                NmapScanResult expected = parseEvents(resource);
+                // a tiny chunk size forces one chunk per host
+                assertSameResult(expected, instance.parseParallel(resourcePath(resource), pool, 1));
+                assertSameResult(expected, instance.parseParallel(resourcePath(resource), pool));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test of parse method, of class NmapMappedFileParser.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testParseMapped() throws Exception {
+        System.out.println("Testing Nmap Mapped File Parser");
+
+        for (String resource : RESOURCES) {
+            NmapScanResult expected = parseEvents(resource);
+            assertSameResult(expected, new NmapMappedFileParser().parse(resourcePath(resource)));
+            // small windows force the file to be remapped while parsing
+            assertSameResult(expected, new NmapMappedFileParser(1024, 512, null).parse(resourcePath(resource)));
+
+            List<NmapHostElement> streamed = new ArrayList<>();
+            NmapScanResult result = new NmapMappedFileParser().parse(resourcePath(resource), streamed::add);
+            assertTrue(result.getHosts().isEmpty());
+            assertSameHosts(expected.getHosts(), streamed);
+        }
+    }
+
+    /**
+     * Test of parse method with an event reader that is already on the root
+     * element, of class NmapScanResultParser.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testParseEventReaderPosition() throws Exception {
+        System.out.println("Testing Nmap Scan Result Parser (event reader position)");
+
+        XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        NmapScanResultParser instance = new NmapScanResultParser();
+        for (String resource : RESOURCES) {
+            NmapScanResult expected = parseCursor(resource);
+            try (InputStream in = NmapScanResultParserTest.class.getResourceAsStream(resource)) {
+                XMLEventReader eventReader = inputFactory.createXMLEventReader(in);
+                while (!eventReader.peek().isStartElement()) {
+                    eventReader.nextEvent();
+                }
+                assertSameResult(expected, instance.parse(eventReader));
+                // the root element has been consumed
+                while (eventReader.hasNext()) {
+                    assertFalse(eventReader.nextEvent().isStartElement());
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of parsing only some fields of the hosts.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testProjection() throws Exception {
+        System.out.println("Testing Nmap Scan Result Parser (projection)");
+
+        XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        NmapScanResult full;
+        NmapScanResult projected;
+        try (InputStream in = NmapScanResultParserTest.class.getResourceAsStream("/test_scan.xml")) {
+            full = new NmapScanResultParser().parse(inputFactory.createXMLStreamReader(in));
+        }
+        try (InputStream in = NmapScanResultParserTest.class.getResourceAsStream("/test_scan.xml")) {
+            projected = new NmapScanResultParser(new StringPool(), EnumSet.of(NmapField.ADDRESS, NmapField.STATE))
+                    .parse(inputFactory.createXMLStreamReader(in));
+        }
+        assertEquals(full.getHosts().size(), projected.getHosts().size());
+        for (int idx = 0; idx < full.getHosts().size(); idx++) {
+            NmapHostElement expected = full.getHosts().get(idx);
+            NmapHostElement host = projected.getHosts().get(idx);
+            assertNull(host.getOs());
+            assertTrue(host.getHostnames().isEmpty());
+            assertEquals(expected.getAddresses().size(), host.getAddresses().size());
+            assertEquals(expected.getAddresses().get(0).getAddr(), host.getAddresses().get(0).getAddr());
+            assertEquals(expected.getPorts().size(), host.getPorts().size());
+            for (int port = 0; port < host.getPorts().size(); port++) {
+                NmapPortElement expectedPort = expected.getPorts().get(port);
+                NmapPortElement actualPort = host.getPorts().get(port);
+                assertEquals(expectedPort.getPortid(), actualPort.getPortid());
+                assertEquals(expectedPort.getProtocol(), actualPort.getProtocol());
+                assertEquals(expectedPort.getState().getState(), actualPort.getState().getState());
+                assertEquals("", actualPort.getService().getName());
+            }
+        }
+    }
+
+    /**
+     * Test that repeated attribute values share one instance.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testStringPool() throws Exception {
+        System.out.println("Testing Nmap Scan Result Parser (string pool)");
+
+        XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        NmapScanResult pooled;
+        NmapScanResult unpooled;
+        try (InputStream in = NmapScanResultParserTest.class.getResourceAsStream("/test_scan.xml")) {
+            pooled = new NmapScanResultParser().parse(inputFactory.createXMLStreamReader(in));
+        }
+        try (InputStream in = NmapScanResultParserTest.class.getResourceAsStream("/test_scan.xml")) {
+            unpooled = new NmapScanResultParser(null).parse(inputFactory.createXMLStreamReader(in));
+        }
+        assertSameResult(unpooled, pooled);
+        List<NmapPortElement> ports = pooled.getHosts().get(0).getPorts();
+        assertSame(ports.get(0).getProtocol(), ports.get(1).getProtocol());
+        assertSame(ports.get(0).getState().getState(), ports.get(1).getState().getState());
+        ports = unpooled.getHosts().get(0).getPorts();
+        assertNotSame(ports.get(0).getProtocol(), ports.get(1).getProtocol());
+
+        ports = new NmapMappedFileParser().parse(resourcePath("/test_scan.xml")).getHosts().get(0).getPorts();
+        assertSame(ports.get(0).getProtocol(), ports.get(1).getProtocol());
+        assertSame(ports.get(0).getState().getReason(), ports.get(1).getState().getReason());
+
+        StringPool pool = new StringPool(1);
+        String open = pool.intern(new String("open"));
+        assertSame(open, pool.intern(new String("open")));
+        assertSame(open, pool.intern("open".toCharArray(), 0, 4));
+        // a colliding value replaces the pooled one
+        String closed = pool.intern(new String("closed"));
+        assertNotSame(open, pool.intern(new String("open")));
+        assertEquals("closed", closed);
+    }
+
+    /**
+     * Test of the scan and host times.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testTimes() throws Exception {
+        System.out.println("Testing scan and host times");
+
+        NmapScanResult result = parseEvents("/test_scan.xml");
+        assertEquals(Long.valueOf(1523746923L), result.getStart());
+        // a host without a starttime takes the start of the scan
+        assertEquals(Long.valueOf(1523746923L), result.getHosts().get(0).getStarttime());
+        assertNull(result.getHosts().get(0).getEndtime());
+
+        result = parseEvents("/test_scan_os.xml");
+        assertEquals(Long.valueOf(1523805164L), result.getStart());
+        assertEquals(Long.valueOf(1523805170L), result.getHosts().get(0).getStarttime());
+        assertEquals(Long.valueOf(1523805201L), result.getHosts().get(0).getEndtime());
+        assertEquals(1523805170L, CompactHost.of(result.getHosts().get(0)).getStarttime());
+
+        try (Stream<NmapHostElement> hosts = new NmapScanResultParser().transientHosts(resourcePath("/test_scan.xml"))) {
+            assertEquals(Long.valueOf(1523746923L), hosts.findFirst().get().getStarttime());
+        }
+        NmapScanResult projected = new NmapScanResultParser(new StringPool(), EnumSet.of(NmapField.ADDRESS))
+                .parse(XMLInputFactory.newFactory().createXMLStreamReader(
+                        NmapScanResultParserTest.class.getResourceAsStream("/test_scan_os.xml")));
+        assertEquals(Long.valueOf(1523805164L), projected.getStart());
+        assertNull(projected.getHosts().get(0).getStarttime());
+    }
+
+    /**
+     * Test of of method, of class CompactHost.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCompactHost() throws Exception {
+        System.out.println("Testing compact hosts");
+
+        for (String resource : RESOURCES) {
+            for (NmapHostElement host : parseEvents(resource).getHosts()) {
+                CompactHost compact = CompactHost.of(host);
+                List<String> ipv4 = host.getAddresses().stream()
+                        .filter(addr -> "ipv4".equals(addr.getAddrtype()))
+                        .map(NmapAddressElement::getAddr)
+                        .collect(Collectors.toList());
+                assertEquals(ipv4.size(), compact.getIpv4AddressCount());
+                for (int idx = 0; idx < ipv4.size(); idx++) {
+                    assertEquals(ipv4.get(idx), Ipv4.format(compact.getIpv4Address(idx)));
+                }
+                assertEquals(host.getHostnames().size(), compact.getHostnameCount());
+                for (int idx = 0; idx < host.getHostnames().size(); idx++) {
+                    assertEquals(host.getHostnames().get(idx).getName(), compact.getHostname(idx));
+                }
+                assertEquals(host.getPorts().size(), compact.getPortCount());
+                for (int idx = 0; idx < host.getPorts().size(); idx++) {
+                    NmapPortElement port = host.getPorts().get(idx);
+                    assertEquals((long) port.getPortid(), compact.getPortid(idx));
+                    assertEquals(port.getProtocol(), compact.getProtocol(idx));
+                    assertEquals(port.getState().getState(), compact.getState(idx));
+                    assertEquals(port.getService().getName(), compact.getServiceName(idx));
+                    assertEquals(port.getService().getProduct(), compact.getServiceProduct(idx));
+                    assertEquals((long) port.getService().getConf(), compact.getServiceConf(idx));
+                }
+            }
+        }
+
+        NmapHostElement host = new NmapHostElement();
+        NmapPortElement port = new NmapPortElement();
+        port.setProtocol("udplite");
+        port.setPortid(65535);
+        port.setState(new NmapPortState());
+        port.getState().setState("open|filtered");
+        host.getPorts().add(port);
+        CompactHost compact = CompactHost.of(host);
+        assertEquals("udplite", compact.getProtocol(0));
+        assertNull(compact.getProtocolCode(0));
+        assertEquals(NmapState.OPEN_FILTERED, compact.getStateCode(0));
+        assertEquals(65535, compact.getPortid(0));
+        // a missing service reads as the defaults of NmapService
+        assertEquals(0, compact.getServiceConf(0));
+        assertEquals("", compact.getServiceName(0));
+
+        // a state that is not parsed reads as the default of NmapPortState,
+        // without keeping the values of the port as text
+        NmapScanResultParser parser = new NmapScanResultParser(new StringPool(), EnumSet.of(NmapField.ADDRESS, NmapField.PORT));
+        for (String resource : RESOURCES) {
+            List<NmapHostElement> full = parseEvents(resource).getHosts();
+            List<NmapHostElement> hosts = parser.parse(XMLInputFactory.newFactory().createXMLStreamReader(
+                    NmapScanResultParserTest.class.getResourceAsStream(resource))).getHosts();
+            for (int idx = 0; idx < hosts.size(); idx++) {
+                CompactHost expected = CompactHost.of(full.get(idx));
+                compact = CompactHost.of(hosts.get(idx));
+                for (int portIdx = 0; portIdx < compact.getPortCount(); portIdx++) {
+                    assertEquals("", compact.getState(portIdx));
+                    assertNull(compact.getStateCode(portIdx));
+                    assertEquals(expected.getProtocol(portIdx), compact.getProtocol(portIdx));
+                }
+                // only the service fields differ from the full host
+                assertTrue(compact.estimateSize() <= expected.estimateSize());
+            }
+        }
+        port.setProtocol("");
+        port.getState().setState("");
+        compact = CompactHost.of(host);
+        assertEquals("", compact.getProtocol(0));
+        assertEquals("", compact.getState(0));
+        compact = CompactHost.withPorts(compact, compact, new int[]{0, ~0});
+        assertEquals("", compact.getProtocol(1));
+        assertEquals("", compact.getState(1));
+    }
+
+    /**
+     * Test of write and read methods, of class CompactHost.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCompactHostBinary() throws Exception {
+        System.out.println("Testing compact host binary form");
+
+        List<CompactHost> hosts = new ArrayList<>();
+        for (String resource : RESOURCES) {
+            parseEvents(resource).getHosts().forEach(host -> hosts.add(CompactHost.of(host)));
+        }
+        NmapHostElement other = new NmapHostElement();
+        NmapPortElement port = new NmapPortElement();
+        port.setProtocol("udplite");
+        port.setPortid(65535);
+        port.setState(new NmapPortState());
+        port.getState().setState("unknown");
+        other.getPorts().add(port);
+        hosts.add(CompactHost.of(other));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (CompactHost host : hosts) {
+                host.write(out);
+            }
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (CompactHost expected : hosts) {
+            CompactHost host = CompactHost.read(in);
+            assertEquals(expected.estimateSize(), host.estimateSize());
+            assertEquals(expected.getStarttime(), host.getStarttime());
+            assertEquals(expected.getIpv4AddressCount(), host.getIpv4AddressCount());
+            for (int idx = 0; idx < expected.getIpv4AddressCount(); idx++) {
+                assertEquals(expected.getIpv4Address(idx), host.getIpv4Address(idx));
+            }
+            assertEquals(expected.getHostnameCount(), host.getHostnameCount());
+            for (int idx = 0; idx < expected.getHostnameCount(); idx++) {
+                assertEquals(expected.getHostname(idx), host.getHostname(idx));
+            }
+            assertEquals(expected.getPortCount(), host.getPortCount());
+            for (int idx = 0; idx < expected.getPortCount(); idx++) {
+                assertEquals(expected.getPortid(idx), host.getPortid(idx));
+                assertEquals(expected.getProtocol(idx), host.getProtocol(idx));
+                assertEquals(expected.getState(idx), host.getState(idx));
+                assertEquals(expected.getServiceConf(idx), host.getServiceConf(idx));
+                assertEquals(expected.getServiceName(idx), host.getServiceName(idx));
+                assertEquals(expected.getServiceProduct(idx), host.getServiceProduct(idx));
+            }
+        }
+        assertEquals(-1, in.read());
+    }
+
+    /**
+     * Test of parsePorts method, of class NmapMappedFileParser.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testPortTable() throws Exception {
+        System.out.println("Testing port table");
+
+        PortTable expected = new PortTable(1);
+        PortTable table = new PortTable(1);
+        for (String resource : RESOURCES) {
+            parseEvents(resource).getHosts().forEach(host -> expected.add(CompactHost.of(host)));
+            new NmapMappedFileParser().parsePorts(resourcePath(resource), table);
+        }
+        assertEquals(8, table.size());
+        assertEquals(expected.size(), table.size());
+        for (int row = 0; row < table.size(); row++) {
+            assertEquals(expected.getIp(row), table.getIp(row));
+            assertEquals(expected.getPort(row), table.getPort(row));
+            assertEquals(expected.getProtocol(row), table.getProtocol(row));
+            assertEquals(expected.getState(row), table.getState(row));
+            assertEquals(expected.getService(row), table.getService(row));
+            assertEquals(expected.getProduct(row), table.getProduct(row));
+        }
+
+        long[] states = table.countBy(PortTable.Column.STATE, row -> true);
+        assertEquals(7, states[NmapState.OPEN.ordinal() + 1]);
+        assertEquals(1, states[NmapState.OPEN_FILTERED.ordinal() + 1]);
+        long[] tcpPorts = table.countBy(PortTable.Column.PORT, row -> table.getProtocol(row) == NmapProtocol.TCP);
+        assertEquals(2, tcpPorts[135]);
+        assertEquals(0, tcpPorts[161]);
+
+        int[] localhost = table.select(row -> Ipv4.format(table.getIp(row)).equals("127.0.0.1"));
+        assertEquals(3, localhost.length);
+        assertEquals("msrpc", table.getService(localhost[0]));
+        assertEquals(5357, table.getPort(localhost[2]));
+    }
+
+    static Path resourcePath(String resource) throws Exception {
+        return Paths.get(NmapScanResultParserTest.class.getResource(resource).toURI());
+    }
+
+    static final String[] RESOURCES = {"/test_scan.xml", "/test_scan_os.xml"};
+
+    static NmapScanResult parseEvents(String resource) throws Exception {
+        XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        try (InputStream in = NmapScanResultParserTest.class.getResourceAsStream(resource)) {
+            XMLEventReader eventReader = inputFactory.createXMLEventReader(in);
+            return new NmapScanResultParser().parse(eventReader);
+        }
+    }
+
+    static NmapScanResult parseCursor(String resource) throws Exception {
+        XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        try (InputStream in = NmapScanResultParserTest.class.getResourceAsStream(resource)) {
+            XMLStreamReader streamReader = inputFactory.createXMLStreamReader(in);
+            return new NmapScanResultParser().parse(streamReader);
+        }
+    }
+
+    static void assertSameResult(NmapScanResult expected, NmapScanResult actual) {
+        assertEquals(expected.getStart(), actual.getStart());
+        assertSameHosts(expected.getHosts(), actual.getHosts());
+    }
+
+    static void assertSameHosts(List<NmapHostElement> expected, List<NmapHostElement> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int idx = 0; idx < expected.size(); idx++) {
+            assertSameHost(expected.get(idx), actual.get(idx));
+        }
+    }
+
+    static void assertSameHost(NmapHostElement expected, NmapHostElement actual) {
+        assertEquals(expected.getComment(), actual.getComment());
+        assertEquals(expected.getStarttime(), actual.getStarttime());
+        assertEquals(expected.getEndtime(), actual.getEndtime());
+        assertEquals(expected.getAddresses().size(), actual.getAddresses().size());
+        for (int idx = 0; idx < expected.getAddresses().size(); idx++) {
+            NmapAddressElement e = expected.getAddresses().get(idx);
+            NmapAddressElement a = actual.getAddresses().get(idx);
+            assertEquals(e.getAddr(), a.getAddr());
+            assertEquals(e.getAddrtype(), a.getAddrtype());
+            assertEquals(e.getVendor(), a.getVendor());
+        }
+        assertEquals(expected.getHostnames().size(), actual.getHostnames().size());
+        for (int idx = 0; idx < expected.getHostnames().size(); idx++) {
+            NmapHostname e = expected.getHostnames().get(idx);
+            NmapHostname a = actual.getHostnames().get(idx);
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getType(), a.getType());
+        }
+        assertEquals(expected.getPorts().size(), actual.getPorts().size());
+        for (int idx = 0; idx < expected.getPorts().size(); idx++) {
+            NmapPortElement e = expected.getPorts().get(idx);
+            NmapPortElement a = actual.getPorts().get(idx);
+            assertEquals(e.getProtocol(), a.getProtocol());
+            assertEquals(e.getPortid(), a.getPortid());
+            assertEquals(e.getState().getState(), a.getState().getState());
+            assertEquals(e.getState().getReason(), a.getState().getReason());
+            assertEquals(e.getState().getReason_ttl(), a.getState().getReason_ttl());
+            assertEquals(e.getService().getName(), a.getService().getName());
+            assertEquals(e.getService().getProduct(), a.getService().getProduct());
+            assertEquals(e.getService().getVersion(), a.getService().getVersion());
+            assertEquals(e.getService().getExtrainfo(), a.getService().getExtrainfo());
+            assertEquals(e.getService().getMethod(), a.getService().getMethod());
+            assertEquals(e.getService().getConf(), a.getService().getConf());
+        }
+        assertEquals(expected.getOs() == null, actual.getOs() == null);
+        if (expected.getOs() != null) {
+            List<NmapPortUsed> ePortsUsed = expected.getOs().getPortsUsed();
+            List<NmapPortUsed> aPortsUsed = actual.getOs().getPortsUsed();
+            assertEquals(ePortsUsed.size(), aPortsUsed.size());
+            for (int idx = 0; idx < ePortsUsed.size(); idx++) {
+                assertEquals(ePortsUsed.get(idx).getState(), aPortsUsed.get(idx).getState());
+                assertEquals(ePortsUsed.get(idx).getProto(), aPortsUsed.get(idx).getProto());
+                assertEquals(ePortsUsed.get(idx).getPortID(), aPortsUsed.get(idx).getPortID());
+            }
+            List<NmapOSMatch> eMatches = expected.getOs().getOsMatches();
+            List<NmapOSMatch> aMatches = actual.getOs().getOsMatches();
+            assertEquals(eMatches.size(), aMatches.size());
+            for (int idx = 0; idx < eMatches.size(); idx++) {
+                assertEquals(eMatches.get(idx).getName(), aMatches.get(idx).getName());
+                assertEquals(eMatches.get(idx).getLine(), aMatches.get(idx).getLine());
+                assertEquals(eMatches.get(idx).getAccuracy(), aMatches.get(idx).getAccuracy());
+                NmapOSClass e = eMatches.get(idx).getOsclass();
+                NmapOSClass a = aMatches.get(idx).getOsclass();
+                assertEquals(e == null, a == null);
+                if (e != null) {
+                    assertEquals(e.getType(), a.getType());
+                    assertEquals(e.getVendor(), a.getVendor());
+                    assertEquals(e.getOsfamily(), a.getOsfamily());
+                    assertEquals(e.getOsgen(), a.getOsgen());
+                    assertEquals(e.getAccuracy(), a.getAccuracy());
+                }
+            }
+        }
+        assertEquals(expected.getUptime() == null, actual.getUptime() == null);
+    }
+
 }
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Nicholas Folse
+ */
+public class StAXObjectBuilderTest {
+
+    private static final String DOCUMENT
+            = "<catalog>"
+            + "<title>Parts</title>"
+            + "<item name=\"a\" size=\"1\"><item name=\"b\"/><note>first</note></item>"
+            + "<unknown><nested/></unknown>"
+            + "<item name=\"c\"><![CDATA[text]]></item>"
+            + "</catalog>";
+
+    public StAXObjectBuilderTest() {
+    }
+
+    static class Item {
+
+        String name;
+        String size;
+        String text;
+        final List<Item> items = new ArrayList<>();
+        final List<String> notes = new ArrayList<>();
+
+        @Override
+        public String toString() {
+            return name + "/" + size + "/" + text + items + notes;
+        }
+    }
+
+    static class Catalog {
+
+        String title;
+        final List<Item> items = new ArrayList<>();
+
+        @Override
+        public String toString() {
+            return title + items;
+        }
+    }
+
+    static StAXObjectBuilder<Item> itemBuilder() {
+        StAXObjectBuilder<Item> itemBuilder = new StAXObjectBuilder<>("item", Item::new);
+        itemBuilder.addAttributeHandler("name", (obj, val) -> obj.name = val);
+        itemBuilder.addAttributeHandler("size", (obj, val) -> obj.size = val);
+        itemBuilder.addHandler("note", (obj, val) -> obj.notes.add(val));
+        itemBuilder.addHandler(itemBuilder, (obj, val) -> obj.items.add(val));
+        itemBuilder.setCharacterDataHandler((obj, val) -> obj.text = val);
+        return itemBuilder;
+    }
+
+    static StAXObjectBuilder<Catalog> catalogBuilder(StAXObjectBuilder<Item> itemBuilder) {
+        StAXObjectBuilder<Catalog> catalogBuilder = new StAXObjectBuilder<>("catalog", Catalog::new);
+        catalogBuilder.addHandler("title", (obj, val) -> obj.title = val);
+        catalogBuilder.addHandler(itemBuilder, (obj, val) -> obj.items.add(val));
+        return catalogBuilder;
+    }
+
+    static XMLStreamReader reader(String document) throws XMLStreamException {
+        return XMLInputFactory.newFactory().createXMLStreamReader(new StringReader(document));
+    }
+
+    /**
+     * Test of compile method, of class StAXObjectBuilder.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCompile() throws Exception {
+        System.out.println("Testing compiled object builder");
+
+        StAXObjectBuilder<Catalog> builder = catalogBuilder(itemBuilder());
+        List<String> missing = new ArrayList<>();
+        builder.setMissingElementHandler(element -> missing.add(element.getName().getLocalPart()));
+        Catalog expected = builder.parseDocument(reader(DOCUMENT));
+        List<String> expectedMissing = new ArrayList<>(missing);
+        missing.clear();
+
+        Catalog result = builder.compile().parseDocument(reader(DOCUMENT));
+        assertEquals("Parts", result.title);
+        assertEquals(2, result.items.size());
+        assertEquals("b", result.items.get(0).items.get(0).name);
+        assertEquals("text", result.items.get(1).text);
+        assertEquals(expected.toString(), result.toString());
+        assertEquals(expectedMissing, missing);
+        assertEquals(2, missing.size());
+    }
+
+    /**
+     * Test of ignore method, of class StAXObjectBuilder.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testIgnore() throws Exception {
+        System.out.println("Testing ignored elements");
+
+        StAXObjectBuilder<Catalog> builder = catalogBuilder(itemBuilder());
+        List<String> missing = new ArrayList<>();
+        builder.setMissingElementHandler(element -> missing.add(element.getName().getLocalPart()));
+        builder.ignore("unknown");
+        // a registered handler takes precedence
+        builder.ignore("title");
+
+        Catalog result = builder.parseDocument(reader(DOCUMENT));
+        assertEquals("Parts", result.title);
+        assertEquals(2, result.items.size());
+        assertTrue(missing.isEmpty());
+
+        result = builder.compile().parseDocument(reader(DOCUMENT));
+        assertEquals("Parts", result.title);
+        assertEquals("text", result.items.get(1).text);
+        assertTrue(missing.isEmpty());
+
+        result = builder.parseDocument(XMLInputFactory.newFactory().createXMLEventReader(new StringReader(DOCUMENT)));
+        assertEquals(2, result.items.size());
+        assertTrue(missing.isEmpty());
+    }
+
+    /**
+     * Test of addIntAttributeHandler and addLongAttributeHandler methods, of
+     * class StAXObjectBuilder.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testNumericAttributeHandlers() throws Exception {
+        System.out.println("Testing numeric attribute handlers");
+
+        StAXObjectBuilder<List<Long>> builder = new StAXObjectBuilder<>("n", ArrayList::new);
+        builder.addIntAttributeHandler("i", (obj, val) -> obj.add((long) val), -1);
+        builder.addLongAttributeHandler("l", (obj, val) -> obj.add(val), -1L);
+
+        assertEquals("[42, 9000000000]", builder.parseDocument(reader("<n i=\"42\" l=\"9000000000\"/>")).toString());
+        assertEquals("[-1, -1]", builder.parseDocument(reader("<n i=\"9000000000\" l=\"x1\"/>")).toString());
+        assertEquals("[-7, -1]", builder.compile().parseDocument(reader("<n i=\"-7\" l=\"\"/>")).toString());
+    }
+
+    /**
+     * Test of addReducingHandler method, of class StAXObjectBuilder.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReducingHandler() throws Exception {
+        System.out.println("Testing reducing handlers");
+
+        StAXObjectBuilder<Item> itemBuilder = itemBuilder();
+        StAXObjectBuilder<Catalog> builder = new StAXObjectBuilder<>("catalog", Catalog::new);
+        // keep the item names instead of the items, and count them
+        builder.addReducingHandler(itemBuilder, "",
+                (names, item) -> names + item.name,
+                (obj, names) -> obj.title = names);
+        builder.addReducingHandler(new StAXObjectBuilder<>("unknown", Item::new), 0,
+                (count, item) -> count + 1,
+                (obj, count) -> obj.items.add(new Item()));
+
+        Catalog result = builder.parseDocument(reader(DOCUMENT));
+        assertEquals("ac", result.title);
+        assertEquals(1, result.items.size());
+        result = builder.compile().parseDocument(reader(DOCUMENT));
+        assertEquals("ac", result.title);
+        assertEquals(1, result.items.size());
+        result = builder.parseDocument(XMLInputFactory.newFactory().createXMLEventReader(new StringReader(DOCUMENT)));
+        assertEquals("ac", result.title);
+
+        // the finisher receives the identity if there are no nested objects
+        result = builder.compile().parseDocument(reader("<catalog/>"));
+        assertEquals("", result.title);
+
+        // a plain handler replaces a reducing one
+        builder.addHandler(itemBuilder, (obj, val) -> obj.items.add(val));
+        result = builder.compile().parseDocument(reader(DOCUMENT));
+        assertNull(result.title);
+        assertEquals(3, result.items.size());
+    }
+
+    /**
+     * Test that a compiled builder does not see later changes to its source.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCompileSnapshot() throws Exception {
+        System.out.println("Testing compiled object builder snapshot");
+
+        StAXObjectBuilder<Item> itemBuilder = itemBuilder();
+        StAXObjectBuilder<Catalog> builder = catalogBuilder(itemBuilder);
+        CompiledObjectBuilder<Catalog> compiled = builder.compile();
+        itemBuilder.addAttributeHandler("name", (obj, val) -> obj.name = "changed");
+
+        assertEquals("a", compiled.parseDocument(reader(DOCUMENT)).items.get(0).name);
+        assertEquals("changed", builder.parseDocument(reader(DOCUMENT)).items.get(0).name);
+    }
+
+    /**
+     * Test of stream and emitting parseDocument methods, of class
+     * CompiledObjectBuilder.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCompileStreaming() throws Exception {
+        System.out.println("Testing compiled object builder streaming");
+
+        StAXObjectBuilder<Item> itemBuilder = itemBuilder();
+        CompiledObjectBuilder<Catalog> compiled = catalogBuilder(itemBuilder).compile();
+
+        List<Item> emitted = new ArrayList<>();
+        Catalog result = compiled.parseDocument(reader(DOCUMENT), itemBuilder, emitted::add);
+        assertTrue(result.items.isEmpty());
+        // nested items are emitted too, each before its parent
+        assertEquals(3, emitted.size());
+        assertEquals("b", emitted.get(0).name);
+        assertEquals("a", emitted.get(1).name);
+
+        assertEquals(2, itemBuilder.compile().stream(reader(DOCUMENT)).count());
+    }
+
+    /**
+     * Test that reusable builders recycle the objects below emitted elements,
+     * and not the objects kept by the rest of the tree.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCompileReusable() throws Exception {
+        System.out.println("Testing compiled object builder reuse");
+
+        StAXObjectBuilder<Item> partBuilder = new StAXObjectBuilder<>("part", Item::new);
+        partBuilder.addAttributeHandler("name", (obj, val) -> obj.name = val);
+        partBuilder.setReusable(obj -> obj.name = null);
+        StAXObjectBuilder<Item> itemBuilder = new StAXObjectBuilder<>("item", Item::new);
+        itemBuilder.addAttributeHandler("name", (obj, val) -> obj.name = val);
+        itemBuilder.addHandler(partBuilder, (obj, val) -> obj.items.add(val));
+        itemBuilder.setReusable(obj -> {
+            obj.name = null;
+            obj.items.clear();
+        });
+        StAXObjectBuilder<Catalog> builder = new StAXObjectBuilder<>("catalog", Catalog::new);
+        builder.addHandler(itemBuilder, (obj, val) -> obj.items.add(val));
+        builder.addHandler(partBuilder, (obj, val) -> obj.items.add(val));
+
+        String document = "<catalog><part name=\"x\"/>"
+                + "<item name=\"a\"><part name=\"p\"/></item>"
+                + "<item name=\"b\"><part name=\"q\"/></item>"
+                + "<part name=\"y\"/></catalog>";
+        List<Item> emitted = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        Catalog result = builder.compile().parseDocument(reader(document), itemBuilder, item -> {
+            emitted.add(item);
+            names.add(item.toString());
+        });
+        assertEquals("[a/null/null[p/null/null[][]][], b/null/null[q/null/null[][]][]]", names.toString());
+        assertSame(emitted.get(0), emitted.get(1));
+        // parts also occur outside the emitted items, and are never recycled
+        assertEquals("null[x/null/null[][], y/null/null[][]]", result.toString());
+        assertNotSame(result.items.get(0), result.items.get(1));
+    }
+
+    /**
+     * Test that a compiled builder can be shared between threads.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCompileShared() throws Exception {
+        System.out.println("Testing compiled object builder on several threads");
+
+        CompiledObjectBuilder<Catalog> compiled = catalogBuilder(itemBuilder()).compile();
+        String expected = compiled.parseDocument(reader(DOCUMENT)).toString();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int idx = 0; idx < 16; idx++) {
+                results.add(executor.submit(() -> compiled.parseDocument(reader(DOCUMENT)).toString()));
+            }
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
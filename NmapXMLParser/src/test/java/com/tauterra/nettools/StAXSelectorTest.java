@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools;
+
+import com.tauterra.nettools.nmap.model.NmapHostElement;
+import com.tauterra.nettools.nmap.model.NmapPortElement;
+import com.tauterra.nettools.nmap.model.NmapScanResult;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Nicholas Folse
+ */
+public class StAXSelectorTest {
+
+    private static final String DOCUMENT
+            = "<catalog id=\"1\">"
+            + "<item name=\"a\"><size>1</size><tag kind=\"x\"/></item>"
+            + "<item name=\"b\"><size>2</size><tag kind=\"y\"/></item>"
+            + "<item name=\"c\"><size>3<sub>ignored</sub></size></item>"
+            + "</catalog>";
+
+    public StAXSelectorTest() {
+    }
+
+    /**
+     * Test of select method, of class StAXSelector, against the parsed model.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testSelectScan() throws Exception {
+        System.out.println("Testing selectors on a scan");
+
+        XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        NmapScanResult result;
+        try (InputStream in = StAXSelectorTest.class.getResourceAsStream("/test_scan_os.xml")) {
+            result = new NmapScanResultParser().parse(inputFactory.createXMLStreamReader(in));
+        }
+        List<String> addresses = new ArrayList<>();
+        List<String> openPorts = new ArrayList<>();
+        for (NmapHostElement host : result.getHosts()) {
+            host.getAddresses().forEach(address -> addresses.add(address.getAddr()));
+            for (NmapPortElement port : host.getPorts()) {
+                if ("open".equals(port.getState().getState())) {
+                    openPorts.add(port.getPortid().toString());
+                }
+            }
+        }
+
+        StAXSelector selector = StAXSelector.compile(
+                "host/address/@addr",
+                "host/ports/port[state/@state='open']/@portid");
+        List<List<String>> values;
+        try (InputStream in = StAXSelectorTest.class.getResourceAsStream("/test_scan_os.xml")) {
+            values = selector.selectAll(inputFactory.createXMLStreamReader(in));
+        }
+        assertEquals(addresses, values.get(0));
+        assertEquals(openPorts, values.get(1));
+        assertFalse(openPorts.isEmpty());
+    }
+
+    /**
+     * Test of the selector syntax.
+     *
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testSelectSyntax() throws Exception {
+        System.out.println("Testing selector syntax");
+
+        assertEquals(Arrays.asList("a", "b", "c"), select("item/@name"));
+        assertEquals(Arrays.asList("1", "2", "3"), select("item/size"));
+        assertEquals(Arrays.asList("1"), select("/catalog/@id"));
+        assertEquals(Arrays.asList(), select("/item/@name"));
+        assertEquals(Arrays.asList("x", "y"), select("*/*/@kind"));
+        assertEquals(Arrays.asList("b"), select("item[@name='b']/@name"));
+        // the predicate is satisfied after the value is seen
+        assertEquals(Arrays.asList("b"), select("item[tag/@kind='y']/@name"));
+        assertEquals(Arrays.asList("2"), select("item[tag/@kind=\"y\"]/size"));
+        assertEquals(Arrays.asList("a", "b"), select("item[tag/@kind]/@name"));
+        assertEquals(Arrays.asList(), select("item[size/sub/@x]/@name"));
+
+        // several selectors in one pass, sharing steps
+        StAXSelector selector = StAXSelector.compile("item/@name", "item[@name='a']/size", "item/tag/@kind");
+        assertEquals(3, selector.size());
+        assertEquals(Arrays.asList(Arrays.asList("a", "b", "c"), Arrays.asList("1"), Arrays.asList("x", "y")),
+                selector.selectAll(StAXObjectBuilderTest.reader(DOCUMENT)));
+
+        for (String invalid : new String[]{"", "item/", "item[@name='a'", "item[name]", "@", "item//size", "item/@name/x"}) {
+            try {
+                StAXSelector.compile(invalid);
+                fail(invalid);
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+    }
+
+    private static List<String> select(String... selectors) throws Exception {
+        return StAXSelector.compile(selectors).selectAll(StAXObjectBuilderTest.reader(DOCUMENT)).get(0);
+    }
+
+}
@@ -0,0 +1,710 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates StAX cursor parsers for classes annotated with
+ * {@code com.tauterra.nettools.binding.XmlElement}.
+ *
+ * <p>For a bound class {@code Foo}, the processor writes {@code FooXmlParser}
+ * to the same package. The generated parser dispatches attributes and child
+ * elements with a {@code switch} on the name and calls the bound setters
+ * directly, so no handler maps or lambdas are involved at parse time.</p>
+ *
+ * <p>A generated parser applies its {@code XmlBindingOptions} in the same
+ * way: the fields of the bindings are checked once, in the constructor;
+ * pooled attributes go through the pool of the options; list children can be
+ * handed to a consumer instead of being collected; and with reusing options,
+ * the objects of classes with an {@code XmlReset} method are recycled once
+ * the parser is released.</p>
+ *
+ * @author Nicholas Folse
+ */
+@SupportedAnnotationTypes({XmlBindingProcessor.ELEMENT, XmlBindingProcessor.ATTRIBUTE,
+    XmlBindingProcessor.CHILD, XmlBindingProcessor.RESET})
+public class XmlBindingProcessor extends AbstractProcessor {
+
+    static final String ELEMENT = "com.tauterra.nettools.binding.XmlElement";
+    static final String ATTRIBUTE = "com.tauterra.nettools.binding.XmlAttribute";
+    static final String CHILD = "com.tauterra.nettools.binding.XmlChild";
+    static final String RESET = "com.tauterra.nettools.binding.XmlReset";
+    static final String OPTIONS = "com.tauterra.nettools.binding.XmlBindingOptions";
+    static final String SUPPORT = "com.tauterra.nettools.binding.XmlBindingSupport";
+    static final String PARSER_SUFFIX = "XmlParser";
+
+    // placeholder in attribute statements; braces cannot occur in identifiers
+    private static final String VALUE = "{value}";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement elementAnnotation = processingEnv.getElementUtils().getTypeElement(ELEMENT);
+        if (elementAnnotation == null) {
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(elementAnnotation)) {
+            if (element.getKind() != ElementKind.CLASS
+                    || ((TypeElement) element).getNestingKind() != NestingKind.TOP_LEVEL) {
+                error(element, "@XmlElement is only supported on top-level classes");
+                continue;
+            }
+            try {
+                generate((TypeElement) element);
+            } catch (IOException ex) {
+                error(element, "unable to write parser: " + ex.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An attribute binding: the attribute name, the fields that need it and
+     * the statement that applies the value to {@code result}.
+     */
+    private static final class AttributeBinding {
+
+        final String name;
+        final List<String> fields;
+        final String statement;
+
+        AttributeBinding(String name, List<String> fields, String statement) {
+            this.name = name;
+            this.fields = fields;
+            this.statement = statement;
+        }
+    }
+
+    /**
+     * A child binding: the child's tag name and wrapper, the fields that need
+     * it and the accessor of the bound class that takes the parsed child.
+     */
+    private static final class ChildBinding {
+
+        final String tagName;
+        final String wrapper;
+        final List<String> fields;
+        final String accessor;
+        final boolean list;
+        final String type;
+
+        ChildBinding(String tagName, String wrapper, List<String> fields, String accessor, boolean list, String type) {
+            this.tagName = tagName;
+            this.wrapper = wrapper;
+            this.fields = fields;
+            this.accessor = accessor;
+            this.list = list;
+            this.type = type;
+        }
+    }
+
+    /**
+     * A case of a generated {@code switch}: the name and the statements,
+     * indented relative to the label.
+     */
+    private static final class Case {
+
+        final String name;
+        final List<String> lines;
+
+        Case(String name, List<String> lines) {
+            this.name = name;
+            this.lines = lines;
+        }
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        final String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        final String typeName = type.getSimpleName().toString();
+        final String parserName = typeName + PARSER_SUFFIX;
+        final String tagName = tagName(type);
+
+        final List<AttributeBinding> attributes = new ArrayList<>();
+        final List<ChildBinding> children = new ArrayList<>();
+        String reset = null;
+        boolean valid = true;
+
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            AnnotationMirror attribute = findAnnotation(method, ATTRIBUTE);
+            if (attribute != null) {
+                AttributeBinding binding = attributeBinding(method, attribute);
+                if (binding == null) {
+                    valid = false;
+                } else {
+                    attributes.add(binding);
+                }
+            }
+            AnnotationMirror child = findAnnotation(method, CHILD);
+            if (child != null) {
+                ChildBinding binding = childBinding(method, child);
+                if (binding == null) {
+                    valid = false;
+                } else {
+                    children.add(binding);
+                }
+            }
+            if (findAnnotation(method, RESET) != null) {
+                if (!method.getParameters().isEmpty() || !method.getModifiers().contains(Modifier.PUBLIC)
+                        || method.getModifiers().contains(Modifier.STATIC)) {
+                    error(method, "@XmlReset must be placed on a public instance method without arguments");
+                    valid = false;
+                } else if (reset != null) {
+                    error(method, "duplicate @XmlReset method");
+                    valid = false;
+                } else {
+                    reset = method.getSimpleName().toString();
+                }
+            }
+        }
+
+        // the children of each wrapper; the wrappers are direct children
+        final Map<String, List<Integer>> wrappers = new LinkedHashMap<>();
+        final List<String> directNames = new ArrayList<>();
+        final List<String> consumerNames = new ArrayList<>();
+        for (int idx = 0; idx < children.size(); idx++) {
+            ChildBinding child = children.get(idx);
+            if (child.wrapper.isEmpty()) {
+                directNames.add(child.tagName);
+            } else if (!wrappers.containsKey(child.wrapper)) {
+                directNames.add(child.wrapper);
+            }
+            wrappers.computeIfAbsent(child.wrapper, k -> new ArrayList<>()).add(idx);
+            if (child.list) {
+                consumerNames.add(child.tagName);
+            }
+        }
+        final List<String> attributeNames = new ArrayList<>();
+        attributes.forEach(binding -> attributeNames.add(binding.name));
+        valid &= unique(type, attributeNames, "duplicate binding for \"%s\"");
+        valid &= unique(type, directNames, "duplicate binding for \"%s\"");
+        for (Map.Entry<String, List<Integer>> wrapper : wrappers.entrySet()) {
+            if (!wrapper.getKey().isEmpty()) {
+                List<String> names = new ArrayList<>();
+                wrapper.getValue().forEach(idx -> names.add(children.get(idx).tagName));
+                valid &= unique(type, names, "duplicate binding for \"%s\"");
+            }
+        }
+        valid &= unique(type, consumerNames, "list children \"%s\" in several wrappers are not supported");
+        if (!valid) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("import ").append(OPTIONS).append(";\n");
+        sb.append("import ").append(SUPPORT).append(";\n");
+        if (reset != null) {
+            sb.append("import java.util.Arrays;\n");
+        }
+        if (!consumerNames.isEmpty()) {
+            sb.append("import java.util.function.Consumer;\n");
+        }
+        sb.append("import javax.xml.stream.XMLStreamConstants;\n");
+        sb.append("import javax.xml.stream.XMLStreamException;\n");
+        sb.append("import javax.xml.stream.XMLStreamReader;\n\n");
+        sb.append("/**\n");
+        sb.append(" * Parses {@code <").append(tagName).append(">} elements into {@link ").append(typeName).append("}.\n");
+        sb.append(" *\n");
+        sb.append(" * A parser holds the state of a parse and must not be shared between threads.\n");
+        sb.append(" *\n");
+        sb.append(" * Generated by ").append(XmlBindingProcessor.class.getName()).append(". Do not edit.\n");
+        sb.append(" */\n");
+        sb.append("public final class ").append(parserName).append(" {\n\n");
+        sb.append("    public static final String TAG_NAME = ").append(literal(tagName)).append(";\n\n");
+
+        // fields
+        sb.append("    private final XmlBindingOptions options;\n");
+        for (int idx = 0; idx < attributes.size(); idx++) {
+            if (!attributes.get(idx).fields.isEmpty()) {
+                sb.append("    private final boolean attribute").append(idx).append("Selected;\n");
+            }
+        }
+        for (int idx = 0; idx < children.size(); idx++) {
+            if (!children.get(idx).fields.isEmpty()) {
+                sb.append("    private final boolean child").append(idx).append("Selected;\n");
+            }
+        }
+        final List<String> wrapperNames = new ArrayList<>(wrappers.keySet());
+        for (int idx = 0; idx < wrapperNames.size(); idx++) {
+            if (!wrapperNames.get(idx).isEmpty() && wrapperCondition(children, wrappers.get(wrapperNames.get(idx))) != null) {
+                sb.append("    private final boolean wrapper").append(idx).append("Selected;\n");
+            }
+        }
+        for (int idx = 0; idx < children.size(); idx++) {
+            sb.append("    private ").append(children.get(idx).type).append(PARSER_SUFFIX)
+                    .append(" child").append(idx).append("Parser;\n");
+        }
+        for (int idx = 0; idx < children.size(); idx++) {
+            if (children.get(idx).list) {
+                sb.append("    private Consumer<? super ").append(children.get(idx).type)
+                        .append("> child").append(idx).append("Consumer;\n");
+            }
+        }
+        if (reset != null) {
+            sb.append("    private ").append(typeName).append("[] recycled;\n");
+            sb.append("    private int used;\n");
+        }
+        sb.append("\n");
+
+        // constructors
+        sb.append("    /**\n");
+        sb.append("     * Return a parser with the default options.\n");
+        sb.append("     */\n");
+        sb.append("    public ").append(parserName).append("() {\n");
+        sb.append("        this(XmlBindingOptions.DEFAULT);\n");
+        sb.append("    }\n\n");
+        sb.append("    /**\n");
+        sb.append("     * Return a parser with the given options, which are passed on to the\n");
+        sb.append("     * parsers of the children.\n");
+        sb.append("     *\n");
+        sb.append("     * @param options\n");
+        sb.append("     */\n");
+        sb.append("    public ").append(parserName).append("(XmlBindingOptions options) {\n");
+        sb.append("        this.options = options;\n");
+        for (int idx = 0; idx < attributes.size(); idx++) {
+            if (!attributes.get(idx).fields.isEmpty()) {
+                sb.append("        this.attribute").append(idx).append("Selected = options.isSelected(")
+                        .append(literals(attributes.get(idx).fields)).append(");\n");
+            }
+        }
+        for (int idx = 0; idx < children.size(); idx++) {
+            if (!children.get(idx).fields.isEmpty()) {
+                sb.append("        this.child").append(idx).append("Selected = options.isSelected(")
+                        .append(literals(children.get(idx).fields)).append(");\n");
+            }
+        }
+        for (int idx = 0; idx < wrapperNames.size(); idx++) {
+            String condition = wrapperCondition(children, wrappers.get(wrapperNames.get(idx)));
+            if (!wrapperNames.get(idx).isEmpty() && condition != null) {
+                sb.append("        this.wrapper").append(idx).append("Selected = ").append(condition).append(";\n");
+            }
+        }
+        if (reset != null) {
+            sb.append("        this.recycled = options.isReusing() ? new ").append(typeName).append("[4] : null;\n");
+        }
+        sb.append("    }\n");
+
+        // consumers
+        for (int idx = 0; idx < children.size(); idx++) {
+            ChildBinding child = children.get(idx);
+            if (!child.list) {
+                continue;
+            }
+            sb.append("\n");
+            sb.append("    /**\n");
+            sb.append("     * Hand each {@code <").append(child.tagName).append(">} child to a consumer instead of\n");
+            sb.append("     * adding it to the list. The parser of the child is released once the\n");
+            sb.append("     * consumer returns.\n");
+            sb.append("     *\n");
+            sb.append("     * @param consumer The consumer, or null to add the children to the list\n");
+            sb.append("     */\n");
+            sb.append("    public void set").append(upperCamel(child.tagName)).append("Consumer(Consumer<? super ")
+                    .append(child.type).append("> consumer) {\n");
+            sb.append("        this.child").append(idx).append("Consumer = consumer;\n");
+            sb.append("    }\n");
+        }
+        sb.append("\n");
+
+        sb.append("    /**\n");
+        sb.append("     * Parse the first {@code <").append(tagName).append(">} element of a document.\n");
+        sb.append("     *\n");
+        sb.append("     * @return the parsed object, or null if the document has no such element\n");
+        sb.append("     */\n");
+        sb.append("    public ").append(typeName).append(" parseDocument(XMLStreamReader streamReader) throws XMLStreamException {\n");
+        sb.append("        return XmlBindingSupport.findElement(streamReader, TAG_NAME) ? parse(streamReader) : null;\n");
+        sb.append("    }\n\n");
+
+        sb.append("    /**\n");
+        sb.append("     * Parse the element at the cursor, leaving the reader on its END_ELEMENT.\n");
+        sb.append("     */\n");
+        sb.append("    public ").append(typeName).append(" parse(XMLStreamReader streamReader) throws XMLStreamException {\n");
+        sb.append("        final ").append(typeName).append(" result = ")
+                .append((reset != null) ? "create()" : "new " + typeName + "()").append(";\n");
+        if (!attributes.isEmpty()) {
+            List<Case> cases = new ArrayList<>();
+            for (int idx = 0; idx < attributes.size(); idx++) {
+                AttributeBinding binding = attributes.get(idx);
+                String statement = binding.statement.replace(VALUE, "streamReader.getAttributeValue(idx)") + ";";
+                cases.add(new Case(binding.name, binding.fields.isEmpty()
+                        ? Arrays.asList(statement)
+                        : Arrays.asList("if (attribute" + idx + "Selected) {", "    " + statement, "}")));
+            }
+            sb.append("        for (int idx = 0, count = streamReader.getAttributeCount(); idx < count; idx++) {\n");
+            sb.append("            switch (streamReader.getAttributeLocalName(idx)) {\n");
+            appendCases(sb, cases);
+            sb.append("                default:\n");
+            sb.append("                    break;\n");
+            sb.append("            }\n");
+            sb.append("        }\n");
+        }
+        List<Case> direct = new ArrayList<>();
+        for (int idx = 0; idx < wrapperNames.size(); idx++) {
+            String wrapper = wrapperNames.get(idx);
+            if (wrapper.isEmpty()) {
+                for (int child : wrappers.get(wrapper)) {
+                    direct.add(childCase(children, child));
+                }
+            } else {
+                String statement = wrapperMethod(wrapper) + "(streamReader, result);";
+                direct.add(new Case(wrapper, (wrapperCondition(children, wrappers.get(wrapper)) == null)
+                        ? Arrays.asList(statement)
+                        : selected("wrapper" + idx + "Selected", Arrays.asList(statement))));
+            }
+        }
+        appendChildLoop(sb, direct);
+        sb.append("        return result;\n");
+        sb.append("    }\n\n");
+
+        sb.append("    /**\n");
+        sb.append("     * Release the objects built by this parser and the parsers of its\n");
+        sb.append("     * children. With reusing options, the objects of classes with a reset\n");
+        sb.append("     * method are recycled by the next parse, so they must no longer be used.\n");
+        sb.append("     */\n");
+        sb.append("    public void release() {\n");
+        if (reset != null) {
+            sb.append("        used = 0;\n");
+        }
+        for (int idx = 0; idx < children.size(); idx++) {
+            sb.append("        if (child").append(idx).append("Parser != null) {\n");
+            sb.append("            child").append(idx).append("Parser.release();\n");
+            sb.append("        }\n");
+        }
+        sb.append("    }\n");
+
+        for (String wrapper : wrapperNames) {
+            if (wrapper.isEmpty()) {
+                continue;
+            }
+            List<Case> cases = new ArrayList<>();
+            for (int child : wrappers.get(wrapper)) {
+                cases.add(childCase(children, child));
+            }
+            sb.append("\n");
+            sb.append("    private void ").append(wrapperMethod(wrapper))
+                    .append("(XMLStreamReader streamReader, ").append(typeName).append(" result) throws XMLStreamException {\n");
+            appendChildLoop(sb, cases);
+            sb.append("    }\n");
+        }
+
+        if (reset != null) {
+            sb.append("\n");
+            sb.append("    private ").append(typeName).append(" create() {\n");
+            sb.append("        if (recycled == null) {\n");
+            sb.append("            return new ").append(typeName).append("();\n");
+            sb.append("        }\n");
+            sb.append("        if (used < recycled.length && recycled[used] != null) {\n");
+            sb.append("            final ").append(typeName).append(" result = recycled[used++];\n");
+            sb.append("            result.").append(reset).append("();\n");
+            sb.append("            return result;\n");
+            sb.append("        }\n");
+            sb.append("        if (used == recycled.length) {\n");
+            sb.append("            recycled = Arrays.copyOf(recycled, 2 * used);\n");
+            sb.append("        }\n");
+            sb.append("        return recycled[used++] = new ").append(typeName).append("();\n");
+            sb.append("    }\n");
+        }
+
+        for (int idx = 0; idx < children.size(); idx++) {
+            String childParser = children.get(idx).type + PARSER_SUFFIX;
+            sb.append("\n");
+            sb.append("    private ").append(childParser).append(" child").append(idx).append("Parser() {\n");
+            sb.append("        if (child").append(idx).append("Parser == null) {\n");
+            sb.append("            child").append(idx).append("Parser = new ").append(childParser).append("(options);\n");
+            sb.append("        }\n");
+            sb.append("        return child").append(idx).append("Parser;\n");
+            sb.append("    }\n");
+        }
+        sb.append("\n}\n");
+
+        String qualifiedName = packageName.isEmpty() ? parserName : packageName + "." + parserName;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+        try (Writer writer = file.openWriter()) {
+            writer.write(sb.toString());
+        }
+    }
+
+    /**
+     * Return the case that parses a child: it is added to the list or handed
+     * to the consumer, or set on the result.
+     */
+    private static Case childCase(List<ChildBinding> children, int idx) {
+        ChildBinding child = children.get(idx);
+        String parse = "child" + idx + "Parser().parse(streamReader)";
+        List<String> lines;
+        if (child.list) {
+            String var = "child" + idx;
+            lines = Arrays.asList(
+                    "final " + child.type + " " + var + " = " + parse + ";",
+                    "if (" + var + "Consumer == null) {",
+                    "    result." + child.accessor + "().add(" + var + ");",
+                    "} else {",
+                    "    " + var + "Consumer.accept(" + var + ");",
+                    "    " + var + "Parser.release();",
+                    "}");
+        } else {
+            lines = Arrays.asList("result." + child.accessor + "(" + parse + ");");
+        }
+        return new Case(child.tagName, child.fields.isEmpty() ? lines : selected("child" + idx + "Selected", lines));
+    }
+
+    /**
+     * Return statements that run only if a flag is set, and skip the element
+     * otherwise.
+     */
+    private static List<String> selected(String flag, List<String> statements) {
+        List<String> lines = new ArrayList<>();
+        lines.add("if (" + flag + ") {");
+        statements.forEach(statement -> lines.add("    " + statement));
+        lines.add("} else {");
+        lines.add("    XmlBindingSupport.skipElement(streamReader);");
+        lines.add("}");
+        return lines;
+    }
+
+    /**
+     * Return the condition for parsing a wrapper, or null if it is always
+     * parsed because one of its children does not depend on the fields.
+     */
+    private static String wrapperCondition(List<ChildBinding> children, List<Integer> wrapped) {
+        List<String> flags = new ArrayList<>();
+        for (int idx : wrapped) {
+            if (children.get(idx).fields.isEmpty()) {
+                return null;
+            }
+            flags.add("child" + idx + "Selected");
+        }
+        return String.join(" || ", flags);
+    }
+
+    private static void appendCases(StringBuilder sb, List<Case> cases) {
+        for (Case c : cases) {
+            sb.append("                case ").append(literal(c.name)).append(":\n");
+            for (String line : c.lines) {
+                sb.append("                    ").append(line).append("\n");
+            }
+            sb.append("                    break;\n");
+        }
+    }
+
+    private static void appendChildLoop(StringBuilder sb, List<Case> children) {
+        if (children.isEmpty()) {
+            sb.append("        XmlBindingSupport.skipElement(streamReader);\n");
+            return;
+        }
+        sb.append("        while (streamReader.hasNext()) {\n");
+        sb.append("            int eventType = streamReader.next();\n");
+        sb.append("            if (eventType == XMLStreamConstants.END_ELEMENT) {\n");
+        sb.append("                break;\n");
+        sb.append("            }\n");
+        sb.append("            if (eventType != XMLStreamConstants.START_ELEMENT) {\n");
+        sb.append("                continue;\n");
+        sb.append("            }\n");
+        sb.append("            switch (streamReader.getLocalName()) {\n");
+        appendCases(sb, children);
+        sb.append("                default:\n");
+        sb.append("                    XmlBindingSupport.skipElement(streamReader);\n");
+        sb.append("                    break;\n");
+        sb.append("            }\n");
+        sb.append("        }\n");
+    }
+
+    private static String wrapperMethod(String wrapper) {
+        return "parse" + upperCamel(wrapper);
+    }
+
+    private static String upperCamel(String name) {
+        StringBuilder sb = new StringBuilder();
+        boolean upper = true;
+        for (char c : name.toCharArray()) {
+            if (Character.isJavaIdentifierPart(c)) {
+                sb.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            } else {
+                upper = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String literal(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String literals(List<String> values) {
+        List<String> literals = new ArrayList<>();
+        values.forEach(value -> literals.add(literal(value)));
+        return String.join(", ", literals);
+    }
+
+    private AttributeBinding attributeBinding(ExecutableElement method, AnnotationMirror mirror) {
+        if (method.getParameters().size() != 1) {
+            error(method, "@XmlAttribute must be placed on a setter with one argument");
+            return null;
+        }
+        final String name = stringValue(mirror, "value");
+        final List<String> fields = stringValues(mirror, "fields");
+        final boolean pooled = Boolean.TRUE.equals(value(mirror, "pooled"));
+        TypeMirror type = method.getParameters().get(0).asType();
+        String setter = "result." + method.getSimpleName() + "(";
+        if (isType(type, "java.lang.String")) {
+            return new AttributeBinding(name, fields, setter + (pooled ? "options.pool(" + VALUE + ")" : VALUE) + ")");
+        }
+        if (pooled) {
+            error(method, "only String attributes can be pooled");
+            return null;
+        }
+        if (type.getKind() == TypeKind.INT || isType(type, "java.lang.Integer")) {
+            return new AttributeBinding(name, fields, setter + "XmlBindingSupport.parseInt(" + VALUE + ", 0))");
+        }
+        if (type.getKind() == TypeKind.LONG || isType(type, "java.lang.Long")) {
+            return new AttributeBinding(name, fields, setter + "XmlBindingSupport.parseLong(" + VALUE + ", 0L))");
+        }
+        error(method, "unsupported attribute type " + type);
+        return null;
+    }
+
+    private ChildBinding childBinding(ExecutableElement method, AnnotationMirror mirror) {
+        TypeMirror childType;
+        boolean list;
+        if (method.getParameters().size() == 1) {
+            childType = method.getParameters().get(0).asType();
+            list = false;
+        } else if (method.getParameters().isEmpty() && isList(method.getReturnType())) {
+            List<? extends TypeMirror> typeArguments = ((DeclaredType) method.getReturnType()).getTypeArguments();
+            if (typeArguments.size() != 1) {
+                error(method, "@XmlChild list must have a type argument");
+                return null;
+            }
+            childType = typeArguments.get(0);
+            list = true;
+        } else {
+            error(method, "@XmlChild must be placed on a setter with one argument or a getter returning a List");
+            return null;
+        }
+        Element childElement = processingEnv.getTypeUtils().asElement(childType);
+        if (!(childElement instanceof TypeElement) || findAnnotation(childElement, ELEMENT) == null) {
+            error(method, "@XmlChild type " + childType + " is not annotated with @XmlElement");
+            return null;
+        }
+        TypeElement child = (TypeElement) childElement;
+        return new ChildBinding(tagName(child), stringValue(mirror, "wrapper"), stringValues(mirror, "fields"),
+                method.getSimpleName().toString(), list, child.getQualifiedName().toString());
+    }
+
+    private boolean unique(TypeElement type, List<String> names, String message) {
+        Set<String> seen = new HashSet<>();
+        for (String name : names) {
+            if (!seen.add(name)) {
+                error(type, String.format(message, name));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String tagName(TypeElement type) {
+        return stringValue(findAnnotation(type, ELEMENT), "value");
+    }
+
+    private boolean isType(TypeMirror type, String name) {
+        Element element = processingEnv.getTypeUtils().asElement(type);
+        return element instanceof TypeElement && ((TypeElement) element).getQualifiedName().contentEquals(name);
+    }
+
+    private boolean isList(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        TypeElement list = processingEnv.getElementUtils().getTypeElement("java.util.List");
+        return processingEnv.getTypeUtils().isAssignable(
+                processingEnv.getTypeUtils().erasure(type),
+                processingEnv.getTypeUtils().erasure(list.asType()));
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            Element annotation = mirror.getAnnotationType().asElement();
+            if (((TypeElement) annotation).getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private Object value(AnnotationMirror mirror, String key) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(key)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private String stringValue(AnnotationMirror mirror, String key) {
+        Object value = value(mirror, key);
+        return (value == null) ? "" : String.valueOf(value);
+    }
+
+    private List<String> stringValues(AnnotationMirror mirror, String key) {
+        List<String> values = new ArrayList<>();
+        Object value = value(mirror, key);
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                values.add(String.valueOf(((AnnotationValue) item).getValue()));
+            }
+        }
+        return values;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2018 Nicholas Folse.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.tauterra.nettools.processor;
+
+import com.tauterra.nettools.binding.XmlBindingOptions;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compiles small annotated models with the processor and runs the parsers it
+ * generates.
+ *
+ * @author Nicholas Folse
+ */
+public class XmlBindingProcessorTest {
+
+    private static final String SCAN = String.join("\n",
+            "package sample;",
+            "import com.tauterra.nettools.binding.XmlAttribute;",
+            "import com.tauterra.nettools.binding.XmlChild;",
+            "import com.tauterra.nettools.binding.XmlElement;",
+            "import java.util.ArrayList;",
+            "import java.util.List;",
+            "@XmlElement(\"scan\")",
+            "public class Scan {",
+            "    private long start;",
+            "    private Integer count;",
+            "    private String name;",
+            "    private Owner owner;",
+            "    private final List<Item> items = new ArrayList<>();",
+            "    @XmlAttribute(\"start\") public void setStart(long start) { this.start = start; }",
+            "    @XmlAttribute(\"count\") public void setCount(Integer count) { this.count = count; }",
+            "    @XmlAttribute(\"name\") public void setName(String name) { this.name = name; }",
+            "    @XmlChild public void setOwner(Owner owner) { this.owner = owner; }",
+            "    @XmlChild(wrapper = \"items\") public List<Item> getItems() { return items; }",
+            "    @Override public String toString() {",
+            "        return \"start=\" + start + \" count=\" + count + \" name=\" + name",
+            "                + \" owner=\" + owner + \" items=\" + items;",
+            "    }",
+            "}");
+
+    private static final String ITEM = String.join("\n",
+            "package sample;",
+            "import com.tauterra.nettools.binding.XmlAttribute;",
+            "import com.tauterra.nettools.binding.XmlElement;",
+            "@XmlElement(\"item\")",
+            "public class Item {",
+            "    private int id;",
+            "    private String label;",
+            "    @XmlAttribute(\"id\") public void setId(int id) { this.id = id; }",
+            "    @XmlAttribute(\"label\") public void setLabel(String label) { this.label = label; }",
+            "    @Override public String toString() { return id + \":\" + label; }",
+            "}");
+
+    private static final String OWNER = String.join("\n",
+            "package sample;",
+            "import com.tauterra.nettools.binding.XmlAttribute;",
+            "import com.tauterra.nettools.binding.XmlElement;",
+            "@XmlElement(\"owner\")",
+            "public class Owner {",
+            "    private String name;",
+            "    @XmlAttribute(\"name\") public void setName(String name) { this.name = name; }",
+            "    @Override public String toString() { return name; }",
+            "}");
+
+    private static final String LOG = String.join("\n",
+            "package sample;",
+            "import com.tauterra.nettools.binding.XmlAttribute;",
+            "import com.tauterra.nettools.binding.XmlChild;",
+            "import com.tauterra.nettools.binding.XmlElement;",
+            "import java.util.ArrayList;",
+            "import java.util.List;",
+            "@XmlElement(\"log\")",
+            "public class Log {",
+            "    private String source;",
+            "    private final List<Entry> entries = new ArrayList<>();",
+            "    @XmlAttribute(value = \"source\", fields = \"SOURCE\") public void setSource(String source) { this.source = source; }",
+            "    @XmlChild(wrapper = \"entries\", fields = \"ENTRY\") public List<Entry> getEntries() { return entries; }",
+            "    @Override public String toString() { return \"source=\" + source + \" entries=\" + entries; }",
+            "}");
+
+    private static final String ENTRY = String.join("\n",
+            "package sample;",
+            "import com.tauterra.nettools.binding.XmlAttribute;",
+            "import com.tauterra.nettools.binding.XmlElement;",
+            "import com.tauterra.nettools.binding.XmlReset;",
+            "@XmlElement(\"entry\")",
+            "public class Entry {",
+            "    private String level;",
+            "    private String text;",
+            "    @XmlAttribute(value = \"level\", pooled = true) public void setLevel(String level) { this.level = level; }",
+            "    @XmlAttribute(\"text\") public void setText(String text) { this.text = text; }",
+            "    @XmlReset public void reset() { level = null; text = null; }",
+            "    @Override public String toString() { return level + \":\" + text; }",
+            "}");
+
+    private static final String LOG_XML = "<log source=\"disk\"><entries>"
+            + "<entry level=\"warn\" text=\"full\"/><entry text=\"ok\"/><entry level=\"info\" text=\"quota\"/>"
+            + "</entries><entries/></log>";
+
+    public XmlBindingProcessorTest() {
+    }
+
+    /**
+     * Test the parsers generated for a model with numeric attributes, a single
+     * child and repeated children in a wrapper element.
+     */
+    @Test
+    public void testGeneratedParser() throws Exception {
+        System.out.println("Testing generated parsers");
+
+        Path dir = Files.createTempDirectory("xmlbinding");
+        try {
+            List<Diagnostic<? extends JavaFileObject>> errors = compile(dir, SCAN, ITEM, OWNER);
+            assertTrue(errors.toString(), errors.isEmpty());
+
+            String generated = new String(Files.readAllBytes(dir.resolve("gen/sample/ScanXmlParser.java")), StandardCharsets.UTF_8);
+            assertTrue(generated.contains("case \"start\":"));
+            assertTrue(generated.contains("XmlBindingSupport.parseLong("));
+            assertTrue(generated.contains("XmlBindingSupport.parseInt("));
+            assertTrue(generated.contains("private void parseItems(XMLStreamReader streamReader, Scan result)"));
+            assertTrue(Files.isRegularFile(dir.resolve("gen/sample/ItemXmlParser.java")));
+            assertTrue(Files.isRegularFile(dir.resolve("gen/sample/OwnerXmlParser.java")));
+
+            String xml = "<?xml version=\"1.0\"?>\n"
+                    + "<doc><header/>"
+                    + "<scan start=\"1500000000000\" count=\"many\" name=\"first\" other=\"x\">"
+                    + "<item id=\"7\" label=\"outside the wrapper\"/>"
+                    + "<items><item id=\"1\" label=\"a\"><item id=\"99\"/></item><note/><item id=\"2\"/></items>"
+                    + "<owner name=\"admin\"/>"
+                    + "<items><item id=\"-3\" label=\"b\"/></items>"
+                    + "</scan>"
+                    + "<scan name=\"second\"/></doc>";
+            try (URLClassLoader loader = new URLClassLoader(new URL[]{dir.resolve("out").toUri().toURL()},
+                    getClass().getClassLoader())) {
+                Class<?> parser = loader.loadClass("sample.ScanXmlParser");
+                XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(new StringReader(xml));
+                Object instance = parser.getConstructor().newInstance();
+                Object scan = parser.getMethod("parseDocument", XMLStreamReader.class).invoke(instance, reader);
+                assertEquals("start=1500000000000 count=0 name=first owner=admin items=[1:a, 2:null, -3:b]", scan.toString());
+                // the parser leaves the reader on the end tag of the element
+                assertEquals("scan", reader.getLocalName());
+                assertTrue(reader.isEndElement());
+
+                reader = XMLInputFactory.newFactory().createXMLStreamReader(new StringReader("<doc><other/></doc>"));
+                assertNull(parser.getMethod("parseDocument", XMLStreamReader.class).invoke(instance, reader));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Test that the generated parsers apply the field selection and the pool
+     * of their options.
+     */
+    @Test
+    public void testGeneratedParserOptions() throws Exception {
+        System.out.println("Testing generated parser options");
+
+        Path dir = Files.createTempDirectory("xmlbinding");
+        try {
+            List<Diagnostic<? extends JavaFileObject>> errors = compile(dir, LOG, ENTRY);
+            assertTrue(errors.toString(), errors.isEmpty());
+
+            try (URLClassLoader loader = new URLClassLoader(new URL[]{dir.resolve("out").toUri().toURL()},
+                    getClass().getClassLoader())) {
+                Class<?> parser = loader.loadClass("sample.LogXmlParser");
+                Constructor<?> constructor = parser.getConstructor(XmlBindingOptions.class);
+
+                assertEquals("source=disk entries=[warn:full, null:ok, info:quota]",
+                        parseLog(constructor.newInstance(XmlBindingOptions.DEFAULT)).toString());
+                assertEquals("source=disk entries=[]",
+                        parseLog(constructor.newInstance(new XmlBindingOptions("SOURCE"::equals, null, false))).toString());
+                assertEquals("source=null entries=[warn:full, null:ok, info:quota]",
+                        parseLog(constructor.newInstance(new XmlBindingOptions("ENTRY"::equals, null, false))).toString());
+                // only the attributes marked as pooled go through the pool
+                assertEquals("source=disk entries=[WARN:full, null:ok, INFO:quota]",
+                        parseLog(constructor.newInstance(new XmlBindingOptions(null, String::toUpperCase, false))).toString());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Test that the generated parsers hand list children to a consumer and,
+     * with reusing options, recycle the objects of classes with a reset
+     * method.
+     */
+    @Test
+    public void testGeneratedParserConsumer() throws Exception {
+        System.out.println("Testing generated parser consumers");
+
+        Path dir = Files.createTempDirectory("xmlbinding");
+        try {
+            List<Diagnostic<? extends JavaFileObject>> errors = compile(dir, LOG, ENTRY);
+            assertTrue(errors.toString(), errors.isEmpty());
+
+            try (URLClassLoader loader = new URLClassLoader(new URL[]{dir.resolve("out").toUri().toURL()},
+                    getClass().getClassLoader())) {
+                Class<?> parser = loader.loadClass("sample.LogXmlParser");
+                Constructor<?> constructor = parser.getConstructor(XmlBindingOptions.class);
+                for (boolean reusing : new boolean[]{false, true}) {
+                    List<String> consumed = new ArrayList<>();
+                    Set<Object> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+                    Consumer<Object> consumer = entry -> {
+                        consumed.add(entry.toString());
+                        instances.add(entry);
+                    };
+                    Object instance = constructor.newInstance(new XmlBindingOptions(null, null, reusing));
+                    parser.getMethod("setEntryConsumer", Consumer.class).invoke(instance, consumer);
+
+                    assertEquals("source=disk entries=[]", parseLog(instance).toString());
+                    // a recycled entry is reset before it is filled in again
+                    assertEquals(Arrays.asList("warn:full", "null:ok", "info:quota"), consumed);
+                    assertEquals(reusing ? 1 : 3, instances.size());
+                }
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static Object parseLog(Object parser) throws Exception {
+        XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(new StringReader(LOG_XML));
+        Object log = parser.getClass().getMethod("parseDocument", XMLStreamReader.class).invoke(parser, reader);
+        // skipped children leave the reader on the end tag of the element
+        assertEquals("log", reader.getLocalName());
+        assertTrue(reader.isEndElement());
+        return log;
+    }
+
+    /**
+     * Test that bindings the processor cannot generate are reported as errors.
+     */
+    @Test
+    public void testInvalidBindings() throws Exception {
+        System.out.println("Testing invalid bindings");
+
+        String invalid = String.join("\n",
+                "package sample;",
+                "import com.tauterra.nettools.binding.XmlAttribute;",
+                "import com.tauterra.nettools.binding.XmlChild;",
+                "import com.tauterra.nettools.binding.XmlElement;",
+                "import com.tauterra.nettools.binding.XmlReset;",
+                "@XmlElement(\"invalid\")",
+                "public class Invalid {",
+                "    @XmlAttribute(\"ratio\") public void setRatio(double ratio) { }",
+                "    @XmlAttribute(\"a\") public void setA(String a) { }",
+                "    @XmlAttribute(\"a\") public void setB(String b) { }",
+                "    @XmlChild public void setText(String text) { }",
+                "    @XmlAttribute(value = \"count\", pooled = true) public void setCount(int count) { }",
+                "    @XmlReset public void clear(boolean all) { }",
+                "}");
+        Path dir = Files.createTempDirectory("xmlbinding");
+        try {
+            List<String> messages = new ArrayList<>();
+            for (Diagnostic<? extends JavaFileObject> error : compile(dir, invalid)) {
+                messages.add(error.getMessage(Locale.ROOT));
+            }
+            assertTrue(messages.toString(), messages.contains("unsupported attribute type double"));
+            assertTrue(messages.toString(), messages.contains("@XmlChild type java.lang.String is not annotated with @XmlElement"));
+            assertTrue(messages.toString(), messages.contains("duplicate binding for \"a\""));
+            assertTrue(messages.toString(), messages.contains("only String attributes can be pooled"));
+            assertTrue(messages.toString(), messages.contains("@XmlReset must be placed on a public instance method without arguments"));
+            assertFalse(Files.exists(dir.resolve("gen/sample/InvalidXmlParser.java")));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Compile sources with the binding processor into {@code gen} and
+     * {@code out} under a directory.
+     *
+     * @return The errors reported by the compiler
+     */
+    private static List<Diagnostic<? extends JavaFileObject>> compile(Path dir, String... sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull(compiler);
+        Path src = Files.createDirectories(dir.resolve("src/sample"));
+        Files.createDirectories(dir.resolve("gen"));
+        Files.createDirectories(dir.resolve("out"));
+        List<File> files = new ArrayList<>();
+        for (String source : sources) {
+            String name = source.substring(source.indexOf("public class ") + 13, source.indexOf(" {"));
+            Path file = src.resolve(name + ".java");
+            Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+            files.add(file.toFile());
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList(
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-processor", XmlBindingProcessor.class.getName(),
+                    "-s", dir.resolve("gen").toString(),
+                    "-d", dir.resolve("out").toString());
+            compiler.getTask(null, fileManager, diagnostics, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(files)).call();
+        }
+        List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic);
+            }
+        }
+        return errors;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException ex) throws IOException {
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}